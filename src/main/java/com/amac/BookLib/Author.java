@@ -1,9 +1,13 @@
 package com.amac.BookLib;
 
 import java.util.*;
+import java.io.*;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.DOMException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * An <code>Author</code> object encapsulates an author's name
@@ -40,6 +44,10 @@ public class Author {
 	protected String surtitle;
 	protected LinkedList<Book> books;
 
+	// The full name, built when first asked for. Null until then and
+	// whenever the name changes.
+	private String fullname = null;
+
 	// Constructors
 	/**
 	 * Creates a new <code>Author</code> object from a string which
@@ -47,6 +55,10 @@ public class Author {
 	 * name. It also assume no title or sur-title. The book list
 	 * written by this author is initialized to null.
 	 * 
+	 * The name is split at spaces in a single pass, taking each part as a
+	 * slice of the name. Middle names are everything between the first and
+	 * last names, separated by single spaces.
+	 * 
 	 * @param name Full name of the author which is broken down into
 	 * potential a first, middle and last names.
 	 * @return Author The <code>Author</code> object.
@@ -57,31 +69,60 @@ public class Author {
 
 		title = firstname = middlename = lastname = surtitle = null;
 
-		StringTokenizer tokedstr = new StringTokenizer(name, " ");
-		int tokencount = tokedstr.countTokens();
-		if (tokencount == 1) // Only a last name
+		// Find the first and last words of the name, the start of the second
+		// word and the end of the word before the last
+		int tokencount = 0;
+		int firstStart = 0, firstEnd = 0, secondStart = 0;
+		int lastStart = 0, lastEnd = 0, middleEnd = 0;
+		int length = name.length();
+		int i = 0;
+		while (i < length) {
+			if (name.charAt(i) == ' ') {
+				i++;
+				continue;
+			}
+			int start = i;
+			while ((i < length) && (name.charAt(i) != ' '))
+				i++;
+			tokencount++;
+			if (tokencount == 1) {
+				firstStart = start;
+				firstEnd = i;
+			} else if (tokencount == 2)
+				secondStart = start;
+			middleEnd = lastEnd;
+			lastStart = start;
+			lastEnd = i;
+		}
+
+		if (tokencount == 0)
+			throw new IllegalArgumentException("Author must have a last name");
+		else if (tokencount == 1) // Only a last name
 			lastname = name;
 		else {
-			if (tokencount == 2) { // Only a first and last name
-				firstname = new String(tokedstr.nextToken());
-				lastname = new String(tokedstr.nextToken());
-			} else { // First, middle and last names
-				firstname = new String(tokedstr.nextToken());
-				StringBuffer middle = new StringBuffer(name.length());
-				// Get the middle name as every thing between first
-				// and last tokens
-				for (int i = 2; i < tokencount; i++) {
-					middle.append(tokedstr.nextToken());
-					middle.append(" ");
-
-				};
-				middlename = new String(middle);
-				lastname = new String(tokedstr.nextToken());
-			}
-		};
+			firstname = name.substring(firstStart, firstEnd);
+			lastname = name.substring(lastStart, lastEnd);
+			if (tokencount > 2) // Middle names between the first and last
+				middlename = singleSpaced(name, secondStart, middleEnd);
+		}
 		books = new LinkedList<Book>();
 	};
 
+	/**
+	 * Returns the words of the passed name between two positions, which
+	 * start and end with a word, separated by single spaces.
+	 */
+	private static String singleSpaced(String name, int from, int to) {
+		int gap = name.indexOf("  ", from);
+		if ((gap < 0) || (gap >= to))
+			return name.substring(from, to);
+		StringBuilder words = new StringBuilder(to - from);
+		for (int i = from; i < to; i++)
+			if ((name.charAt(i) != ' ') || (name.charAt(i - 1) != ' '))
+				words.append(name.charAt(i));
+		return words.toString();
+	}
+
 	/**
 	 * Creates a new <code>Author</code> object from the passed
 	 * first and last names. The book list written by this author 
@@ -213,6 +254,98 @@ public class Author {
 		};
 	}
 
+	/**
+	 * Creates a new <code>Author</code> object from the XML read by the passed
+	 * stream reader, which must be positioned at the start of the author
+	 * element. The reader is left positioned at the end of the author element.
+	 * 
+	 * @param reader The stream reader positioned at the author XML element
+	 * @throws XMLStreamException If the XML cannot be read
+	 * @throws DOMException If the XML contains an invalid element
+	 */
+	public Author(XMLStreamReader reader) throws XMLStreamException, DOMException {
+		this(reader, null);
+	}
+
+	/**
+	 * Creates a new <code>Author</code> object from the XML read by the passed
+	 * stream reader, as <code>Author(XMLStreamReader)</code>, sharing the
+	 * parts of the name read through the passed string pool.
+	 * 
+	 * @param reader The stream reader positioned at the author XML element
+	 * @param pool Shares the strings read. May be null.
+	 * @throws XMLStreamException If the XML cannot be read
+	 * @throws DOMException If the XML contains an invalid element
+	 */
+	Author(XMLStreamReader reader, StringPool pool) throws XMLStreamException, DOMException {
+		title = firstname = middlename = lastname = surtitle = null;
+		books = new LinkedList<Book>();
+		while (reader.hasNext()) {
+			int type = reader.next();
+			switch (type) {
+				case XMLStreamConstants.START_ELEMENT :
+					{
+						String n_name = reader.getLocalName();
+						if (n_name.equals(TAGNAME_TITLE))
+							title = readText(reader, pool);
+						else if (n_name.equals(TAGNAME_FIRSTNAME))
+							firstname = readText(reader, pool);
+						else if (n_name.equals(TAGNAME_MIDDLENAME))
+							middlename = readText(reader, pool);
+						else if (n_name.equals(TAGNAME_LASTNAME))
+							lastname = readText(reader, pool);
+						else if (n_name.equals(TAGNAME_SURTITLE))
+							surtitle = readText(reader, pool);
+						else // Unknown node name for an author defintion
+							throw new DOMException(
+								DOMException.NOT_SUPPORTED_ERR,
+								"Invalid XML node name for defining an author: "
+									+ n_name);
+						break;
+					}
+				case XMLStreamConstants.END_ELEMENT :
+					return;
+				case XMLStreamConstants.CHARACTERS :
+				case XMLStreamConstants.SPACE :
+					// Skip these as they should only be blank space
+					break;
+				default :
+					throw new DOMException(
+						DOMException.NOT_SUPPORTED_ERR,
+						"Invalid XML node type for defining an author: " + type);
+			};
+		};
+	}
+
+	/**
+	 * Read the text of the element the passed stream reader is positioned at
+	 * the start of, leaving the reader at the end of the element.
+	 * 
+	 * @param reader The stream reader positioned at an XML element
+	 * @return The text of the element or null if it is empty
+	 * @throws XMLStreamException If the XML cannot be read or the element
+	 *                            holds more than text
+	 */
+	static String readText(XMLStreamReader reader) throws XMLStreamException {
+		String text = reader.getElementText();
+		return text.equals("") ? null : text;
+	}
+
+	/**
+	 * Read the text of an element as <code>readText(XMLStreamReader)</code>,
+	 * sharing the text through the passed string pool.
+	 * 
+	 * @param reader The stream reader positioned at an XML element
+	 * @param pool Shares the strings read. May be null.
+	 * @return The text of the element or null if it is empty
+	 * @throws XMLStreamException If the XML cannot be read or the element
+	 *                            holds more than text
+	 */
+	static String readText(XMLStreamReader reader, StringPool pool) throws XMLStreamException {
+		String text = readText(reader);
+		return (pool == null) ? text : pool.intern(text);
+	}
+
 	// Accessor Methods
 	
 	/**
@@ -272,6 +405,18 @@ public class Author {
 		return surtitle;
 	}
 
+	/**
+	 * Returns the key used to hash authors. Authors are equal if their first
+	 * and last names are equal ignoring case so the key is built from the
+	 * lower case first and last names.
+	 * @return The author's hash key
+	 */
+	String nameKey() {
+		String first = (firstname == null) ? "" : firstname.toLowerCase(Locale.ROOT);
+		String last = (lastname == null) ? "" : lastname.toLowerCase(Locale.ROOT);
+		return first + "\n" + last;
+	}
+
 	//Modification Methods
 	
 	/**
@@ -286,30 +431,31 @@ public class Author {
 	 * @return True if the current author object was modified. False otherwise
 	 */
 	public boolean isModified(Author auth) {
-		boolean changed = false;
+		if (isSameName(auth))
+			return false;
 
-		if (surtitle != auth.getSurTitle()) {
-			surtitle = auth.getSurTitle();
-			changed = true;
-		}
-		if (firstname != auth.getFirstName()) {
-			firstname = auth.getFirstName();
-			changed = true;
-		}
-		if (middlename != auth.getMiddleName()) {
-			middlename = auth.getMiddleName();
-			changed = true;
-		}
-		if (lastname != auth.getLastName()) {
-			lastname = auth.getLastName();
-			changed = true;
-		}
-		if (title != auth.getTitle()) {
-			title = auth.getTitle();
-			changed = true;
-		}
+		surtitle = auth.getSurTitle();
+		firstname = auth.getFirstName();
+		middlename = auth.getMiddleName();
+		lastname = auth.getLastName();
+		title = auth.getTitle();
+		fullname = null;
+		return true;
+	}
 
-		return changed;
+	/**
+	 * Determines if every part of the passed author's name, including the
+	 * title, middle names and sur-title, is the same as this author's.
+	 * 
+	 * @param auth The author object to compare against
+	 * @return True if all parts of the names are the same. False otherwise.
+	 */
+	public boolean isSameName(Author auth) {
+		return Objects.equals(title, auth.getTitle())
+			&& Objects.equals(firstname, auth.getFirstName())
+			&& Objects.equals(middlename, auth.getMiddleName())
+			&& Objects.equals(lastname, auth.getLastName())
+			&& Objects.equals(surtitle, auth.getSurTitle());
 	}
 
 	// Comparison Methods
@@ -404,6 +550,19 @@ public class Author {
 			books.add(book);
 	};
 
+	/**
+	 * Add a book already checked by the library not to duplicate any book
+	 * in the library to the list of books authored by this author. Only the
+	 * last book added need be checked, for a book listing the same author
+	 * twice, rather than searching the whole list.
+	 * 
+	 * @param book Book to add to the list of books authored
+	 */
+	void addLibraryBook(Book book) {
+		if (books.peekLast() != book)
+			books.add(book);
+	};
+
 	/**
 	 * Remove the passed book from the list of books authored by this author.
 	 * 
@@ -428,85 +587,65 @@ public class Author {
 	 * @return A string with the formated xml author information
 	 */
 	public String toXML(String indent) {
+		StringWriter out = new StringWriter(256);
+		try {
+			writeXML(out, indent);
+		} catch (IOException e) {
+			// A StringWriter does not throw
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Outputs the XML definition of the author to the passed Writer object.
+	 * 
+	 * @param out The writer object where the XML definition will be written
+	 * @param indent The initial space indentation for formatting the xml
+	 * @throws IOException
+	 */
+	public void writeXML(Writer out, String indent) throws IOException {
 		String indent1 = indent + " ";
-		String xmlString = indent + "<" + TAGNAME_AUTHOR + ">\n";
+		out.write(indent);
+		out.write("<" + TAGNAME_AUTHOR + ">\n");
 		if (title != null)
-			xmlString =
-				xmlString
-					+ indent1
-					+ "<"
-					+ TAGNAME_TITLE
-					+ ">"
-					+ title
-					+ "</"
-					+ TAGNAME_TITLE
-					+ ">\n";
+			Book.writeElement(out, indent1, TAGNAME_TITLE, title);
 		if (firstname != null)
-			xmlString =
-				xmlString
-					+ indent1
-					+ "<"
-					+ TAGNAME_FIRSTNAME
-					+ ">"
-					+ firstname
-					+ "</"
-					+ TAGNAME_FIRSTNAME
-					+ ">\n";
+			Book.writeElement(out, indent1, TAGNAME_FIRSTNAME, firstname);
 		if (middlename != null)
-			xmlString =
-				xmlString
-					+ indent1
-					+ "<"
-					+ TAGNAME_MIDDLENAME
-					+ ">"
-					+ middlename
-					+ "</"
-					+ TAGNAME_MIDDLENAME
-					+ ">\n";
-		xmlString =
-			xmlString
-				+ indent1
-				+ "<"
-				+ TAGNAME_LASTNAME
-				+ ">"
-				+ lastname
-				+ "</"
-				+ TAGNAME_LASTNAME
-				+ ">\n";
+			Book.writeElement(out, indent1, TAGNAME_MIDDLENAME, middlename);
+		Book.writeElement(out, indent1, TAGNAME_LASTNAME, String.valueOf(lastname));
 		if (surtitle != null)
-			xmlString =
-				xmlString
-					+ indent1
-					+ "<"
-					+ TAGNAME_SURTITLE
-					+ ">"
-					+ surtitle
-					+ "</"
-					+ TAGNAME_SURTITLE
-					+ ">\n";
-		xmlString = xmlString + indent + "</" + TAGNAME_AUTHOR + ">\n";
-		return xmlString;
+			Book.writeElement(out, indent1, TAGNAME_SURTITLE, surtitle);
+		out.write(indent);
+		out.write("</" + TAGNAME_AUTHOR + ">\n");
 	}
 
 	/**
-	 * Dump Author information into a String for output.
+	 * Dump Author information into a String for output. The full name is
+	 * built once and kept until the name is changed by <code>isModified</code>.
 	 * 
 	 */
 	public String toString() {
-		String fullname = "";
-		if (title != null)
-			fullname = fullname + title + " ";
-		if (firstname != null)
-			fullname = fullname + firstname + " ";
-		if (middlename != null)
-			fullname = fullname + middlename + " ";
-		if (lastname != null)
-			fullname = fullname + lastname + " ";
-		if (surtitle != null)
-			fullname = fullname + surtitle + " ";
-		return fullname.substring(0, fullname.length() - 1);
+		if (fullname == null) {
+			StringBuilder name = new StringBuilder(64);
+			appendPart(name, title);
+			appendPart(name, firstname);
+			appendPart(name, middlename);
+			appendPart(name, lastname);
+			appendPart(name, surtitle);
+			fullname = name.toString();
+		}
+		return fullname;
 	};
 
+	private static void appendPart(StringBuilder name, String part) {
+		if (part == null)
+			return;
+		if (name.length() > 0)
+			name.append(' ');
+		name.append(part);
+	}
+
 	/**
 	 * Dump Author information to the console.
 	 *
@@ -5,9 +5,14 @@ import java.util.*;
 import com.amac.BookLib.Author;
 
 import java.io.*;
+import java.text.CollationKey;
+import java.text.Collator;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Node;
 import org.w3c.dom.DOMException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * A <code>Book</code> object represents a book. It has a title,
@@ -63,6 +68,11 @@ public class Book {
 	 */
 	static final int MAXAUTHORS = 10;
 
+	/**
+	 * The fields of a book which can be modified
+	 */
+	public enum Field { TITLE, SERIES, AUTHORS, ISBN, YEAR, COVER }
+
 	/*
 	 * XML tagnames used by the book object
 	 */
@@ -81,6 +91,29 @@ public class Book {
 	protected int publishYear;
 	protected int coverType;
 
+	// Author strings already built and the full names of the authors they
+	// were built from. Null until an author string is first asked for.
+	// Replaced as a whole, so a thread exporting the library sees a
+	// complete set of strings while the table asks for them.
+	private volatile AuthorsStrings authorsStrings = null;
+
+	// Sort keys packed from the start of the title and of the last name of
+	// the first author, and the title and author full name they were packed
+	// from. Packed again once either changes.
+	private long titleKey;
+	private String titleKeyOf = null;
+	private long authorKey;
+	private String authorKeyOf = null;
+
+	// Collation keys of the title and of the last and first names of the
+	// first author, and the collator, title and author full name they were
+	// made from. Made again once any of these change.
+	private Collator keyCollator = null;
+	private CollationKey titleCollationKey;
+	private String titleCollationKeyOf = null;
+	private CollationKey[] authorCollationKeys;
+	private String authorCollationKeyOf = null;
+
 	// Constuctors
 
 	// Private constructor helper function to populate data
@@ -286,6 +319,74 @@ public class Book {
 		};
 	};
 
+	/**
+	 * Creates a new book object from the XML read by the passed stream reader,
+	 * which must be positioned at the start of the book element. The reader is
+	 * left positioned at the end of the book element.
+	 * 
+	 * @param reader The stream reader positioned at the book XML element
+	 * @throws XMLStreamException If the XML cannot be read
+	 * @throws DOMException If XML structure contains an invalid node
+	 */
+	public Book(XMLStreamReader reader) throws XMLStreamException, DOMException {
+		this(reader, null);
+	};
+
+	/**
+	 * Creates a new book object from the XML read by the passed stream reader,
+	 * as <code>Book(XMLStreamReader)</code>, sharing the series and author
+	 * names read through the passed string pool.
+	 * 
+	 * @param reader The stream reader positioned at the book XML element
+	 * @param pool Shares the strings read. May be null.
+	 * @throws XMLStreamException If the XML cannot be read
+	 * @throws DOMException If XML structure contains an invalid node
+	 */
+	Book(XMLStreamReader reader, StringPool pool) throws XMLStreamException, DOMException {
+
+		authors = new LinkedList<Author>();
+		while (reader.hasNext()) {
+			int type = reader.next();
+			switch (type) {
+				case XMLStreamConstants.START_ELEMENT :
+					{
+						String n_name = reader.getLocalName();
+						if (n_name.equals(TAGNAME_TITLE))
+							title = Author.readText(reader);
+						else if (n_name.equals(TAGNAME_SERIES))
+							series = Author.readText(reader, pool);
+						else if (n_name.equals(TAGNAME_ISBN))
+							ISBN = Author.readText(reader);
+						else if (n_name.equals(TAGNAME_YEAR))
+							publishYear = Integer.parseInt(reader.getElementText());
+						else if (n_name.equals(TAGNAME_COVERTYPE)) {
+							String cover = reader.getElementText();
+							for (int k = 0; k < COVERNAME.length; k++)
+								if (cover.equals(COVERNAME[k]))
+									coverType = k;
+						} else if (n_name.equals(Author.TAGNAME_AUTHOR))
+							authors.add(new Author(reader, pool));
+						else // Unknown node name for book definition
+							throw new DOMException(
+								DOMException.NOT_SUPPORTED_ERR,
+								"Invalid XML node name for defining a book: "
+									+ n_name);
+						break;
+					}
+				case XMLStreamConstants.END_ELEMENT :
+					return;
+				case XMLStreamConstants.CHARACTERS :
+				case XMLStreamConstants.SPACE :
+					// Skip these as they should only be blank space
+					break;
+				default :
+					throw new DOMException(
+						DOMException.NOT_SUPPORTED_ERR,
+						"Invalid XML node type for defining a book: " + type);
+			};
+		};
+	};
+
 	// Accessor Methods
 
 	/** 
@@ -346,82 +447,22 @@ public class Book {
 	 * @return True if the current book object was modified. False otherwise.
 	 */
 	public boolean isModified(Book modbook) {
-		boolean changed = false;
-
-		if (!title.equals(modbook.getTitle())) {
-			title = modbook.getTitle();
-			changed = true;
-		}
-		if ((series != null) && (modbook.getSeries() != null)) {
-			if (!series.equals(modbook.getSeries())) {
-				series = modbook.getSeries();
-				changed = true;
-			}
-		} else if ((series != null) || (modbook.getSeries() != null)) {
-			// Case where one or other was null and we can't safely use equals()
-			series = modbook.getSeries();
-			changed = true;
-		}
-		if ((ISBN != null) && (modbook.getISBN() != null)) {
-			if (!ISBN.equals(modbook.getISBN())) {
-				ISBN = modbook.getISBN();
-				changed = true;
-			}
-		} else if ((ISBN != null) || (modbook.getISBN() != null)) {
-			ISBN = modbook.getISBN();
-			changed = true;
-		}
-		if (publishYear != modbook.getPublishYear()) {
-			publishYear = modbook.getPublishYear();
-			changed = true;
-		}
-		if (coverType != modbook.getCoverType()) {
-			coverType = modbook.getCoverType();
-			changed = true;
-		}
-		// Now need to check the author lists against each other. 
-		// true if found in original author list
-		LinkedList<Author> auth_list = modbook.getAuthors();
-		boolean[] new_list = new boolean[auth_list.size()];
-		for (int i = 0; i < new_list.length; i++)
-			new_list[i] = false;
-		// true if found in new author list
-		boolean[] orig_list = new boolean[authors.size()];
-		for (int i = 0; i < orig_list.length; i++)
-			orig_list[i] = false;
-		// Loop over the new list
-		for (int i = 0; i < auth_list.size(); i++) {
-			Author new_auth = auth_list.get(i);
-			// Find this author in the old list and update that author's
-			// information if necessary
-			for (int k = 0; k < authors.size(); k++) {
-				Author orig_auth = authors.get(k);
-				if (new_auth.equals(orig_auth)) {
-					new_list[i] = true;
-					orig_list[k] = true;
-					if (orig_auth.isModified(new_auth))
-						changed = true;
-				}
-			}
-		};
-		// Any "false" values in the original list indicate authors to delete
-		// for this book. This must be done before additions for the mapping to
-		// be accurate
-		for (int i = 0; i < orig_list.length; i++)
-			if (!orig_list[i]) {
-				changed = true;
-				authors.remove(i);
-			}
-
-		// Any "false" values in the new list indicate an author to add
-		// for this book
-		for (int i = 0; i < new_list.length; i++)
-			if (!new_list[i]) {
-				changed = true;
-				authors.add(auth_list.get(i));
-			}
+		BookDelta delta = diff(modbook);
+		delta.applyTo(this);
+		return !delta.isEmpty();
+	}
 
-		return changed;
+	/**
+	 * Determines how the passed book object differs from the current book
+	 * object without changing either book. The returned delta can be applied
+	 * to the current book, preferably through <code>BookLibrary.modifyBook</code>
+	 * when the book is in a library.
+	 * 
+	 * @param modbook The book object to compare against
+	 * @return The differences of the passed book from the current book
+	 */
+	public BookDelta diff(Book modbook) {
+		return new BookDelta(this, modbook);
 	}
 
 	//	Comparison Methods
@@ -494,29 +535,158 @@ public class Book {
 			return title.compareTo(obj.getTitle());
 	}
 
+	/**
+	 * Returns the sort key of the title. Comparing the keys of two books as
+	 * unsigned numbers orders them as comparing their titles would, unless
+	 * the keys are equal when the titles must be compared.
+	 * 
+	 * @return The sort key of the title
+	 */
+	long titleKey() {
+		if (titleKeyOf != title) {
+			titleKey = packKey(title);
+			titleKeyOf = title;
+		}
+		return titleKey;
+	}
+
+	/**
+	 * Returns the sort key of the last name of the first author. Comparing
+	 * the keys of two books as unsigned numbers orders them as comparing the
+	 * last names would, unless the keys are equal when the names must be
+	 * compared. A book with no authors, or a first author with no last name,
+	 * has the lowest key.
+	 * 
+	 * @return The sort key of the first author
+	 */
+	long authorKey() {
+		Author first = authors.isEmpty() ? null : authors.getFirst();
+		String name = (first == null) ? null : first.toString();
+		if ((name == null) || (authorKeyOf != name)) {
+			authorKey = (first == null) ? 0 : packKey(first.getLastName());
+			authorKeyOf = name;
+		}
+		return authorKey;
+	}
+
+	/**
+	 * Returns the collation key of the title for the passed collator. The
+	 * key is made once and kept until the title or the collator changes.
+	 * 
+	 * @param collator The collator ordering the titles
+	 * @return The collation key of the title
+	 */
+	CollationKey titleCollationKey(Collator collator) {
+		useCollator(collator);
+		if (titleCollationKeyOf != title) {
+			titleCollationKey = collator.getCollationKey(title);
+			titleCollationKeyOf = title;
+		}
+		return titleCollationKey;
+	}
+
+	/**
+	 * Returns the collation keys of the last and first names of the first
+	 * author for the passed collator. A missing name has a null key. The keys
+	 * are made once and kept until the first author, their name or the
+	 * collator changes.
+	 * 
+	 * @param collator The collator ordering the names
+	 * @return The last and first name keys, or null if the book has no authors
+	 */
+	CollationKey[] authorCollationKeys(Collator collator) {
+		useCollator(collator);
+		Author first = authors.isEmpty() ? null : authors.getFirst();
+		String name = (first == null) ? null : first.toString();
+		if ((name == null) || (authorCollationKeyOf != name)) {
+			authorCollationKeys = null;
+			if (first != null) {
+				authorCollationKeys = new CollationKey[2];
+				if (first.getLastName() != null)
+					authorCollationKeys[0] = collator.getCollationKey(first.getLastName());
+				if (first.getFirstName() != null)
+					authorCollationKeys[1] = collator.getCollationKey(first.getFirstName());
+			}
+			authorCollationKeyOf = name;
+		}
+		return authorCollationKeys;
+	}
+
+	/**
+	 * Packs the sort keys of the book, and makes its collation keys for the
+	 * passed collator, if they are out of date, so the book is not changed
+	 * while sorted with other threads.
+	 * 
+	 * @param collator The collator the book is sorted with. May be null.
+	 */
+	void packSortKeys(Collator collator) {
+		titleKey();
+		authorKey();
+		if (collator != null) {
+			titleCollationKey(collator);
+			authorCollationKeys(collator);
+		}
+	}
+
+	/**
+	 * Drops the collation keys if they were made by another collator.
+	 */
+	private void useCollator(Collator collator) {
+		if (keyCollator != collator) {
+			keyCollator = collator;
+			titleCollationKeyOf = null;
+			authorCollationKeys = null;
+			authorCollationKeyOf = null;
+		}
+	}
+
+	/**
+	 * Packs the first four characters of the passed string into a long, the
+	 * first in the highest bits and missing characters as zero.
+	 * 
+	 * @param s The string to pack. Null packs as zero.
+	 * @return The packed characters
+	 */
+	static long packKey(String s) {
+		long key = 0;
+		int length = (s == null) ? 0 : s.length();
+		for (int i = 0; i < 4; i++)
+			key = (key << 16) | ((i < length) ? s.charAt(i) : 0);
+		return key;
+	}
+
 	// Output methods
 
 	/**
 	 * Create a formatted string from the list of <code>Author</code> separated by the passed separator.
+	 * The string for each separator is built once and kept until the authors
+	 * of the book, or their names, change.
 	 * 
 	 * @param sep The separator to use to separate the author names.
 	 * @return The formatted string of Authors.
 	 */
 	public String getAuthorsString(String sep) {
-		String authorsString;
-		ListIterator<Author> authorListIterator = authors.listIterator();
-		if (authors.size() > 0) {
-			Author authorNext;
-			authorNext = authorListIterator.next();
-			authorsString = authorNext.toString();
-			while (authorListIterator.hasNext()) {
-				authorNext = authorListIterator.next();
-				authorsString = authorsString + sep + authorNext.toString();
-			};
-		} else {
-			authorsString = "";	
-		};
-		return authorsString;
+		AuthorsStrings cached = authorsStrings;
+		if ((cached == null) || !cached.isBuiltFrom(authors))
+			cached = new AuthorsStrings(authors);
+		String built = cached.get(sep);
+		if (built != null)
+			return built;
+
+		String[] names = cached.names;
+		int length = sep.length() * Math.max(0, names.length - 1);
+		for (String name : names)
+			length += name.length();
+		StringBuilder authorsString = new StringBuilder(length);
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0)
+				authorsString.append(sep);
+			authorsString.append(names[i]);
+		}
+
+		built = authorsString.toString();
+		authorsStrings = cached.with(sep, built);
+		return built;
 	}
 
 	/**
@@ -526,101 +696,13 @@ public class Book {
 	 * @return A string with the formated xml book information
 	 */
 	public String toXML(String indent) {
-		class convertXML {
-			private String convert(String text) {
-				StringBuffer resbuf = new StringBuffer(1024);
-				for (int i = 0, k = 0; i < text.length(); i++) {
-					char c = text.charAt(i);
-					switch (c) {
-						case '&' :
-							resbuf.insert(k++, '&');
-							resbuf.insert(k++, 'a');
-							resbuf.insert(k++, 'm');
-							resbuf.insert(k++, 'p');
-							resbuf.insert(k++, ';');
-							break;
-						case '<' :
-							resbuf.insert(k++, '&');
-							resbuf.insert(k++, 'l');
-							resbuf.insert(k++, 't');
-							resbuf.insert(k++, ';');
-							break;
-						case '>' :
-							resbuf.insert(k++, '&');
-							resbuf.insert(k++, 'g');
-							resbuf.insert(k++, 't');
-							resbuf.insert(k++, ';');
-							break;
-						default :
-							resbuf.insert(k++, c);
-					}
-				}
-				return resbuf.toString();
-			}
-		}
-		String indent1 = indent + " ";
-		String xmlString =
-			indent
-				+ "<"
-				+ TAGNAME_BOOK
-				+ ">\n"
-				+ indent1
-				+ "<"
-				+ TAGNAME_TITLE
-				+ ">"
-				+ (new convertXML().convert(title))
-				+ "</"
-				+ TAGNAME_TITLE
-				+ ">\n";
-		xmlString =
-			xmlString
-				+ indent1
-				+ "<"
-				+ TAGNAME_COVERTYPE
-				+ ">"
-				+ COVERNAME[coverType]
-				+ "</"
-				+ TAGNAME_COVERTYPE
-				+ ">\n";
-		if (series != null)
-			xmlString =
-				xmlString
-					+ indent1
-					+ "<"
-					+ TAGNAME_SERIES
-					+ ">"
-					+ series
-					+ "</"
-					+ TAGNAME_SERIES
-					+ ">\n";
-		for (int i = 0; i < authors.size(); i++) {
-			Author bookauthor = authors.get(i);
-			xmlString = xmlString + bookauthor.toXML(indent1);
-		};
-		xmlString =
-			xmlString
-				+ indent1
-				+ "<"
-				+ TAGNAME_YEAR
-				+ ">"
-				+ publishYear
-				+ "</"
-				+ TAGNAME_YEAR
-				+ ">\n";
-		if (ISBN != null) {
-			xmlString =
-				xmlString
-					+ indent1
-					+ "<"
-					+ TAGNAME_ISBN
-					+ ">"
-					+ ISBN
-					+ "</"
-					+ TAGNAME_ISBN
-					+ ">\n";
+		StringWriter out = new StringWriter(512);
+		try {
+			writeXML(out, indent);
+		} catch (IOException e) {
+			// A StringWriter does not throw
 		}
-		xmlString = xmlString + indent + "</" + TAGNAME_BOOK + ">\n";
-		return xmlString;
+		return out.toString();
 	}
 
 	/**
@@ -632,7 +714,76 @@ public class Book {
 	 * @throws IOException
 	*/
 	public void writeXML(Writer out, String indent) throws IOException {
-		out.write((toXML(indent)));
+		String indent1 = indent + " ";
+		out.write(indent);
+		out.write("<" + TAGNAME_BOOK + ">\n");
+		writeElement(out, indent1, TAGNAME_TITLE, title);
+		writeElement(out, indent1, TAGNAME_COVERTYPE, COVERNAME[coverType]);
+		if (series != null)
+			writeElement(out, indent1, TAGNAME_SERIES, series);
+		for (int i = 0; i < authors.size(); i++) {
+			Author bookauthor = authors.get(i);
+			bookauthor.writeXML(out, indent1);
+		};
+		writeElement(out, indent1, TAGNAME_YEAR, Integer.toString(publishYear));
+		if (ISBN != null)
+			writeElement(out, indent1, TAGNAME_ISBN, ISBN);
+		out.write(indent);
+		out.write("</" + TAGNAME_BOOK + ">\n");
+	}
+
+	/**
+	 * Outputs a single XML element holding the passed text on its own line,
+	 * escaping the characters of the text which are special to XML.
+	 * 
+	 * @param out The writer object where the element will be written
+	 * @param indent The space indentation of the element
+	 * @param tag The tag name of the element
+	 * @param text The text of the element
+	 * @throws IOException
+	 */
+	static void writeElement(Writer out, String indent, String tag, String text)
+		throws IOException {
+		out.write(indent);
+		out.write('<');
+		out.write(tag);
+		out.write('>');
+		writeEscaped(out, text);
+		out.write("</");
+		out.write(tag);
+		out.write(">\n");
+	}
+
+	/**
+	 * Outputs the passed text escaping the characters which are special to
+	 * XML. Runs of characters not needing escaping are written in one call.
+	 * 
+	 * @param out The writer object where the text will be written
+	 * @param text The text to write
+	 * @throws IOException
+	 */
+	static void writeEscaped(Writer out, String text) throws IOException {
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			String entity;
+			switch (text.charAt(i)) {
+				case '&' :
+					entity = "&amp;";
+					break;
+				case '<' :
+					entity = "&lt;";
+					break;
+				case '>' :
+					entity = "&gt;";
+					break;
+				default :
+					continue;
+			}
+			out.write(text, start, i - start);
+			out.write(entity);
+			start = i + 1;
+		}
+		out.write(text, start, text.length() - start);
 	}
 
 	/**
@@ -647,4 +798,63 @@ public class Book {
 		System.out.println(publishYear);
 		System.out.println(ISBN);
 	};
+
+	/**
+	 * The author strings of a book, as pairs of separator and string, and the
+	 * full names of the authors they were built from. A holder is never
+	 * changed once made; another string is kept by making a new holder.
+	 */
+	private static final class AuthorsStrings {
+		final String[] names;
+		final String[] strings;
+
+		AuthorsStrings(List<Author> authors) {
+			names = new String[authors.size()];
+			int i = 0;
+			for (Author a : authors)
+				names[i++] = a.toString();
+			strings = new String[0];
+		}
+
+		private AuthorsStrings(String[] names, String[] strings) {
+			this.names = names;
+			this.strings = strings;
+		}
+
+		/**
+		 * Returns true if the passed authors and their names are those the
+		 * strings were built from. Each author keeps its full name until it
+		 * changes, so the names are compared as the same objects.
+		 */
+		boolean isBuiltFrom(List<Author> authors) {
+			if (names.length != authors.size())
+				return false;
+			int i = 0;
+			for (Author a : authors)
+				if (a.toString() != names[i++])
+					return false;
+			return true;
+		}
+
+		/**
+		 * Returns the string built for the passed separator, or null.
+		 */
+		String get(String sep) {
+			for (int k = 0; k < strings.length; k += 2)
+				if (strings[k].equals(sep))
+					return strings[k + 1];
+			return null;
+		}
+
+		/**
+		 * Returns a holder of these strings and the passed string built for
+		 * the passed separator.
+		 */
+		AuthorsStrings with(String sep, String built) {
+			String[] added = Arrays.copyOf(strings, strings.length + 2);
+			added[strings.length] = sep;
+			added[strings.length + 1] = built;
+			return new AuthorsStrings(names, added);
+		}
+	}
 }
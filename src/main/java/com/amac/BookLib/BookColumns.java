@@ -0,0 +1,516 @@
+package com.amac.BookLib;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+
+/**
+ * A <code>BookColumns</code> holds the fields of the books of a library
+ * searched by a book, author or series search or a filter as columns
+ * rather than as books: the publish years in an <code>int</code> array,
+ * the cover types in a <code>byte</code> array and the titles, authors,
+ * series and ISBNs each packed into one array of characters. The first
+ * and last names of the authors of every book are packed the same way,
+ * with the run of each book's authors kept in an <code>int</code> array. A search then checks
+ * the year and cover of every book in a tight loop over the arrays, and
+ * matches the strings of only the books left, read in place from the
+ * packed characters, without visiting each <code>Book</code>.
+ *
+ * The strings are packed as normalized by <code>BookTextAnalyzer</code>,
+ * so each string is normalized once rather than by every search.
+ * Each string column also keeps an index of the rows holding each bigram
+ * of its CJK text, made when first needed. A search or filter for CJK
+ * text then only matches the strings of the rows holding every bigram of
+ * the text.
+ *
+ * The columns are a copy of the books in book list order when they are
+ * made. A library makes them when first searched and, once its book list
+ * or the books in it change, makes new columns from them with
+ * <code>update</code>. Making them only takes a copy of the book list. The
+ * columns are filled from the books by the first search, which may be on
+ * another thread, and never change after. Columns made by an update take
+ * the normalized strings of the books not modified from the columns they
+ * were made from, so only the books added or modified are normalized.
+ * Filling reads the fields of the books themselves, so if a book is
+ * changed before the columns are filled they may hold a mix of its old
+ * and new fields, or the fill may fail. The library has then made new
+ * columns, and a search of the old columns is to be run again on them.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class BookColumns implements BookFilter {
+
+	// Number of books filtered between checks for the filter being cancelled
+	private static final int CANCEL_CHECK_BOOKS = 4096;
+
+	// The books the columns were made from, in book list order
+	private final Book[] books;
+
+	// The filled columns these columns were made from by an update, and the
+	// books modified since they were made. Null once filled.
+	private BookColumns previous = null;
+	private Set<Book> modified = null;
+
+	// The columns, filled by the first search
+	private boolean filled = false;
+	private int[] years;
+	private byte[] covers;
+	private CharColumn titles;
+	private CharColumn authors;
+	private CharColumn series;
+	private CharColumn isbns;
+	private int[] authorStart;
+	private CharColumn firstNames;
+	private CharColumn lastNames;
+
+	// Constructors
+
+	/**
+	 * Make the columns of the passed books.
+	 *
+	 * @param booklist The books of the library, in book list order
+	 */
+	BookColumns(List<Book> booklist) {
+		books = booklist.toArray(new Book[booklist.size()]);
+	}
+
+	/**
+	 * Make the columns of the passed books, taking the strings of the books
+	 * not modified from the passed columns.
+	 */
+	private BookColumns(List<Book> booklist, BookColumns previous, Set<Book> modified) {
+		this(booklist);
+		this.previous = previous;
+		this.modified = modified;
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Make the columns of the passed book list after a change to the library.
+	 * The columns made take the strings of the books not modified from these
+	 * columns, or from the columns these were made from if these are not yet
+	 * filled.
+	 *
+	 * @param booklist The books of the library, in book list order
+	 * @param modifiedBooks The books whose fields have changed since these
+	 *                      columns were made, held by identity
+	 * @return The columns of the books
+	 */
+	synchronized BookColumns update(List<Book> booklist, Set<Book> modifiedBooks) {
+		if (filled)
+			return new BookColumns(booklist, this, modifiedBooks);
+		if (previous == null)
+			return new BookColumns(booklist);
+		modifiedBooks.addAll(modified);
+		return new BookColumns(booklist, previous, modifiedBooks);
+	}
+
+	/**
+	 * Fill the columns from the books if not yet filled. Every search fills
+	 * them first, so the columns are seen filled on any thread searching.
+	 */
+	private synchronized void fill() {
+		if (filled)
+			return;
+		int count = books.length;
+		years = new int[count];
+		covers = new byte[count];
+		String[] t = new String[count];
+		String[] a = new String[count];
+		String[] s = new String[count];
+		String[] n = new String[count];
+		int[] as = new int[count + 1];
+		ArrayList<String> f = new ArrayList<String>(count);
+		ArrayList<String> l = new ArrayList<String>(count);
+		IdentityHashMap<Book, Integer> reused = reusableRows();
+		for (int i = 0; i < count; i++) {
+			Book b = books[i];
+			years[i] = b.getPublishYear();
+			covers[i] = (byte) b.getCoverType();
+			as[i] = f.size();
+			Integer row = (reused != null) ? reused.get(b) : null;
+			if (row != null) {
+				t[i] = previous.titles.get(row);
+				a[i] = previous.authors.get(row);
+				s[i] = previous.series.get(row);
+				n[i] = previous.isbns.get(row);
+				for (int k = previous.authorStart[row]; k < previous.authorStart[row + 1]; k++) {
+					f.add(previous.firstNames.get(k));
+					l.add(previous.lastNames.get(k));
+				}
+			} else {
+				t[i] = BookTextAnalyzer.normalize(b.getTitle());
+				a[i] = BookTextAnalyzer.normalize(authorNames(b));
+				s[i] = BookTextAnalyzer.normalize(b.getSeries());
+				n[i] = BookTextAnalyzer.normalize(b.getISBN());
+				for (Author author : b.getAuthors()) {
+					f.add(BookTextAnalyzer.normalize(author.getFirstName()));
+					l.add(BookTextAnalyzer.normalize(author.getLastName()));
+				}
+			}
+		}
+		as[count] = f.size();
+		titles = new CharColumn(t);
+		authors = new CharColumn(a);
+		series = new CharColumn(s);
+		isbns = new CharColumn(n);
+		authorStart = as;
+		firstNames = new CharColumn(f.toArray(new String[f.size()]));
+		lastNames = new CharColumn(l.toArray(new String[l.size()]));
+		previous = null;
+		modified = null;
+		filled = true;
+	}
+
+	/**
+	 * Returns the row of each book of the columns these columns were made
+	 * from which has not been modified since, or null if they were not made
+	 * by an update.
+	 */
+	private IdentityHashMap<Book, Integer> reusableRows() {
+		if (previous == null)
+			return null;
+		// Already filled, so this only makes its columns seen on this thread
+		previous.fill();
+		IdentityHashMap<Book, Integer> rows = new IdentityHashMap<Book, Integer>(previous.books.length);
+		for (int i = 0; i < previous.books.length; i++)
+			if (!modified.contains(previous.books[i]))
+				rows.put(previous.books[i], i);
+		return rows;
+	}
+
+	/**
+	 * Search the books for those matching the book information search
+	 * criteria of the search object, as <code>BookLibrary.bookMatches</code>.
+	 *
+	 * @param searchObject
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @return Linked list of books matching the search criteria
+	 */
+	LinkedList<Book> bookSearch(BookSearchObject searchObject, boolean caseInsensitive) {
+		fill();
+		int cover = searchObject.getCoverType();
+		boolean anyCover = (cover == Book.BADCOVER) || (cover == Book.ANYCOVER);
+		int year = searchObject.getDate();
+		boolean anyYear = (year == Book.BADDATE);
+
+		int[] rows = new int[books.length];
+		int found = 0;
+		for (int i = 0; i < books.length; i++)
+			if ((anyCover || (covers[i] == cover)) && (anyYear || (years[i] == year)))
+				rows[found++] = i;
+
+		if (!searchObject.getISBN().equals(""))
+			found = isbns.filter(rows, found, searchObject.getISBN(), caseInsensitive);
+		if (!searchObject.getTitle().equals(""))
+			found = titles.filter(rows, found, searchObject.getTitle(), caseInsensitive);
+		return results(rows, found);
+	}
+
+	/**
+	 * Search the books for those with an author matching the book author
+	 * search criteria of the search object, as
+	 * <code>BookLibrary.authorMatches</code>.
+	 *
+	 * @param searchObject
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @return Linked list of books matching the search criteria
+	 */
+	LinkedList<Book> authorSearch(BookSearchObject searchObject, boolean caseInsensitive) {
+		fill();
+		Matcher first = matcher(searchObject.getFirstName(), caseInsensitive);
+		Matcher last = matcher(searchObject.getLastName(), caseInsensitive);
+		CharBuffer firstView = firstNames.view();
+		CharBuffer lastView = lastNames.view();
+		int[] rows = new int[books.length];
+		int found = 0;
+		for (int i = 0; i < books.length; i++) {
+			boolean authorFound = false;
+			for (int k = authorStart[i]; (!authorFound) && (k < authorStart[i + 1]); k++)
+				authorFound = firstNames.matches(k, first, firstView)
+					&& lastNames.matches(k, last, lastView);
+			if (authorFound)
+				rows[found++] = i;
+		}
+		return results(rows, found);
+	}
+
+	/**
+	 * Search the books for those matching the book series search criteria
+	 * of the search object, as <code>BookLibrary.seriesMatches</code>.
+	 *
+	 * @param searchObject
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @return Linked list of books matching the search criteria
+	 */
+	LinkedList<Book> seriesSearch(BookSearchObject searchObject, boolean caseInsensitive) {
+		fill();
+		int[] rows = new int[books.length];
+		for (int i = 0; i < books.length; i++)
+			rows[i] = i;
+		int found = books.length;
+		if (!searchObject.getSeries().equals(""))
+			found = series.filter(rows, found, searchObject.getSeries(), caseInsensitive);
+		return results(rows, found);
+	}
+
+	/**
+	 * Find the books whose title, authors, series or ISBN contain the
+	 * passed text, ignoring case. Text with CJK bigrams is only looked for
+	 * in the books whose fields hold every bigram.
+	 *
+	 * @param text The text to look for
+	 * @return Linked list of the books containing the text
+	 */
+	public LinkedList<Book> filter(String text) {
+		fill();
+		text = BookTextAnalyzer.normalize(text);
+		BitSet candidates = null;
+		int[] bigrams = BookTextAnalyzer.textBigrams(text);
+		if (bigrams.length > 0) {
+			candidates = titles.candidates(bigrams);
+			candidates.or(authors.candidates(bigrams));
+			candidates.or(series.candidates(bigrams));
+			candidates.or(isbns.candidates(bigrams));
+		}
+
+		// Each character of the text in upper and lower case, so most
+		// characters compared need not be converted
+		char[] upper = new char[text.length()];
+		char[] lower = new char[text.length()];
+		for (int k = 0; k < upper.length; k++) {
+			upper[k] = Character.toUpperCase(text.charAt(k));
+			lower[k] = Character.toLowerCase(text.charAt(k));
+		}
+		int[] rows = new int[books.length];
+		int found = 0;
+		int checked = 0;
+		for (int i = nextRow(candidates, 0); i < books.length; i = nextRow(candidates, i + 1)) {
+			if (((checked++ % CANCEL_CHECK_BOOKS) == 0) && Thread.currentThread().isInterrupted())
+				throw new CancellationException("Filter cancelled");
+			if (titles.contains(i, upper, lower)
+				|| authors.contains(i, upper, lower)
+				|| series.contains(i, upper, lower)
+				|| isbns.contains(i, upper, lower))
+				rows[found++] = i;
+		}
+		return results(rows, found);
+	}
+
+	// Private helper methods
+
+	/**
+	 * Returns the full names of the authors of the passed book, as shown in
+	 * the book table.
+	 */
+	private static String authorNames(Book b) {
+		StringBuilder names = new StringBuilder();
+		for (Author author : b.getAuthors()) {
+			if (names.length() > 0)
+				names.append(", ");
+			names.append(author.toString());
+		}
+		return names.toString();
+	}
+
+	/**
+	 * Returns a matcher of the wildcard pattern of the passed search string,
+	 * or null if the string is empty and so matches anything.
+	 */
+	private static Matcher matcher(String searchStr, boolean caseInsensitive) {
+		if (searchStr.equals(""))
+			return null;
+		return BookSearchObject.wildCardPattern(searchStr, caseInsensitive).matcher("");
+	}
+
+	/**
+	 * Returns the first row from the passed row which is a candidate, or
+	 * the number of books if there is none. Every row is a candidate if the
+	 * candidates are null.
+	 */
+	private int nextRow(BitSet candidates, int from) {
+		if (candidates == null)
+			return from;
+		int i = candidates.nextSetBit(from);
+		return (i < 0) ? books.length : i;
+	}
+
+	private LinkedList<Book> results(int[] rows, int found) {
+		LinkedList<Book> resultList = new LinkedList<Book>();
+		for (int k = 0; k < found; k++)
+			resultList.add(books[rows[k]]);
+		return resultList;
+	}
+
+	/**
+	 * One string field of every book, packed into a single array of
+	 * characters. The field of book <code>i</code> runs from
+	 * <code>start[i]</code> to <code>start[i + 1]</code>.
+	 */
+	private static class CharColumn {
+		private final char[] chars;
+		private final int[] start;
+		private final BitSet missing;
+
+		// The rows holding each CJK bigram. Each array holds the number of
+		// rows followed by the rows in order. Null until first needed.
+		private HashMap<Integer, int[]> bigramRows = null;
+
+		CharColumn(String[] values) {
+			start = new int[values.length + 1];
+			missing = new BitSet(values.length);
+			int length = 0;
+			for (int i = 0; i < values.length; i++) {
+				start[i] = length;
+				if (values[i] == null)
+					missing.set(i);
+				else
+					length += values[i].length();
+			}
+			start[values.length] = length;
+			chars = new char[length];
+			for (int i = 0; i < values.length; i++)
+				if (values[i] != null)
+					values[i].getChars(0, values[i].length(), chars, start[i]);
+		}
+
+		/**
+		 * Returns the field of the passed row, or null if the book has none.
+		 */
+		String get(int i) {
+			return missing.get(i) ? null : new String(chars, start[i], start[i + 1] - start[i]);
+		}
+
+		/**
+		 * Returns true if the field of the passed row contains the text
+		 * whose characters are passed in upper and lower case, ignoring
+		 * case as <code>BookSearchObject.containsIgnoreCase</code>.
+		 */
+		boolean contains(int i, char[] upper, char[] lower) {
+			if (missing.get(i))
+				return false;
+			int n = upper.length;
+			for (int from = start[i], last = start[i + 1] - n; from <= last; from++) {
+				int k = 0;
+				while (k < n) {
+					char c = chars[from + k];
+					if ((c != upper[k]) && (c != lower[k])
+						&& !BookSearchObject.sameIgnoringCase(c, upper[k]))
+						break;
+					k++;
+				}
+				if (k == n)
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the rows whose field holds every one of the passed CJK
+		 * bigrams, or null if no bigrams are passed.
+		 */
+		BitSet candidates(int[] bigrams) {
+			if (bigrams.length == 0)
+				return null;
+			HashMap<Integer, int[]> index = bigramRows();
+			BitSet found = null;
+			for (int bigram : bigrams) {
+				BitSet holding = new BitSet(start.length - 1);
+				int[] r = index.get(bigram);
+				if (r != null)
+					for (int k = 1; k <= r[0]; k++)
+						holding.set(r[k]);
+				if (found == null)
+					found = holding;
+				else
+					found.and(holding);
+			}
+			return found;
+		}
+
+		/**
+		 * Keep only the passed rows whose field is a wildcard match of the
+		 * passed search string, as <code>BookSearchObject.WildCardMatch</code>.
+		 * The pattern is made once and each field matched as a view of the
+		 * packed characters. Only the rows holding every CJK bigram of the
+		 * search string are matched.
+		 *
+		 * @return The number of rows kept, moved to the start of the rows
+		 */
+		int filter(int[] rows, int count, String searchStr, boolean caseInsensitive) {
+			if (count == 0)
+				return 0;
+			BitSet candidates =
+				candidates(BookTextAnalyzer.textBigrams(BookTextAnalyzer.normalize(searchStr)));
+			Matcher m = BookSearchObject.wildCardPattern(searchStr, caseInsensitive).matcher("");
+			CharBuffer view = view();
+			int kept = 0;
+			for (int k = 0; k < count; k++) {
+				int i = rows[k];
+				if (((candidates == null) || candidates.get(i)) && matches(i, m, view))
+					rows[kept++] = i;
+			}
+			return kept;
+		}
+
+		/**
+		 * Returns a view of the packed characters, through which fields are
+		 * matched by <code>matches</code>.
+		 */
+		CharBuffer view() {
+			return CharBuffer.wrap(chars);
+		}
+
+		/**
+		 * Returns true if the field of the passed row matches the passed
+		 * matcher, which is null to match anything, read through the passed
+		 * view of the packed characters. A missing field matches nothing, as
+		 * for <code>BookSearchObject.WildCardMatch</code>.
+		 */
+		boolean matches(int i, Matcher m, CharBuffer view) {
+			if (m == null)
+				return true;
+			if (missing.get(i))
+				return false;
+			view.clear();
+			view.position(start[i]).limit(start[i + 1]);
+			return m.reset(view).matches();
+		}
+
+		/**
+		 * Returns the index of the rows holding each CJK bigram, making it
+		 * if not yet made.
+		 */
+		private synchronized HashMap<Integer, int[]> bigramRows() {
+			if (bigramRows != null)
+				return bigramRows;
+			HashMap<Integer, int[]> index = new HashMap<Integer, int[]>();
+			for (int i = 0; i + 1 < start.length; i++)
+				for (int k = start[i] + 1; k < start[i + 1]; k++) {
+					if (!BookTextAnalyzer.isCJK(chars[k - 1]) || !BookTextAnalyzer.isCJK(chars[k]))
+						continue;
+					Integer bigram = BookTextAnalyzer.bigram(chars[k - 1], chars[k]);
+					int[] r = index.get(bigram);
+					if (r == null) {
+						r = new int[4];
+						index.put(bigram, r);
+					}
+					int n = r[0];
+					if ((n > 0) && (r[n] == i))
+						continue;
+					if (n + 1 == r.length) {
+						r = Arrays.copyOf(r, r.length * 2);
+						index.put(bigram, r);
+					}
+					r[n + 1] = i;
+					r[0] = n + 1;
+				}
+			bigramRows = index;
+			return bigramRows;
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package com.amac.BookLib;
+
+import java.util.*;
+
+/**
+ * A <code>BookDelta</code> describes exactly how a modified copy of a
+ * <code>Book</code> differs from the original book: the old and new value
+ * of each field changed, the authors added and removed, and the authors
+ * kept but with some part of their name changed. It is created by
+ * <code>Book.diff</code> without changing either book and can then be
+ * applied to the original book, usually through
+ * <code>BookLibrary.modifyBook</code> so the library can update its
+ * lookups and sort order for just the fields changed.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+public class BookDelta {
+
+	private final EnumSet<Book.Field> fields = EnumSet.noneOf(Book.Field.class);
+	private String oldTitle, newTitle;
+	private String oldSeries, newSeries;
+	private String oldISBN, newISBN;
+	private int oldPublishYear, newPublishYear;
+	private int oldCoverType, newCoverType;
+	private final LinkedList<Author> addedAuthors = new LinkedList<Author>();
+	private final LinkedList<Author> removedAuthors = new LinkedList<Author>();
+	private final IdentityHashMap<Author, Author> modifiedAuthors = new IdentityHashMap<Author, Author>();
+
+	// Constructors
+
+	/**
+	 * Creates the delta describing the differences of the passed modified book
+	 * from the passed original book. Authors are matched by hashing their names
+	 * so the comparison is linear in the number of authors.
+	 *
+	 * @param book The original book
+	 * @param modbook The book holding the modified values
+	 */
+	BookDelta(Book book, Book modbook) {
+		oldTitle = newTitle = book.getTitle();
+		oldSeries = newSeries = book.getSeries();
+		oldISBN = newISBN = book.getISBN();
+		oldPublishYear = newPublishYear = book.getPublishYear();
+		oldCoverType = newCoverType = book.getCoverType();
+
+		if (!Objects.equals(oldTitle, modbook.getTitle())) {
+			newTitle = modbook.getTitle();
+			fields.add(Book.Field.TITLE);
+		}
+		if (!Objects.equals(oldSeries, modbook.getSeries())) {
+			newSeries = modbook.getSeries();
+			fields.add(Book.Field.SERIES);
+		}
+		if (!Objects.equals(oldISBN, modbook.getISBN())) {
+			newISBN = modbook.getISBN();
+			fields.add(Book.Field.ISBN);
+		}
+		if (oldPublishYear != modbook.getPublishYear()) {
+			newPublishYear = modbook.getPublishYear();
+			fields.add(Book.Field.YEAR);
+		}
+		if (oldCoverType != modbook.getCoverType()) {
+			newCoverType = modbook.getCoverType();
+			fields.add(Book.Field.COVER);
+		}
+
+		// Hash the original authors on their names. A book may list the same
+		// name more than once so each key holds the authors in list order.
+		HashMap<String, ArrayDeque<Author>> origAuthors = new HashMap<String, ArrayDeque<Author>>();
+		for (Author a : book.getAuthors())
+			origAuthors.computeIfAbsent(a.nameKey(), k -> new ArrayDeque<Author>()).add(a);
+
+		// Any new author not matched is added. A matched author is modified if
+		// any part of their name differs.
+		for (Author new_auth : modbook.getAuthors()) {
+			ArrayDeque<Author> matches = origAuthors.get(new_auth.nameKey());
+			if ((matches == null) || matches.isEmpty())
+				addedAuthors.add(new_auth);
+			else {
+				Author orig_auth = matches.poll();
+				if (!orig_auth.isSameName(new_auth))
+					modifiedAuthors.put(orig_auth, new_auth);
+			}
+		}
+
+		// Any original author left unmatched is removed
+		Set<Author> unmatched = Collections.newSetFromMap(new IdentityHashMap<Author, Boolean>());
+		for (ArrayDeque<Author> matches : origAuthors.values())
+			unmatched.addAll(matches);
+		for (Author a : book.getAuthors())
+			if (unmatched.contains(a))
+				removedAuthors.add(a);
+
+		if (!addedAuthors.isEmpty() || !removedAuthors.isEmpty() || !modifiedAuthors.isEmpty())
+			fields.add(Book.Field.AUTHORS);
+	}
+
+	/**
+	 * Creates the delta which changes only the series of the passed book.
+	 *
+	 * @param book The original book
+	 * @param series The new series of the book. Null for no series.
+	 */
+	BookDelta(Book book, String series) {
+		oldTitle = newTitle = book.getTitle();
+		oldSeries = newSeries = book.getSeries();
+		oldISBN = newISBN = book.getISBN();
+		oldPublishYear = newPublishYear = book.getPublishYear();
+		oldCoverType = newCoverType = book.getCoverType();
+		if ((series != null) && series.equals(""))
+			series = null;
+		if (!Objects.equals(oldSeries, series)) {
+			newSeries = series;
+			fields.add(Book.Field.SERIES);
+		}
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Returns true if the modified book does not differ from the original
+	 * @return True if nothing changed
+	 */
+	public boolean isEmpty() {
+		return fields.isEmpty();
+	}
+
+	/**
+	 * Returns the fields of the book which changed
+	 * @return The changed fields
+	 */
+	public Set<Book.Field> getChangedFields() {
+		return Collections.unmodifiableSet(fields);
+	}
+
+	/**
+	 * Returns true if the passed field of the book changed
+	 * @param field The book field
+	 * @return True if the field changed
+	 */
+	public boolean isChanged(Book.Field field) {
+		return fields.contains(field);
+	}
+
+	/**
+	 * Get the title of the book before modification
+	 * @return The original title
+	 */
+	public String getOldTitle() {
+		return oldTitle;
+	}
+
+	/**
+	 * Get the title of the book after modification
+	 * @return The modified title
+	 */
+	public String getNewTitle() {
+		return newTitle;
+	}
+
+	/**
+	 * Get the series of the book before modification
+	 * @return The original series
+	 */
+	public String getOldSeries() {
+		return oldSeries;
+	}
+
+	/**
+	 * Get the series of the book after modification
+	 * @return The modified series
+	 */
+	public String getNewSeries() {
+		return newSeries;
+	}
+
+	/**
+	 * Get the ISBN of the book before modification
+	 * @return The original ISBN
+	 */
+	public String getOldISBN() {
+		return oldISBN;
+	}
+
+	/**
+	 * Get the ISBN of the book after modification
+	 * @return The modified ISBN
+	 */
+	public String getNewISBN() {
+		return newISBN;
+	}
+
+	/**
+	 * Get the publish year of the book before modification
+	 * @return The original publish year
+	 */
+	public int getOldPublishYear() {
+		return oldPublishYear;
+	}
+
+	/**
+	 * Get the publish year of the book after modification
+	 * @return The modified publish year
+	 */
+	public int getNewPublishYear() {
+		return newPublishYear;
+	}
+
+	/**
+	 * Get the cover type of the book before modification
+	 * @return The original cover type
+	 */
+	public int getOldCoverType() {
+		return oldCoverType;
+	}
+
+	/**
+	 * Get the cover type of the book after modification
+	 * @return The modified cover type
+	 */
+	public int getNewCoverType() {
+		return newCoverType;
+	}
+
+	/**
+	 * Get the authors added to the book
+	 * @return The added authors
+	 */
+	public List<Author> getAddedAuthors() {
+		return Collections.unmodifiableList(addedAuthors);
+	}
+
+	/**
+	 * Get the original authors removed from the book
+	 * @return The removed authors
+	 */
+	public List<Author> getRemovedAuthors() {
+		return Collections.unmodifiableList(removedAuthors);
+	}
+
+	/**
+	 * Get the original authors of the book whose names are modified, each
+	 * mapped to the author holding the modified name. The map is keyed on
+	 * the author objects, as authors do not hash on their names.
+	 * @return The modified authors
+	 */
+	public Map<Author, Author> getModifiedAuthors() {
+		return Collections.unmodifiableMap(modifiedAuthors);
+	}
+
+	// Modification Methods
+
+	/**
+	 * Applies the changes to the passed original book.
+	 *
+	 * @param book The original book the delta was created from
+	 */
+	void applyTo(Book book) {
+		book.title = newTitle;
+		book.series = newSeries;
+		book.ISBN = newISBN;
+		book.publishYear = newPublishYear;
+		book.coverType = newCoverType;
+		for (Map.Entry<Author, Author> e : modifiedAuthors.entrySet())
+			e.getKey().isModified(e.getValue());
+		if (!removedAuthors.isEmpty()) {
+			Set<Author> removed = Collections.newSetFromMap(new IdentityHashMap<Author, Boolean>());
+			removed.addAll(removedAuthors);
+			book.authors.removeIf(removed::contains);
+		}
+		book.authors.addAll(addedAuthors);
+	}
+}
@@ -0,0 +1,33 @@
+package com.amac.BookLib;
+
+import java.util.LinkedList;
+
+/**
+ * A <code>BookFilter</code> finds the books of a library whose title,
+ * authors, series or ISBN contain a piece of text, ignoring case, so the
+ * books displayed can be filtered as the user types. A filter holds the
+ * books of the library as they were when it was got from
+ * <code>BookLibrary.getBookFilter</code>, and may be used on another
+ * thread. The strings of the books may only be read when the filter is
+ * first used, so a filter run while the library is changed may match a
+ * changed book by its old or new fields, or fail. Once the library has
+ * changed it returns a different filter, and the results of the old one
+ * are to be discarded and the text filtered again.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+public interface BookFilter {
+
+	/**
+	 * Returns the books whose title, authors, series or ISBN contain the
+	 * passed text, ignoring case, in book list order. The filter stops by
+	 * throwing a <code>CancellationException</code> if the thread running
+	 * it is interrupted.
+	 *
+	 * @param text The text to look for
+	 * @return Linked list of the books containing the text
+	 */
+	LinkedList<Book> filter(String text);
+}
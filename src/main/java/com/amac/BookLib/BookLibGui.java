@@ -3,9 +3,17 @@ package com.amac.BookLib;
 import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.*;
 import javax.swing.table.*;
 import java.util.*;
+import java.util.List;
+import java.text.Collator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.*;
 
 import com.opencsv.CSVWriter;
@@ -50,19 +58,30 @@ class BookLibGuiFrame extends JFrame {
 	private static final int DEFAULT_HEIGHT = 600;
 	private static final int BORDER_WIDTH = 30;
 
-	// Extension for book library database files
+	// Extensions for book library database files, in XML and binary formats
 	private static final String BOOKLIBRARYEXTENSION = "bdb";
+	private static final String BOOKLIBRARYBINARYEXTENSION = "bdbx";
 
 	// Current open book library
 	private BookLibrary bookLibrary;
 
 	// Currently displayed book list. This could be the complete
 	// library or a refined search list.
-	private LinkedList<Book> currentDisplayBookList;
+	private List<Book> currentDisplayBookList;
 
 	// Indicates if displaying a refined search list
 	private boolean displayingSearchList = false;
 
+	// The displayed search list in ascending order and the sort type it is
+	// sorted on. Displayed as it is or reversed. The sort type is null if the
+	// list needs sorting.
+	private List<Book> searchList = null;
+	private librarySortType searchListSortType = null;
+
+	// Locale whose collation orders the titles and author names of the
+	// library. Null for the order of the book list.
+	private Locale collationLocale = null;
+
 	// Indicates if the displayed search list was using case insensitive search
 	private boolean caseInsensitiveDisplayedSearchList = false;
 
@@ -74,9 +93,20 @@ class BookLibGuiFrame extends JFrame {
 	// Data modified flag. Used to signal before close need to save data
 	private boolean dataModified = false;
 
+	// Flags the data as modified on any change made to the open book library
+	private final BookLibraryListener libraryChangeListener = new BookLibraryListener() {
+		public void libraryChanged(BookLibraryEvent e) {
+			dataModified = true;
+		}
+	};
+
 	// File which holds the book library data in XML format
 	private File dataFile = null;
 
+	// Journal recording the changes to the book library since the data file
+	// was last written in full
+	private BookLibraryJournal journal = null;
+
 	// Object holders used to pass between dialogs
 	private BookSearchObject searchObj;
 	private Book bookToAdd;
@@ -90,6 +120,21 @@ class BookLibGuiFrame extends JFrame {
 	// Panels displaying data
 	private BookLibPanel bookLibPanel;
 
+	// Dialog showing the progress of the background task running
+	private TaskProgressDialog taskProgressDialog;
+
+	// Text of the live filter applied to the books displayed, empty if none,
+	// and the filter search still running
+	private String displayedFilter = "";
+	private BookLibTask<LinkedList<Book>> filterTask = null;
+
+	// Filters the books displayed once the user pauses typing in the filter field
+	private final ActionListener filterListener = new ActionListener() {
+		public void actionPerformed(ActionEvent event) {
+			filterLibrary(event.getActionCommand());
+		}
+	};
+
 	//	**File** Menu Items
 	private final JMenuItem newItem,
 		openItem,
@@ -108,6 +153,7 @@ class BookLibGuiFrame extends JFrame {
 		pasteItem,
 		addBookItem,
 		modifyBookItem,
+		setSeriesItem,
 		deleteBookItem;
 
 	// **Search** Menu Items
@@ -116,7 +162,8 @@ class BookLibGuiFrame extends JFrame {
 		searchBySeriesItem;
 
 	// **View** Menu Items
-	final JMenuItem allBooksItem, sortByBookTitlesItem, sortByBookAuthorsItem, sortByBookPubslishDateItem;
+	final JMenuItem allBooksItem, sortByBookTitlesItem, sortByBookAuthorsItem, sortByBookPubslishDateItem,
+		sortLanguageItem;
 
 	/**
 	 * Return the file name extension if it exists.
@@ -128,6 +175,15 @@ class BookLibGuiFrame extends JFrame {
 		return extension;
 	}
 
+	/**
+	 * Return true if the passed file name extension is that of a book library
+	 * database file, in either the XML or binary format.
+	*/
+	private boolean isBookLibraryExtension(String extension) {
+		return BOOKLIBRARYEXTENSION.equals(extension)
+			|| BOOKLIBRARYBINARYEXTENSION.equals(extension);
+	}
+
 	/**
 	 * Opens the Save or Load file dialog based on the passed mode. The
 	 * book library file filter is applied to refine the dialog only to
@@ -143,7 +199,7 @@ class BookLibGuiFrame extends JFrame {
 		int returnVal;
 
 		JFileChooser fileChooser = new JFileChooser();
-		FileNameExtensionFilter fileNameExtensionFilter = new FileNameExtensionFilter("Book Library Database", BOOKLIBRARYEXTENSION);
+		FileNameExtensionFilter fileNameExtensionFilter = new FileNameExtensionFilter("Book Library Database", BOOKLIBRARYEXTENSION, BOOKLIBRARYBINARYEXTENSION);
 		fileChooser.setCurrentDirectory(new File(""));
 		fileChooser.addChoosableFileFilter(fileNameExtensionFilter);
 		fileChooser.setFileFilter(fileNameExtensionFilter);
@@ -179,6 +235,7 @@ class BookLibGuiFrame extends JFrame {
 			printItem.setEnabled(true);
 			addBookItem.setEnabled(true);
 			modifyBookItem.setEnabled(true);
+			setSeriesItem.setEnabled(true);
 			deleteBookItem.setEnabled(true);
 			searchByAuthorItem.setEnabled(true);
 			searchByBookItem.setEnabled(true);
@@ -198,6 +255,7 @@ class BookLibGuiFrame extends JFrame {
 			printItem.setEnabled(false);
 			addBookItem.setEnabled(false);
 			modifyBookItem.setEnabled(false);
+			setSeriesItem.setEnabled(false);
 			deleteBookItem.setEnabled(false);
 			searchByAuthorItem.setEnabled(false);
 			searchByBookItem.setEnabled(false);
@@ -209,6 +267,63 @@ class BookLibGuiFrame extends JFrame {
 		}
 	}
 
+	/**
+	 * Returns true if the whole library is displayed in one of the orders the
+	 * library keeps its books in, ascending or descending. A change to the
+	 * library then leaves the displayed rows in order and the table need only
+	 * be told of the rows changed.
+	 */
+	private boolean displayingLibraryOrder() {
+		return !displayingSearchList
+			&& (currentDisplayBookList == libraryDisplayList());
+	}
+
+	/**
+	 * Returns the position of the passed book in the displayed library order.
+	 *
+	 * @param book The book in the library
+	 */
+	private int displayedLibraryIndex(Book book) {
+		return bookLibrary.getBookIndex(book, libraryOrder(currentSortType), ascendingSort);
+	}
+
+	/**
+	 * Returns the order kept by the library for the passed sort type.
+	 *
+	 * @param sortType Whether sorted on book title, author or publish date
+	 */
+	private static BookLibrary.Order libraryOrder(librarySortType sortType) {
+		if (sortType == librarySortType.AUTHORSORT)
+			return BookLibrary.Order.AUTHOR;
+		if (sortType == librarySortType.PUBLISHDATESORT)
+			return BookLibrary.Order.PUBLISHDATE;
+		return BookLibrary.Order.TITLE;
+	}
+
+	/**
+	 * Returns the whole library in the current sort. The library keeps its
+	 * books in each sort order, and a view of each order reversed, so no sort
+	 * or copy is needed.
+	 */
+	private List<Book> libraryDisplayList() {
+		return bookLibrary.getBookList(libraryOrder(currentSortType), ascendingSort);
+	}
+
+	/**
+	 * Display the passed search results, which are in book list order, in the
+	 * current sort.
+	 *
+	 * @param results The books found
+	 */
+	private void displaySearchList(List<Book> results) {
+		searchList = new ArrayList<Book>(results);
+		// The book list is in title order unless the titles are collated
+		searchListSortType = (bookLibrary.getCollator() == null) ? librarySortType.TITLESORT : null;
+		displayingSearchList = true;
+		ascendingSort = !ascendingSort;
+		SortLibrary(currentSortType);
+	}
+
 	/**
 	 * Resorts the list in the same order and on the same sort type as it is currently sorted.
 	 * This is used when you have added or modified information in the book library.
@@ -217,6 +332,7 @@ class BookLibGuiFrame extends JFrame {
 	 * sort as SortLibrary will flip the current value. ie. we want to keep the same sort order.
 	 */
 	private void ResortLibrary() {
+		searchListSortType = null;
 		ascendingSort = !ascendingSort;
 		SortLibrary(currentSortType);
 	}
@@ -228,58 +344,428 @@ class BookLibGuiFrame extends JFrame {
 	 * @param typeToSort Whether to sort on book title, author or publish date.
 	 */
 	private void SortLibrary(librarySortType typeToSort) {
-		switch (typeToSort) {
-			case TITLESORT:
-				currentSortType = librarySortType.TITLESORT;
-				if (ascendingSort) {
-					Collections.sort(currentDisplayBookList, Collections.reverseOrder(new BookListCompare()));
-					ascendingSort = false;
-				} else {
-					Collections.sort(currentDisplayBookList, new BookListCompare());
-					ascendingSort = true;
+		currentSortType = typeToSort;
+		ascendingSort = !ascendingSort;
+		if (!displayingSearchList) {
+			// The library keeps its books in each sort order
+			currentDisplayBookList = libraryDisplayList();
+			return;
+		}
+
+		if (searchListSortType != typeToSort) {
+			Collator collator = bookLibrary.getCollator();
+			Comparator<Book> comparator;
+			switch (typeToSort) {
+				case AUTHORSORT:
+					comparator = new AuthorListCompare(collator);
+					break;
+				case PUBLISHDATESORT:
+					comparator = new PublishDateListCompare(collator);
+					break;
+				default:
+					comparator = new BookListCompare(collator);
+					break;
+			}
+			BookOrder.sort(searchList, comparator, collator);
+			searchListSortType = typeToSort;
+		}
+		// A descending sort is the ascending list read from its end
+		currentDisplayBookList = ascendingSort ? searchList : new ReversedBookList(searchList);
+	}
+
+	/**
+	 * Ask for the language whose order book titles and author names are
+	 * sorted in, and resort the displayed books into that order.
+	 */
+	private void chooseCollationLocale() {
+		ArrayList<Locale> locales = new ArrayList<Locale>();
+		for (Locale l : Collator.getAvailableLocales())
+			if (!l.getDisplayName().isEmpty())
+				locales.add(l);
+		locales.sort(Comparator.comparing(Locale::getDisplayName));
+		locales.add(0, null);
+		String[] names = new String[locales.size()];
+		names[0] = "Character Code Order";
+		for (int i = 1; i < names.length; i++)
+			names[i] = locales.get(i).getDisplayName();
+
+		Object choice = JOptionPane.showInputDialog(
+			this,
+			"Sort book titles and authors in the order of:",
+			"Sort Order Language",
+			JOptionPane.QUESTION_MESSAGE,
+			null,
+			names,
+			names[Math.max(0, locales.indexOf(collationLocale))]);
+		if (choice == null)
+			return;
+		collationLocale = locales.get(Arrays.asList(names).indexOf(choice));
+		if (bookLibrary != null) {
+			bookLibrary.setCollationLocale(collationLocale);
+			if (currentDisplayBookList != null) {
+				ResortLibrary();
+				bookLibPanel.UpdateData(
+					currentDisplayBookList,
+					displayingSearchList);
+				setVisible(true);
+			}
+		}
+	}
+
+	/**
+	 * Write the book library to the passed data file on a background thread.
+	 * Saving to the journalled data file only needs the changes made since
+	 * the last save to be written, until the journal is due for compaction.
+	 * Otherwise the whole library is written and a new journal started for
+	 * the data file.
+	 *
+	 * @param datafile The file to write the library to
+	 * @param confirm If the user is told once the library has been written
+	 * @param then Run once the write has finished, whether or not it succeeded.
+	 *             May be null.
+	 */
+	private void saveLibrary(final File datafile, final boolean confirm, final Runnable then) {
+		final boolean commitOnly = (journal != null)
+			&& journal.getLibraryFile().equals(datafile)
+			&& !journal.needsCompaction();
+		BookLibraryJournal closing = null;
+		if (!commitOnly) {
+			if ((journal != null) && !journal.getLibraryFile().equals(datafile)) {
+				closing = journal;
+				journal = null;
+			}
+			if (journal == null)
+				try {
+					journal = new BookLibraryJournal(bookLibrary, datafile);
+				} catch (IOException e) {
+					showTaskError("Unable to write book libray to file: ", e);
+					if (then != null)
+						then.run();
+					return;
 				}
-				break;
+		}
+		final BookLibraryJournal oldJournal = closing;
+		final BookLibraryJournal saveJournal = journal;
+
+		// A lazily loaded library holds its file mapped, so load it in full
+		// here, where the library is changed, before the file is written over
+		if (!commitOnly)
+			bookLibrary.releaseFile(datafile);
+
+		runTask(new BookLibTask<Void>("Saving library to " + datafile.getName(), false) {
+			protected Void doInBackground() throws IOException {
+				if (oldJournal != null)
+					oldJournal.close();
+				if (commitOnly)
+					saveJournal.commit();
+				else
+					saveJournal.compact();
+				return null;
+			}
 
-			case AUTHORSORT:
-				currentSortType = librarySortType.AUTHORSORT;
-				if (ascendingSort) {
-					Collections.sort(currentDisplayBookList, Collections.reverseOrder(new AuthorListCompare()));
-					ascendingSort = false;
-				} else {
-					Collections.sort(currentDisplayBookList, new AuthorListCompare());
-					ascendingSort = true;
+			protected void succeeded(Void result) {
+				dataModified = false;
+				if (confirm)
+					JOptionPane.showMessageDialog(
+						bookLibPanel,
+						"Successfully wrote library database to " + datafile.toString() + ".",
+						"Information",
+						JOptionPane.INFORMATION_MESSAGE);
+				if (then != null)
+					then.run();
+			}
+
+			protected void failed(Exception e) {
+				showTaskError("Unable to write book libray to file: ", e);
+				if (then != null)
+					then.run();
+			}
+		});
+	}
+
+	/**
+	 * Load the book library from the passed data file on a background thread
+	 * and display it once loaded, sorted by book title. The heap saved by
+	 * sharing the strings read from an XML file is logged once it is loaded.
+	 *
+	 * @param datafile The file to read the library from
+	 */
+	private void openLibrary(final File datafile) {
+		runTask(new BookLibTask<BookLibrary>("Loading library from " + datafile.getName(), true) {
+			private BookLibraryJournal openedJournal;
+			private String pooledStrings;
+
+			protected BookLibrary doInBackground() throws Exception {
+				BookLibrary library = BookLibrary.load(datafile, new BookLibraryLoadProgress() {
+					public void loadProgress(int books, long bytesRead, long totalBytes) {
+						if (!reportProgress(bytesRead, totalBytes))
+							throw new CancellationException("Load cancelled");
+					}
+
+					public void stringsPooled(long strings, long heapBefore, long heapAfter) {
+						pooledStrings = strings + " series and author name strings take "
+							+ (heapAfter / 1024) + " KB shared rather than "
+							+ (heapBefore / 1024) + " KB";
+					}
+				});
+				// Apply any changes saved to the journal since the data file
+				// was last written in full
+				BookLibraryJournal.replay(library, datafile);
+				openedJournal = new BookLibraryJournal(library, datafile);
+				return library;
+			}
+
+			protected void succeeded(BookLibrary library) {
+				if (pooledStrings != null)
+					System.out.println("Loaded " + library.length() + " books from "
+						+ datafile.getName() + ": " + pooledStrings);
+				bookLibrary = library;
+				dataFile = datafile;
+				journal = openedJournal;
+				bookLibrary.addBookLibraryListener(libraryChangeListener);
+				bookLibrary.setCollationLocale(collationLocale);
+				// Force an ascending title sort
+				ascendingSort = true;
+				currentSortType = librarySortType.TITLESORT;
+				currentDisplayBookList = libraryDisplayList();
+				bookLibPanel.UpdateData(
+					currentDisplayBookList,
+					displayingSearchList);
+
+				toggleMenuItems(true);
+				exportCSVItem.setEnabled(true);
+				exportHtmlItem.setEnabled(true);
+				setVisible(true);
+			}
+
+			protected void failed(Exception e) {
+				showTaskError("Unable to read file selected: ", e);
+			}
+		});
+	}
+
+	/**
+	 * Search the book library on a background thread and display the books
+	 * found.
+	 *
+	 * @param search The search criteria
+	 * @param caseInsensitive If we should use a case insensitive search
+	 */
+	private void searchLibrary(final BookSearchObject search, final boolean caseInsensitive) {
+		final BookLibrary library = bookLibrary;
+		runTask(new BookLibTask<LinkedList<Book>>("Searching library", true) {
+			protected LinkedList<Book> doInBackground() {
+				return library.searchResults(search, caseInsensitive);
+			}
+
+			protected void succeeded(LinkedList<Book> results) {
+				clearFilter();
+				searchObj = search;
+				displaySearchList(results);
+				caseInsensitiveDisplayedSearchList = caseInsensitive;
+				bookLibPanel.UpdateData(
+					currentDisplayBookList,
+					displayingSearchList);
+				setVisible(true);
+			}
+
+			protected void failed(Exception e) {
+				showTaskError("Unable to search book library: ", e);
+			}
+		});
+	}
+
+	/**
+	 * Export the books displayed to a file chosen by the user on a background
+	 * thread, in HTML or CSV format.
+	 *
+	 * @param html True to export in HTML format and false for CSV format
+	 */
+	private void exportDisplayedBooks(final boolean html) {
+		final File file = html
+			? bookLibPanel.chooseExportFile("HTML", ".html")
+			: bookLibPanel.chooseExportFile("CSV", ".csv");
+		if (file == null)
+			return;
+		final List<Book> books = (currentDisplayBookList != null)
+			? currentDisplayBookList
+			: Collections.<Book>emptyList();
+		runTask(new BookLibTask<Void>("Exporting to " + file.getName(), true) {
+			protected Void doInBackground() throws IOException {
+				if (html)
+					BookLibPanel.exportToHTML(books, file, this);
+				else
+					BookLibPanel.exportToCSV(books, file, this);
+				return null;
+			}
+
+			protected void succeeded(Void result) {
+				JOptionPane.showMessageDialog(
+					bookLibPanel,
+					"Book Information exported to " + file.getAbsolutePath(),
+					"Information",
+					JOptionPane.INFORMATION_MESSAGE);
+			}
+
+			protected void failed(Exception e) {
+				showTaskError("Unable to write to and close " + file.getName() + " :", e);
+			}
+		});
+	}
+
+	/**
+	 * Filter the books displayed to those whose title, authors, series or
+	 * ISBN contain the passed text. The filter runs on a background thread
+	 * so typing is not held up, and a filter still running is cancelled as
+	 * the text it looks for has been typed over. Empty text displays every
+	 * book again.
+	 *
+	 * @param text The text typed into the filter field
+	 */
+	private void filterLibrary(final String text) {
+		if (filterTask != null) {
+			filterTask.cancel(true);
+			filterTask = null;
+		}
+		if (bookLibrary == null)
+			return;
+		if (text.isEmpty()) {
+			displayedFilter = "";
+			displayingSearchList = false;
+			currentDisplayBookList = libraryDisplayList();
+			caseInsensitiveDisplayedSearchList = false;
+			bookLibPanel.UpdateData(
+				currentDisplayBookList,
+				displayingSearchList);
+			return;
+		}
+
+		final BookLibrary library = bookLibrary;
+		final BookFilter filter = bookLibrary.getBookFilter();
+		filterTask = new BookLibTask<LinkedList<Book>>("Filtering library", true) {
+			protected LinkedList<Book> doInBackground() {
+				return filter.filter(text);
+			}
+
+			protected void succeeded(LinkedList<Book> results) {
+				filterTask = null;
+				if (library != bookLibrary)
+					return;
+				if (library.getBookFilter() != filter) {
+					// The library changed while it was filtered
+					filterLibrary(text);
+					return;
 				}
+				displayedFilter = text;
+				displaySearchList(results);
+				caseInsensitiveDisplayedSearchList = true;
+				bookLibPanel.UpdateData(
+					currentDisplayBookList,
+					displayingSearchList);
+			}
 
-				break;
-			case PUBLISHDATESORT:
-				currentSortType = librarySortType.PUBLISHDATESORT;
-				if (ascendingSort) {
-					Collections.sort(currentDisplayBookList, Collections.reverseOrder(new PublishDateListCompare()));
-					ascendingSort = false;
-				} else {
-					Collections.sort(currentDisplayBookList, new PublishDateListCompare());
-					ascendingSort = true;
+			protected void failed(Exception e) {
+				filterTask = null;
+				if ((library == bookLibrary) && (library.getBookFilter() != filter)) {
+					// The books changed as they were read for the filter
+					filterLibrary(text);
+					return;
 				}
+				showTaskError("Unable to filter book library: ", e);
+			}
+		};
+		filterTask.execute();
+	}
 
-				break;
+	/**
+	 * Drop the live filter, as another list of books is to be displayed.
+	 */
+	private void clearFilter() {
+		if (filterTask != null) {
+			filterTask.cancel(true);
+			filterTask = null;
+		}
+		displayedFilter = "";
+		bookLibPanel.clearFilter();
+	}
 
-			default:
-				break;
+	/**
+	 * Close the open book library, throwing away any changes not saved.
+	 */
+	private void closeLibrary() {
+		if (journal != null) {
+			// Any changes not saved are thrown away
+			try {
+				journal.close();
+			} catch (IOException e) {
+				e.printStackTrace(System.err);
+			}
+			journal = null;
 		}
+		clearFilter();
+		bookLibrary = null;
+		dataModified = false;
+		Container contentPane = getContentPane();
+		contentPane.remove(bookLibPanel);
+		bookLibPanel = new BookLibPanel(BORDER_WIDTH);
+		bookLibPanel.addFilterListener(filterListener);
+		contentPane.add(bookLibPanel);
+		contentPane.repaint();
+		toggleMenuItems(false);
+		exportCSVItem.setEnabled(false);
+		exportHtmlItem.setEnabled(false);
+		setVisible(true);
 	}
 
-	private void writeSortedXML(File datafile) throws FileNotFoundException, IOException {
-		// Assure the library is written in book title ascending sorted order
-		librarySortType saveCurrentSortType = currentSortType;
-		boolean saveAscendingSort = ascendingSort;
-		ascendingSort = false;
-		SortLibrary(librarySortType.TITLESORT);
+	/**
+	 * Run the passed task on a background thread so the window keeps
+	 * responding while it works. The menus are disabled until the task
+	 * finishes, so the library cannot be changed under it, and the task
+	 * progress dialog shows how far it has got.
+	 *
+	 * @param task The task to run
+	 */
+	private void runTask(BookLibTask<?> task) {
+		if (taskProgressDialog == null)
+			taskProgressDialog = new TaskProgressDialog(this);
+		setMenusEnabled(false);
+		task.whenFinished(new Runnable() {
+			public void run() {
+				taskProgressDialog.hideTask();
+				setMenusEnabled(true);
+			}
+		});
+		taskProgressDialog.showTask(task);
+		task.execute();
+	}
 
-		bookLibrary.writeXML(datafile);
+	/**
+	 * Enable or disable every menu of the menu bar, and so the keyboard
+	 * short cuts of their menu items.
+	 *
+	 * @param enabled True to enable the menus
+	 */
+	private void setMenusEnabled(boolean enabled) {
+		JMenuBar menuBar = getJMenuBar();
+		for (int i = 0; i < menuBar.getMenuCount(); i++)
+			menuBar.getMenu(i).setEnabled(enabled);
+	}
 
-		// Resort current sort order
-		currentSortType = saveCurrentSortType;
-		ascendingSort = saveAscendingSort;
+	/**
+	 * Tell the user a background task failed with the passed exception.
+	 *
+	 * @param message The message shown ahead of the exception message
+	 * @param e The exception the task failed with
+	 */
+	private void showTaskError(String message, Exception e) {
+		JOptionPane.showMessageDialog(
+			bookLibPanel,
+			message
+				+ e.getMessage()
+				+ "\nSee console output for debugging information.",
+			"Error",
+			JOptionPane.ERROR_MESSAGE);
+		e.printStackTrace(System.err);
 	}
 
 	/**
@@ -339,7 +825,7 @@ class BookLibGuiFrame extends JFrame {
 						return;
 				} else {
 					String extension = getExtensionByStringHandling(dataFile.getName());
-					if (!BOOKLIBRARYEXTENSION.equals(extension))
+					if (!isBookLibraryExtension(extension))
 						// Add book library database file extension
 						dataFile = new File(dataFile.getName() + "." + BOOKLIBRARYEXTENSION);
 					if (dataFile.exists()) {
@@ -350,6 +836,8 @@ class BookLibGuiFrame extends JFrame {
 							JOptionPane.ERROR_MESSAGE);
 					} else {
 						bookLibrary = new BookLibrary();
+						bookLibrary.addBookLibraryListener(libraryChangeListener);
+						bookLibrary.setCollationLocale(collationLocale);
 						ascendingSort = true;
 						currentSortType = librarySortType.TITLESORT;
 						currentDisplayBookList = null;
@@ -366,40 +854,16 @@ class BookLibGuiFrame extends JFrame {
 
 		openItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
-				dataFile = saveOrLoadFileDialog(JFileChooser.OPEN_DIALOG);
-				try {
-					if (dataFile == null) {
-						JOptionPane.showMessageDialog(
-							bookLibPanel,
-							"Action cancelled. No file selected.",
-							"Information",
-							JOptionPane.INFORMATION_MESSAGE);
-						return;
-					};
-					bookLibrary = new BookLibrary(dataFile);
-				} catch (Exception e) {
+				File f = saveOrLoadFileDialog(JFileChooser.OPEN_DIALOG);
+				if (f == null) {
 					JOptionPane.showMessageDialog(
 						bookLibPanel,
-						"Unable to read file selected: "
-							+ e.getMessage()
-							+ "\nSee console output for debugging information.",
-						"Error",
-						JOptionPane.ERROR_MESSAGE);
-					e.printStackTrace(System.err);
+						"Action cancelled. No file selected.",
+						"Information",
+						JOptionPane.INFORMATION_MESSAGE);
+					return;
 				}
-				currentDisplayBookList = bookLibrary.getBookList();
-				// Force an ascending title sort
-				ascendingSort = true;
-				currentSortType = librarySortType.TITLESORT;
-				ResortLibrary();
-				bookLibPanel.UpdateData(
-					currentDisplayBookList,
-					displayingSearchList);
-
-				toggleMenuItems(true);
-				exportCSVItem.setEnabled(true);
-				exportHtmlItem.setEnabled(true);
-				setVisible(true);
+				openLibrary(f);
 			}
 		});
 
@@ -411,29 +875,12 @@ class BookLibGuiFrame extends JFrame {
 				if (dataFile == null) {
 					dataFile = saveOrLoadFileDialog(JFileChooser.SAVE_DIALOG);
 					String extension = getExtensionByStringHandling(dataFile.getName());
-					if (!BOOKLIBRARYEXTENSION.equals(extension))
+					if (!isBookLibraryExtension(extension))
 						// Add book library database file extension
 						dataFile = new File(dataFile.getName() + "." + BOOKLIBRARYEXTENSION);
 				}
 				if (dataFile != null) {
-					try {
-						writeSortedXML(dataFile);
-						dataModified = false;
-						JOptionPane.showMessageDialog(
-							bookLibPanel,
-							"Successfully wrote library database to " + dataFile.toString() + ".",
-							"Information",
-							JOptionPane.INFORMATION_MESSAGE);
-					} catch (Exception e) {
-						JOptionPane.showMessageDialog(
-							bookLibPanel,
-							"Unable to write book libray to file: "
-								+ e.getMessage()
-								+ "\nSee console output for debugging information.",
-							"Error",
-							JOptionPane.ERROR_MESSAGE);
-						e.printStackTrace(System.err);
-					};
+					saveLibrary(dataFile, true, null);
 				} else {
 					JOptionPane.showMessageDialog(
 						bookLibPanel,
@@ -461,36 +908,21 @@ class BookLibGuiFrame extends JFrame {
 					if (choice == 0) {
 						dataFile = saveOrLoadFileDialog(FileDialog.SAVE);
 						String extension = getExtensionByStringHandling(dataFile.getName());
-						if (!BOOKLIBRARYEXTENSION.equals(extension))
+						if (!isBookLibraryExtension(extension))
 							// Add book library database file extension
 							dataFile = new File(dataFile.getName() + "." + BOOKLIBRARYEXTENSION);
 						if (dataFile != null) {
-							try {
-								writeSortedXML(dataFile);
-							} catch (Exception e) {
-								JOptionPane.showMessageDialog(
-									bookLibPanel,
-									"Unable to write book libray to file: "
-										+ e.getMessage()
-										+ "\nSee console output for debugging information.",
-									"Error",
-									JOptionPane.ERROR_MESSAGE);
-								e.printStackTrace(System.err);
-							};
+							// Close the library once it has been written
+							saveLibrary(dataFile, false, new Runnable() {
+								public void run() {
+									closeLibrary();
+								}
+							});
+							return;
 						}
 					};
 				};
-				bookLibrary = null;
-				dataModified = false;
-				Container contentPane = getContentPane();
-				contentPane.remove(bookLibPanel);
-				bookLibPanel = new BookLibPanel(BORDER_WIDTH);
-				contentPane.add(bookLibPanel);
-				contentPane.repaint();
-				toggleMenuItems(false);
-				exportCSVItem.setEnabled(false);
-				exportHtmlItem.setEnabled(false);
-				setVisible(true);
+				closeLibrary();
 			}
 		});
 
@@ -500,7 +932,7 @@ class BookLibGuiFrame extends JFrame {
 				tempf = saveOrLoadFileDialog(FileDialog.SAVE);
 				if (tempf != null) {
 					String extension = getExtensionByStringHandling(tempf.getName());
-					if (!BOOKLIBRARYEXTENSION.equals(extension))
+					if (!isBookLibraryExtension(extension))
 						// Add book library database file extension
 						tempf = new File(tempf.getName() + "." + BOOKLIBRARYEXTENSION);
 					if (tempf.exists()) {
@@ -515,25 +947,7 @@ class BookLibGuiFrame extends JFrame {
 					}
 					if (!tempf.equals(dataFile))
 						dataFile = tempf;
-					try {
-						writeSortedXML(dataFile);
-						dataModified = false;
-						JOptionPane.showMessageDialog(
-							bookLibPanel,
-							"Successfully wrote library database to " + dataFile.toString() + ".",
-							"Information",
-							JOptionPane.INFORMATION_MESSAGE);
-
-					} catch (Exception e) {
-						JOptionPane.showMessageDialog(
-							bookLibPanel,
-							"Unable to write book libray to file: "
-								+ e.getMessage()
-								+ "\nSee console output for debugging information.",
-							"Error",
-							JOptionPane.ERROR_MESSAGE);
-						e.printStackTrace(System.err);
-					};
+					saveLibrary(dataFile, true, null);
 				} else {
 					JOptionPane.showMessageDialog(
 						bookLibPanel,
@@ -547,14 +961,14 @@ class BookLibGuiFrame extends JFrame {
 		exportCSVItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
 				if (bookLibPanel != null)
-					bookLibPanel.exportToCSV();
+					exportDisplayedBooks(false);
 			}
 		});
 
 		exportHtmlItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
 				if (bookLibPanel != null)
-					bookLibPanel.exportToHTML();
+					exportDisplayedBooks(true);
 			}
 		});
 
@@ -577,18 +991,13 @@ class BookLibGuiFrame extends JFrame {
 					if (choice == 1) {
 						dataFile = saveOrLoadFileDialog(FileDialog.SAVE);
 						if (dataFile != null) {
-							try {
-								writeSortedXML(dataFile);
-							} catch (Exception e) {
-								JOptionPane.showMessageDialog(
-									bookLibPanel,
-									"Unable to write book libray to file: "
-										+ e.getMessage()
-										+ "\nSee console output for debugging information.",
-									"Error",
-									JOptionPane.ERROR_MESSAGE);
-								e.printStackTrace(System.err);
-							};
+							// Exit once the library has been written
+							saveLibrary(dataFile, false, new Runnable() {
+								public void run() {
+									System.exit(0);
+								}
+							});
+							return;
 						}
 						System.exit(0);
 					}
@@ -635,16 +1044,28 @@ class BookLibGuiFrame extends JFrame {
 							AddModifyBookDialog.ADD_BOOK,
 							null,
 							modified)) {
-						dataModified = true;
 						bookToAdd = addModifyBookDialog.getBook();
 						bookLibrary.addBook(bookToAdd);
-						currentDisplayBookList = bookLibrary.getBookList();
-						ResortLibrary();  // Ensure added book in propery sort order
+						if (displayingLibraryOrder()) {
+							// The library has inserted the book in order
+							bookLibPanel.bookInserted(displayedLibraryIndex(bookToAdd));
+							setVisible(true);
+							return;
+						}
+						if (displayingSearchList && !displayedFilter.isEmpty()) {
+							// Redo the filter being displayed since the added book
+							// may now appear in the list
+							filterLibrary(displayedFilter);
+							setVisible(true);
+							return;
+						}
 						if (displayingSearchList)
 							// Need to redo search list being displayed since the added
 							// added book may now appear in the list
-							currentDisplayBookList =
-								bookLibrary.searchResults(searchObj, caseInsensitiveDisplayedSearchList);
+							displaySearchList(
+								bookLibrary.searchResults(searchObj, caseInsensitiveDisplayedSearchList));
+						else
+							ResortLibrary();  // Ensure added book in propery sort order
 						bookLibPanel.UpdateData(
 							currentDisplayBookList,
 							displayingSearchList);
@@ -670,6 +1091,7 @@ class BookLibGuiFrame extends JFrame {
 			public void actionPerformed(ActionEvent event) {
 				StringBuffer modified = new StringBuffer(8);
 				Book bookselected = bookLibPanel.getBookSelected();
+				int[] rowsselected = bookLibPanel.getRowsSelected();
 				if (bookselected == null)
 					JOptionPane.showMessageDialog(
 						bookLibPanel,
@@ -682,52 +1104,105 @@ class BookLibGuiFrame extends JFrame {
 							new AddModifyBookDialog(
 								BookLibGuiFrame.this,
 								AddModifyBookDialog.MODIFY_BOOK);
-					if (addModifyBookDialog
-						.showDialog(
-							AddModifyBookDialog.MODIFY_BOOK,
-							bookselected,
-							modified))
-						if (modified.toString().equals("NO"))
-							JOptionPane.showMessageDialog(
-								bookLibPanel,
-								"No data in book was modified",
-								"Book modify Warning",
-								JOptionPane.WARNING_MESSAGE);
-						else {
-							ResortLibrary();  // Ensure modified in propery sort order
-							dataModified = true;
-							bookLibPanel.UpdateData(
-								currentDisplayBookList,
-								displayingSearchList);
-							setVisible(true);
-						}
+					try {
+						if (addModifyBookDialog
+							.showDialog(
+								AddModifyBookDialog.MODIFY_BOOK,
+								bookselected,
+								modified))
+							if (modified.toString().equals("NO")
+								|| !bookLibrary.modifyBook(
+									bookselected,
+									addModifyBookDialog.getModifiedBook()))
+								JOptionPane.showMessageDialog(
+									bookLibPanel,
+									"No data in book was modified",
+									"Book modify Warning",
+									JOptionPane.WARNING_MESSAGE);
+							else if (displayingLibraryOrder()) {
+								// The library has moved the book to its new place in the order
+								bookLibPanel.bookMoved(
+									rowsselected[0],
+									displayedLibraryIndex(bookselected));
+								setVisible(true);
+							} else {
+								ResortLibrary();  // Ensure modified in propery sort order
+								bookLibPanel.UpdateData(
+									currentDisplayBookList,
+									displayingSearchList);
+								setVisible(true);
+							}
+					} catch (IllegalStateException e) {
+						JOptionPane.showMessageDialog(
+							bookLibPanel,
+							"Modified book already exists in the book library.\n Modification cancelled.",
+							"Error",
+							JOptionPane.ERROR_MESSAGE);
+					}
+				}
+			}
+		});
+		editMenu.addSeparator();
+
+		// Set the series of all the books selected in the library
+		setSeriesItem = editMenu.add("Set Series...");
+		setSeriesItem.setEnabled(false);
+		setSeriesItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				LinkedList<Book> booksselected = bookLibPanel.getBooksSelected();
+				int[] rowsselected = bookLibPanel.getRowsSelected();
+				if (booksselected.isEmpty())
+					JOptionPane.showMessageDialog(
+						bookLibPanel,
+						"No book selected",
+						"Book modify Error",
+						JOptionPane.ERROR_MESSAGE);
+				else {
+					String series =
+						JOptionPane.showInputDialog(
+							bookLibPanel,
+							"Series for the " + booksselected.size() + " selected books (blank for none)");
+					// The series is not sorted on so the books keep their rows
+					if ((series != null)
+						&& (bookLibrary.setSeries(booksselected, series) > 0)) {
+						bookLibPanel.booksUpdated(rowsselected);
+					}
+					setVisible(true);
 				}
 			}
 		});
 		editMenu.addSeparator();
 
-		// Delete a book in the library
+		// Delete the books selected in the library
 		deleteBookItem = editMenu.add("Delete Book...");
 		deleteBookItem.setAccelerator(
 			KeyStroke.getKeyStroke(KeyEvent.VK_D, InputEvent.SHIFT_DOWN_MASK));
 		deleteBookItem.setEnabled(false);
 		deleteBookItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
-				Book bookselected = bookLibPanel.getBookSelected();
-				if (bookselected == null)
+				LinkedList<Book> booksselected = bookLibPanel.getBooksSelected();
+				int[] rowsselected = bookLibPanel.getRowsSelected();
+				if (booksselected.isEmpty())
 					JOptionPane.showMessageDialog(
 						bookLibPanel,
 						"No book selected",
 						"Book delete Error",
 						JOptionPane.ERROR_MESSAGE);
 				else {
+					String message;
+					if (booksselected.size() == 1)
+						message = "Click OK to delete the book '"
+								+ booksselected.getFirst().getTitle()
+								+ "'?";
+					else
+						message = "Click OK to delete the "
+								+ booksselected.size()
+								+ " selected books?";
 					Object[] options = { "OK", "CANCEL" };
 					int choice =
 						JOptionPane.showOptionDialog(
 							bookLibPanel,
-							"Click OK to delete the book '"
-								+ bookselected.getTitle()
-								+ "'?",
+							message,
 							"Warning",
 							JOptionPane.DEFAULT_OPTION,
 							JOptionPane.WARNING_MESSAGE,
@@ -735,17 +1210,19 @@ class BookLibGuiFrame extends JFrame {
 							options,
 							options[0]);
 					if (choice == 0) {
-						dataModified = true;
-						bookLibrary.removeBook(bookselected);
-						currentDisplayBookList = bookLibrary.getBookList();
-						if (displayingSearchList)
-							// Need to redo search list being displayed since the deleted
-							// book should not be displayed
-							currentDisplayBookList =
-								bookLibrary.searchResults(searchObj, caseInsensitiveDisplayedSearchList);
-						bookLibPanel.UpdateData(
-							currentDisplayBookList,
-							displayingSearchList);
+						bookLibrary.removeAll(booksselected);
+						if (displayingLibraryOrder())
+							// The library has removed the rows from the displayed list
+							bookLibPanel.booksDeleted(rowsselected);
+						else {
+							// Drop the deleted books from the search list being displayed
+							// rather than redoing the search
+							Set<Book> deleted =
+								Collections.newSetFromMap(new IdentityHashMap<Book, Boolean>());
+							deleted.addAll(booksselected);
+							currentDisplayBookList.removeIf(deleted::contains);
+							bookLibPanel.booksDeleted(rowsselected);
+						}
 					}
 					setVisible(true);
 				}
@@ -764,19 +1241,10 @@ class BookLibGuiFrame extends JFrame {
 				if (authorSearchDialog == null)
 					authorSearchDialog =
 						new AuthorSearchDialog(BookLibGuiFrame.this);
-				if (authorSearchDialog.showDialog()) {
-					searchObj = authorSearchDialog.getSearchObject();
-					//searchObj.consoleOutput();
-					currentDisplayBookList =
-						bookLibrary.searchResults(searchObj, authorSearchDialog.getCaseInsensitiveSearch());
-					displayingSearchList = true;
-					caseInsensitiveDisplayedSearchList = authorSearchDialog.getCaseInsensitiveSearch();
-					bookLibPanel.UpdateData(
-						currentDisplayBookList,
-						displayingSearchList);
-					setVisible(true);
-
-				}
+				if (authorSearchDialog.showDialog())
+					searchLibrary(
+						authorSearchDialog.getSearchObject(),
+						authorSearchDialog.getCaseInsensitiveSearch());
 			}
 		});
 
@@ -788,18 +1256,10 @@ class BookLibGuiFrame extends JFrame {
 				if (bookSearchDialog == null)
 					bookSearchDialog =
 						new BookSearchDialog(BookLibGuiFrame.this);
-				if (bookSearchDialog.showDialog()) {
-					searchObj = bookSearchDialog.getSearchObject();
-					//searchObj.consoleOutput();
-					currentDisplayBookList =
-						bookLibrary.searchResults(searchObj, bookSearchDialog.getCaseInsensitiveSearch());
-					displayingSearchList = true;
-					caseInsensitiveDisplayedSearchList = bookSearchDialog.getCaseInsensitiveSearch();
-					bookLibPanel.UpdateData(
-						currentDisplayBookList,
-						displayingSearchList);
-					setVisible(true);
-				}
+				if (bookSearchDialog.showDialog())
+					searchLibrary(
+						bookSearchDialog.getSearchObject(),
+						bookSearchDialog.getCaseInsensitiveSearch());
 			}
 		});
 
@@ -811,18 +1271,10 @@ class BookLibGuiFrame extends JFrame {
 				if (seriesSearchDialog == null)
 					seriesSearchDialog =
 						new SeriesSearchDialog(BookLibGuiFrame.this);
-				if (seriesSearchDialog.showDialog()) {
-					searchObj = seriesSearchDialog.getBookSearchObject();
-					//searchObj.consoleOutput();
-					currentDisplayBookList =
-						bookLibrary.searchResults(searchObj, seriesSearchDialog.getCaseInsensitiveSearch());
-					displayingSearchList = true;
-					caseInsensitiveDisplayedSearchList = seriesSearchDialog.getCaseInsensitiveSearch();
-					bookLibPanel.UpdateData(
-						currentDisplayBookList,
-						displayingSearchList);
-					setVisible(true);
-				}
+				if (seriesSearchDialog.showDialog())
+					searchLibrary(
+						seriesSearchDialog.getBookSearchObject(),
+						seriesSearchDialog.getCaseInsensitiveSearch());
 			}
 		});
 
@@ -837,8 +1289,9 @@ class BookLibGuiFrame extends JFrame {
 		allBooksItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
 				if (bookLibrary != null) {
-					currentDisplayBookList = bookLibrary.getBookList();
+					clearFilter();
 					displayingSearchList = false;
+					currentDisplayBookList = libraryDisplayList();
 					caseInsensitiveDisplayedSearchList = false;
 					bookLibPanel.UpdateData(
 						currentDisplayBookList,
@@ -895,6 +1348,14 @@ class BookLibGuiFrame extends JFrame {
 			}
 		});
 
+		// Choose the language titles and authors are sorted for
+		sortLanguageItem = viewMenu.add("Sort Order Language...");
+		sortLanguageItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				chooseCollationLocale();
+			}
+		});
+
 		// See all authors
 		//JMenuItem allAuthorsItem = viewMenu.add(new TestAction("All Authors"));
 
@@ -911,6 +1372,7 @@ class BookLibGuiFrame extends JFrame {
 		contentPane.setLayout(new FlowLayout());
 		contentPane.setSize(DEFAULT_WIDTH, DEFAULT_HEIGHT);
 		bookLibPanel = new BookLibPanel(BORDER_WIDTH);
+		bookLibPanel.addFilterListener(filterListener);
 
 		contentPane.add(bookLibPanel, BorderLayout.CENTER);
 	}
@@ -941,13 +1403,19 @@ class BookLibPanel extends JPanel {
 	private JLabel searchHeading;
 	private static final String[] columnNames =
 		{ "Book Title", "Authors", "Series", "Publish Date", "Cover", "ISBN" };
-	private Object[][] bookData;
-	private LinkedList<Book> bookList;
+	private List<Book> bookList;
 	private JTable bookTable;
 	private JScrollPane scrollPane;
 	private readOnlyTableModel readOnlyTM;
 	private int width, height, border;
-	private static int border_height = 50;
+	private static int border_height = 80;
+
+	// Field filtering the books displayed as the user types, and the timer
+	// waiting for a pause in the typing before the filter is applied
+	private static final int FILTER_DELAY = 250;
+	private JTextField filterField;
+	private javax.swing.Timer filterTimer;
+	private boolean clearingFilter = false;
 
 	/**
 	 * Used by the library panel to define the tabular layout and
@@ -960,10 +1428,10 @@ class BookLibPanel extends JPanel {
 		 * Return the number of rows in the display table
 		 */
 		public int getRowCount() {
-			if (bookData == null)
+			if (bookList == null)
 				return 0;
 			else
-				return bookData.length;
+				return bookList.size();
 		}
 
 		/**
@@ -974,15 +1442,32 @@ class BookLibPanel extends JPanel {
 		}
 
 		/**
-		 * Return the value at the selected location which is done
-		 * by mapping the row and column value into the 2D array
-		 * of book data
+		 * Return the value at the selected location which is read
+		 * from the book displayed in that row. Only the rows shown
+		 * are read, so the books of a lazily loaded library are only
+		 * created as they are scrolled into view.
 		 */
 		public Object getValueAt(int row, int col) {
-			if (bookData == null)
+			if (bookList == null)
 				return (Object) "";
-			else
-				return bookData[row][col];
+			Book book = bookList.get(row);
+			switch (col) {
+				case 0 :
+					return book.getTitle();
+				case 1 :
+					return book.getAuthorsString(", ");
+				case 2 :
+					return book.getSeries();
+				case 3 :
+					if (book.getPublishYear() == Book.BADDATE)
+						return "";
+					else
+						return Integer.toString(book.getPublishYear());
+				case 4 :
+					return Book.COVERNAME[book.getCoverType()];
+				default :
+					return book.getISBN();
+			}
 		}
 
 		/**
@@ -1019,6 +1504,27 @@ class BookLibPanel extends JPanel {
 		this.setLayout(new BorderLayout());
 		searchHeading = new JLabel(" ", JLabel.CENTER);
 		add(searchHeading);
+
+		// Filter the books displayed once the user pauses typing rather than
+		// on every key stroke
+		filterTimer = new javax.swing.Timer(FILTER_DELAY, null);
+		filterTimer.setRepeats(false);
+		filterField = new JTextField(30);
+		filterField.setEnabled(false);
+		filterField.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent event) {
+				filterChanged();
+			}
+			public void removeUpdate(DocumentEvent event) {
+				filterChanged();
+			}
+			public void changedUpdate(DocumentEvent event) {
+			}
+		});
+		JPanel filterPanel = new JPanel();
+		filterPanel.add(new JLabel("Filter:"));
+		filterPanel.add(filterField);
+		add(filterPanel, BorderLayout.NORTH);
 		Object[][] bookData = { { "", "", "", "", "", "" }
 		};
 		bookList = null;
@@ -1035,6 +1541,7 @@ class BookLibPanel extends JPanel {
 		bookTable.setColumnSelectionAllowed(false);
 		bookTable.setRowSelectionAllowed(true);
 		bookTable.setCellSelectionEnabled(false);
+		bookTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
 		add(scrollPane, BorderLayout.CENTER);
 
 	}
@@ -1059,7 +1566,9 @@ class BookLibPanel extends JPanel {
 					scrollPane.setVisible(true);
 				}
 				this.setSize(width, height);
-				this.UpdateData(this.bookList, false);
+				bookTable.setPreferredScrollableViewportSize(
+					new Dimension(width, height - border_height));
+				revalidate();
 				this.setVisible(true);
 				parent.setVisible(true);
 			}
@@ -1068,12 +1577,13 @@ class BookLibPanel extends JPanel {
 
 	/**
 	 * Updates the books displayed in the panel based on the passed booklist. If this
-	 * is a refined search book list, an indication of that is also displayed.
+	 * is a refined search book list, an indication of that is also displayed. The
+	 * table is kept and told that all its rows have changed.
 	 *
 	 * @param booklist The new list of books to display
 	 * @param searchlist True if this is a refined list and that should be indicated
 	 */
-	public void UpdateData(LinkedList<Book> booklist, boolean searchlist) {
+	public void UpdateData(List<Book> booklist, boolean searchlist) {
 
 		// Ensure panel sized relative to parent container size
 		Container parent = getParent();
@@ -1085,6 +1595,8 @@ class BookLibPanel extends JPanel {
 			width = 1;
 		}
 		this.setSize(width, height);
+		bookTable.setPreferredScrollableViewportSize(
+			new Dimension(width, height - border_height));
 
 		// Indicate if this is a refined search list
 		if (searchlist)
@@ -1093,53 +1605,125 @@ class BookLibPanel extends JPanel {
 		else
 			searchHeading.setText(" ");
 
-		// Loop through the passed list of books and update the display
-		// data in the panel
+		// The table model reads the rows displayed from the book list
+		filterField.setEnabled(true);
 		bookList = booklist;
-		bookData = new Object[bookList.size()][6];
-		for (int i = 0; i < booklist.size(); i++) {
-			Book book = booklist.get(i);
-			bookData[i][0] = book.getTitle();
-			LinkedList<Author> book_auths = book.getAuthors();
-			String authors = null;
-			for (int k = 0; k < book_auths.size(); k++) {
-				Author auth = book_auths.get(k);
-				if (authors == null)
-					authors = auth.getFullName();
-				else
-					authors = authors + ", " + auth.getFullName();
+		readOnlyTM.fireTableDataChanged();
+		revalidate();
+	}
 
+	/**
+	 * Add a listener told once the user pauses typing in the filter field.
+	 * The action command of the event is the text of the filter field.
+	 *
+	 * @param listener The listener filtering the books displayed
+	 */
+	public void addFilterListener(final ActionListener listener) {
+		filterTimer.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				listener.actionPerformed(
+					new ActionEvent(
+						BookLibPanel.this,
+						ActionEvent.ACTION_PERFORMED,
+						filterField.getText()));
 			}
-			bookData[i][1] = authors;
-			bookData[i][2] = book.getSeries();
-			int bookdate = book.getPublishYear();
-			if (bookdate == Book.BADDATE)
-				bookData[i][3] = "";
-			else
-				bookData[i][3] =
-					Integer.toString(book.getPublishYear());
-			bookData[i][4] = Book.COVERNAME[book.getCoverType()];
-			bookData[i][5] = book.getISBN();
-		};
-		scrollPane.remove(bookTable);
-		remove(scrollPane);
-		bookTable = new JTable(bookData, columnNames);
-		bookTable.setModel(readOnlyTM);
-		scrollPane =
-			new JScrollPane(
-				bookTable,
-				ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
-				ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-		bookTable.setPreferredScrollableViewportSize(
-			new Dimension(width, height - border_height));
-		bookTable.setColumnSelectionAllowed(false);
-		bookTable.setRowSelectionAllowed(true);
-		bookTable.setCellSelectionEnabled(false);
-		add(scrollPane);
+		});
+	}
+
+	/**
+	 * Empty the filter field without the filter listeners being told, as
+	 * another list of books is to be displayed.
+	 */
+	public void clearFilter() {
+		filterTimer.stop();
+		clearingFilter = true;
+		filterField.setText("");
+		clearingFilter = false;
+	}
+
+	/**
+	 * Tell the table a book has been inserted into the displayed book list
+	 * at the passed row, so only that row need be drawn.
+	 *
+	 * @param row The row of the inserted book
+	 */
+	public void bookInserted(int row) {
+		readOnlyTM.fireTableRowsInserted(row, row);
+	}
+
+	/**
+	 * Tell the table the book displayed at one row has been moved to another
+	 * row of the displayed book list, for a book whose sort order changed.
+	 *
+	 * @param from The row the book was displayed at
+	 * @param to The row the book is now displayed at
+	 */
+	public void bookMoved(int from, int to) {
+		if (from == to)
+			readOnlyTM.fireTableRowsUpdated(from, from);
+		else {
+			readOnlyTM.fireTableRowsDeleted(from, from);
+			readOnlyTM.fireTableRowsInserted(to, to);
+		}
+	}
+
+	/**
+	 * Tell the table the books displayed at the passed rows have changed.
+	 *
+	 * @param rows The rows changed, in ascending order
+	 */
+	public void booksUpdated(int[] rows) {
+		for (int[] run : runs(rows))
+			readOnlyTM.fireTableRowsUpdated(run[0], run[1]);
+	}
+
+	/**
+	 * Tell the table the books displayed at the passed rows have been
+	 * removed from the displayed book list.
+	 *
+	 * @param rows The rows removed, in ascending order
+	 */
+	public void booksDeleted(int[] rows) {
+		// Remove the last rows first so the earlier rows keep their numbers
+		List<int[]> runs = runs(rows);
+		for (int k = runs.size() - 1; k >= 0; k--)
+			readOnlyTM.fireTableRowsDeleted(runs.get(k)[0], runs.get(k)[1]);
+	}
+
+	/**
+	 * Returns the runs of consecutive rows in the passed ascending rows, as
+	 * the first and last row of each run.
+	 */
+	private static List<int[]> runs(int[] rows) {
+		ArrayList<int[]> runs = new ArrayList<int[]>();
+		for (int i = 0; i < rows.length; i++) {
+			int first = rows[i];
+			while ((i + 1 < rows.length) && (rows[i + 1] == rows[i] + 1))
+				i++;
+			runs.add(new int[] { first, rows[i] });
+		}
+		return runs;
+	}
+
+	/**
+	 * Wait again for a pause in the typing once the filter text changes.
+	 */
+	private void filterChanged() {
+		if (!clearingFilter)
+			filterTimer.restart();
 	}
 
 	// Accessor methods
 
+	/**
+	 * Get the rows of the books selected in the book library panel display
+	 *
+	 * @return The rows selected, in ascending order. Empty if none.
+	 */
+	public int[] getRowsSelected() {
+		return bookTable.getSelectedRows();
+	}
+
 	/**
 	 * Get and return the book selected in the in book library panel display
 	 *
@@ -1153,24 +1737,53 @@ class BookLibPanel extends JPanel {
 			return bookList.get(row);
 	}
 
+	/**
+	 * Get and return all the books selected in the book library panel display
+	 *
+	 * @return Books selected in book library panel display. Empty if none.
+	 */
+	public LinkedList<Book> getBooksSelected() {
+		LinkedList<Book> selected = new LinkedList<>();
+		int[] rows = bookTable.getSelectedRows();
+		if (rows.length > 0) {
+			// Walk the book list once rather than indexing it per selected row
+			ListIterator<Book> booklistIterator = bookList.listIterator(rows[0]);
+			int row = rows[0];
+			for (int i = 0; i < rows.length; i++) {
+				while (row < rows[i]) {
+					booklistIterator.next();
+					row++;
+				}
+				selected.add(booklistIterator.next());
+				row++;
+			}
+		}
+		return selected;
+	}
+
 	// Export methods
 
 	/**
-	 * Export the current panel displayed to a file in CSV format.
+	 * Ask the user for a new file to export the books displayed to. The
+	 * file must have the passed extension. If the user does not provide
+	 * one, the extension is added.
 	 *
-	 * The file must have a ".csv" extension. If the user does not
-	 * provide one, the extension is added.
+	 * The user must agree before an existing file is overwritten.
 	 *
-	 * The file cannot already exist or an error message is given.
+	 * @param format The name of the export format, such as "CSV"
+	 * @param extension The file name extension of the format, such as ".csv"
+	 * @return The file to export to or null if the export was cancelled
 	 */
-	public void exportToCSV() {
+	public File chooseExportFile(String format, String extension) {
 
 		File file;
-		// Set up file dialog to save csv values and ensure correct extension and
+		// Set up file dialog to save values and ensure correct extension and
 		// non-existence
-		String filename = JOptionPane.showInputDialog(this, "New CSV file to export to");
-		if (!filename.endsWith(".csv"))  {
-			file = new File(filename + ".csv");
+		String filename = JOptionPane.showInputDialog(this, "New " + format + " file to export to");
+		if (filename == null)
+			return null;
+		if (!filename.endsWith(extension))  {
+			file = new File(filename + extension);
 		} else {
 			file = new File(filename);
 		}
@@ -1182,76 +1795,43 @@ class BookLibPanel extends JPanel {
 								JOptionPane.OK_CANCEL_OPTION,
 								JOptionPane.WARNING_MESSAGE);
 			if (returnVal == JOptionPane.CANCEL_OPTION)
-					return;
-		}
-
-		// Create new file
-		try {
-			file.createNewFile();
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(
-				this,
-				"Unable to open " + file.getName() + " for writing:"
-				+ e.getMessage()
-				+ "\nSee console output for debugging information.",
-				"Error",
-				JOptionPane.ERROR_MESSAGE);
-			e.printStackTrace(System.err);
-			return;
+					return null;
 		}
+		return file;
+	}
 
-		// Set up as a FileWriter
-		Writer fileWriter;
-		try {
-			fileWriter = new BufferedWriter(new OutputStreamWriter( new FileOutputStream(file), "UTF-8"));
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(
-				this,
-				"Unable to open " + file.getName() + " for writing:"
-				+ e.getMessage()
-				+ "\nSee console output for debugging information.",
-				"Error",
-				JOptionPane.ERROR_MESSAGE);
-			e.printStackTrace(System.err);
-			return;
-		}
+	/**
+	 * Export the passed books to a file in CSV format. Run by the passed
+	 * task, which is told of the progress after each book. The export stops
+	 * and the file is deleted if the task is cancelled.
+	 *
+	 * @param books The books displayed
+	 * @param file The file to export to
+	 * @param task The task running the export
+	 * @throws IOException If the file cannot be written
+	 */
+	static void exportToCSV(List<Book> books, File file, BookLibTask<?> task) throws IOException {
 
 		// Setup and handle output in csv format
-		CSVWriter csvWriter = new CSVWriter(fileWriter);
-		csvWriter.writeNext(columnNames);
-
-		ListIterator<Book> booklistIterator = bookList.listIterator();
-		while (booklistIterator.hasNext()) {
-			Book nextBook = booklistIterator.next();
-			//String[] csvEntries = new String[6];
-			String year = " ";
-			if (nextBook.publishYear != Book.BADDATE) {
-				year = String.valueOf((nextBook.publishYear));
+		try (CSVWriter csvWriter = new CSVWriter(
+				new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")))) {
+			csvWriter.writeNext(columnNames);
+
+			int written = 0;
+			for (Book nextBook : books) {
+				String year = " ";
+				if (nextBook.publishYear != Book.BADDATE) {
+					year = String.valueOf((nextBook.publishYear));
+				}
+				String[] csvEntries = {nextBook.title, nextBook.getAuthorsString(",\n"), nextBook.series, year, Book.COVERNAME[nextBook.coverType], nextBook.ISBN};
+				csvWriter.writeNext(csvEntries);
+				if (!task.reportProgress(++written, books.size()))
+					break;
 			}
-			String[] csvEntries = {nextBook.title, nextBook.getAuthorsString(",\n"), nextBook.series, year, Book.COVERNAME[nextBook.coverType], nextBook.ISBN};
-			csvWriter.writeNext(csvEntries);
-
-		}
-		try {
 			csvWriter.flush();
-			csvWriter.close();
-			fileWriter.close();
-			JOptionPane.showMessageDialog(
-				this,
-				"Book Information exported to " + file.getAbsolutePath(),
-				"Information",
-				JOptionPane.INFORMATION_MESSAGE);
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(
-				this,
-				"Unable to write to and close " + file.getName() + " :"
-				+ e.getMessage()
-				+ "\nSee console output for debugging information.",
-				"Error",
-				JOptionPane.ERROR_MESSAGE);
-			e.printStackTrace(System.err);
-			return;
 		}
+		if (task.isCancelled())
+			file.delete();
 	}
 
 	/** Helper method to print a blank instead of "null" for nulls.
@@ -1267,68 +1847,21 @@ class BookLibPanel extends JPanel {
 	}
 
 	/**
-	 * Export the current panel displayed to a file in HTML format.
+	 * Export the passed books to a file in HTML format. Run by the passed
+	 * task, which is told of the progress after each book. The export stops
+	 * and the file is deleted if the task is cancelled.
 	 *
-	 * The file must have a ".html" extension. If the user does not
-	 * provide one, the extension is added.
-	 *
-	 * The file cannot already exist or an error message is given.
+	 * @param books The books displayed
+	 * @param file The file to export to
+	 * @param task The task running the export
+	 * @throws IOException If the file cannot be written
 	 */
-	public void exportToHTML() {
-
-		File file;
-		// Set up file dialog to save html values and ensure correct extension and
-		// non-existence
-		String filename = JOptionPane.showInputDialog(this, "New HTML file to export to");
-		if (!filename.endsWith(".html"))  {
-			file = new File(filename + ".html");
-		} else {
-			file = new File(filename);
-		}
-		if (file.exists()) {
-			int returnVal = JOptionPane.showConfirmDialog(
-								this,
-								"Overwrite existing file " + file + "?",
-								"Overwrite warning",
-								JOptionPane.OK_CANCEL_OPTION,
-								JOptionPane.WARNING_MESSAGE);
-			if (returnVal == JOptionPane.CANCEL_OPTION)
-					return;
-		}
-
-		// Create new file
-		try {
-			file.createNewFile();
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(
-				this,
-				"Unable to open " + file.getName() + " for writing:"
-				+ e.getMessage()
-				+ "\nSee console output for debugging information.",
-				"Error",
-				JOptionPane.ERROR_MESSAGE);
-			e.printStackTrace(System.err);
-			return;
-		}
+	static void exportToHTML(List<Book> books, File file, BookLibTask<?> task) throws IOException {
 
-		// Set up as a FileWriter
-		Writer fileWriter;
-		try {
-		    fileWriter = new BufferedWriter(new OutputStreamWriter( new FileOutputStream(file), "UTF-8"));
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(
-				this,
-				"Unable to open " + file.getName() + " for writing:"
-				+ e.getMessage()
-				+ "\nSee console output for debugging information.",
-				"Error",
-				JOptionPane.ERROR_MESSAGE);
-			e.printStackTrace(System.err);
-			return;
-		}
+		try (Writer fileWriter = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
 
-		// Output in html header information
-		try {
+			// Output in html header information
 			fileWriter.write("<HTML xmlns=\"http://www.w3.org/TR/REC-html40\">\n");
 			fileWriter.write("<HEAD>\n");
 			fileWriter.write("  <META http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\"/>\n");
@@ -1347,9 +1880,8 @@ class BookLibPanel extends JPanel {
 			fileWriter.write("  </tr>\n");
 
 			// Output each Book as an entry in the html table
-			ListIterator<Book> booklistIterator = bookList.listIterator();
-			while (booklistIterator.hasNext()) {
-				Book nextBook = booklistIterator.next();
+			int written = 0;
+			for (Book nextBook : books) {
 				fileWriter.write("  <tr width=\"100%\">\n");
 				fileWriter.write("    <td width=\"25%\">" + nextBook.title + "</td>\n");
 				fileWriter.write("    <td width=\"20%\">" + nextBook.getAuthorsString(",</br>") + "</td>\n");
@@ -1362,32 +1894,18 @@ class BookLibPanel extends JPanel {
 				fileWriter.write("    <td width=\"10%\">" + Book.COVERNAME[nextBook.coverType] + "</td>\n");
 				fileWriter.write("    <td width=\"10%\">" + BookLibPanel.nullToBlank(nextBook.ISBN) + "</td>\n");
 				fileWriter.write("  <tr>\n");
+				if (!task.reportProgress(++written, books.size()))
+					break;
 			}
 
 			// Output html closing information
 			fileWriter.write("  </table>\n");
 			fileWriter.write("</body>\n");
 			fileWriter.write("</html>\n");
-
-			// Flush, close and notify success
 			fileWriter.flush();
-			fileWriter.close();
-			JOptionPane.showMessageDialog(
-				this,
-				"Book Information exported to " + file.getAbsolutePath(),
-				"Information",
-				JOptionPane.INFORMATION_MESSAGE);
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(
-				this,
-				"Unable to write to and close " + file.getName() + " :"
-				+ e.getMessage()
-				+ "\nSee console output for debugging information.",
-				"Error",
-				JOptionPane.ERROR_MESSAGE);
-			e.printStackTrace(System.err);
-			return;
 		}
+		if (task.isCancelled())
+			file.delete();
 	}
 }
 
@@ -1414,6 +1932,7 @@ class AddModifyBookDialog extends JDialog {
 	private JComboBox<String> coverCombo;
 	private boolean ok;
 	private Book book;
+	private Book modifiedBook;
 	private JTextField authorTitle[];
 	private JTextField authorFirst[];
 	private JTextField authorMiddle[];
@@ -1509,6 +2028,15 @@ class AddModifyBookDialog extends JDialog {
 		return book;
 	}
 
+	/**
+	 * Return the book object holding the modified values of the book passed
+	 * to a modify book dialog. The passed book itself is left unchanged so the
+	 * library can apply the modifications.
+	 */
+	public Book getModifiedBook() {
+		return modifiedBook;
+	}
+
 	// Private helper methods
 
 	/**
@@ -1773,22 +2301,20 @@ class AddModifyBookDialog extends JDialog {
 	}
 
 	/**
-	 * Get modified data and determine if any changes were made. Changes will be
-	 * directly updated in the book itself which has been stored by the panel as
-	 * its private member book.
+	 * Get modified data into a new book object. The changes are not applied to
+	 * the book itself, which has been stored by the panel as its private member
+	 * book, but held for the library to apply. See <code>getModifiedBook</code>.
 	 */
 	private boolean modifyBook() {
 
-		boolean changed = false;
-
 		// createBook() will store a new Book object in the the class variable
-		// "book" so we want to save the original object and update it if necessary
-		// after the call to createBook()
+		// "book" so we want to save the original object and keep the new one
+		// as the modified book after the call to createBook()
 		Book orig_book = book;
-		if (createBook() && orig_book.isModified(book))
-			changed = true;
+		boolean created = createBook();
+		modifiedBook = created ? book : null;
 		book = orig_book;
-		return changed;
+		return created;
 	}
 
 }
@@ -2170,3 +2696,207 @@ class SeriesSearchDialog extends JDialog {
 	}
 
 }
+
+/**
+ * A long running piece of work on the book library, such as loading,
+ * saving, searching or exporting it, run on a background thread so the
+ * window keeps responding. The work is done by <code>doInBackground</code>,
+ * which may report how far it has got with <code>reportProgress</code>.
+ * Once it has finished, its result is passed to <code>succeeded</code>, or
+ * the exception it threw to <code>failed</code>, on the event dispatch
+ * thread. Neither is called if the task is cancelled.
+ *
+ */
+abstract class BookLibTask<T> extends SwingWorker<T, Void> {
+
+	private final String description;
+	private final boolean cancellable;
+	private Runnable finished;
+
+	// Constructors
+
+	/**
+	 * Create a task
+	 *
+	 * @param description What the task does, shown while it runs
+	 * @param cancellable If the user may cancel the task
+	 */
+	public BookLibTask(String description, boolean cancellable) {
+		this.description = description;
+		this.cancellable = cancellable;
+	}
+
+	// Accessor methods
+
+	/**
+	 * Return what the task does
+	 *
+	 * @return The description of the task
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Return if the user may cancel the task
+	 *
+	 * @return true or false
+	 */
+	public boolean isCancellable() {
+		return cancellable;
+	}
+
+	// Modification methods
+
+	/**
+	 * Set the action run on the event dispatch thread as soon as the task
+	 * has finished or been cancelled, before its result is handled.
+	 *
+	 * @param finished The action to run
+	 */
+	public void whenFinished(Runnable finished) {
+		this.finished = finished;
+	}
+
+	/**
+	 * Report how far the work has got. Called by the work on the background
+	 * thread, which should stop once false is returned.
+	 *
+	 * @param done The amount of work done so far
+	 * @param total The total amount of work
+	 * @return False if the task has been cancelled
+	 */
+	public boolean reportProgress(long done, long total) {
+		if (total > 0)
+			setProgress((int) Math.max(0, Math.min(100, done * 100 / total)));
+		return !isCancelled();
+	}
+
+	/**
+	 * Handle the result of the work, on the event dispatch thread
+	 *
+	 * @param result The result of the work
+	 */
+	protected abstract void succeeded(T result);
+
+	/**
+	 * Handle the work failing, on the event dispatch thread
+	 *
+	 * @param e The exception the work failed with
+	 */
+	protected abstract void failed(Exception e);
+
+	protected void done() {
+		if (finished != null)
+			finished.run();
+		if (isCancelled())
+			return;
+		try {
+			succeeded(get());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			failed((cause instanceof Exception) ? (Exception) cause : e);
+		} catch (InterruptedException e) {
+			failed(e);
+		}
+	}
+}
+
+/**
+ * Window dialog showing the progress of a background task, with a button
+ * to cancel the task if it may be cancelled. The dialog is not modal so
+ * the main window keeps redrawing while the task runs. It is only shown
+ * once the task has run for a moment, so quick tasks finish without it.
+ *
+ */
+class TaskProgressDialog extends JDialog {
+
+	private static final long serialVersionUID = 1L;
+
+	// Milliseconds a task runs before the dialog is shown
+	private static final int SHOW_DELAY = 400;
+
+	private JLabel description;
+	private JProgressBar progressBar;
+	private JButton cancelButton;
+	private javax.swing.Timer showTimer;
+	private BookLibTask<?> task;
+
+	// Moves the progress bar as the task reports its progress
+	private final PropertyChangeListener progressListener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent event) {
+			if ("progress".equals(event.getPropertyName())) {
+				progressBar.setIndeterminate(false);
+				progressBar.setValue((Integer) event.getNewValue());
+			}
+		}
+	};
+
+	// Constructors
+
+	/**
+	 * Create and lay out the dialog
+	 */
+	public TaskProgressDialog(JFrame owner) {
+		super(owner, "Working", false);
+		setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+		Container contentPane = getContentPane();
+
+		// Set up the task description and its progress bar
+		JPanel panel = new JPanel();
+		panel.setLayout(new GridLayout(2, 1));
+		panel.add(description = new JLabel(" "));
+		panel.add(progressBar = new JProgressBar(0, 100));
+		contentPane.add(panel, BorderLayout.CENTER);
+
+		// Cancel the task with **Cancel** button
+		cancelButton = new JButton("Cancel");
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				if (task != null)
+					task.cancel(true);
+			}
+		});
+		JPanel buttonPanel = new JPanel();
+		buttonPanel.add(cancelButton);
+		contentPane.add(buttonPanel, BorderLayout.SOUTH);
+
+		// Show the dialog once the task has run for a moment
+		showTimer = new javax.swing.Timer(SHOW_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				setLocationRelativeTo(getOwner());
+				setVisible(true);
+			}
+		});
+		showTimer.setRepeats(false);
+	}
+
+	// Display methods
+
+	/**
+	 * Show the progress of the passed task once it has run for a moment
+	 *
+	 * @param task The task started
+	 */
+	public void showTask(BookLibTask<?> task) {
+		this.task = task;
+		description.setText(task.getDescription());
+		progressBar.setValue(0);
+		progressBar.setIndeterminate(true);
+		cancelButton.setEnabled(task.isCancellable());
+		task.addPropertyChangeListener(progressListener);
+		pack();
+		showTimer.restart();
+	}
+
+	/**
+	 * Hide the dialog once the task shown has finished
+	 */
+	public void hideTask() {
+		showTimer.stop();
+		if (task != null)
+			task.removePropertyChangeListener(progressListener);
+		task = null;
+		setVisible(false);
+	}
+}
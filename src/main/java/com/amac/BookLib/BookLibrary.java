@@ -1,22 +1,32 @@
 package com.amac.BookLib;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.io.*;
-import java.nio.CharBuffer;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.channels.FileChannel;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.amac.BookLib.Author;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Node;
 import org.w3c.dom.DOMException;
-import java.util.regex.Pattern;
 
 /**
- * A <code>BookLibrary</code> holds a linked list of <code>Book</code>
+ * A <code>BookLibrary</code> holds a list of <code>Book</code>
  * objects and constructs a linked list of <code>Author</code> objects
  * from the authors of the books. It allows for the insertion,
  * deletion and modification of books in the list. The book and
@@ -40,20 +50,86 @@ public class BookLibrary {
 		" xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance' xsi:noNamspaceSchemaLocation='booklibrary.xsd'";
 	public static final String TAGNAME_BOOKLIBRARY = "booklibrary";
 	public static final String EXT_BOOKLIBRARY = ".bdb";
+	public static final String EXT_BOOKLIBRARY_BINARY = ".bdbx";
 	public static final String EXT_BOOKLIBRARY_BACKUP = "bak";
+	public static final String EXT_BOOKLIBRARY_JOURNAL = "jnl";
+	public static final String EXT_BOOKLIBRARY_INDEX = "idx";
+
+	/*
+	 * Binary library files with at least this many books are loaded lazily
+	 */
+	static final int LAZY_BOOKS = 100000;
+
+	/**
+	 * The orders in which the books of the library can be listed
+	 */
+	public enum Order { TITLE, AUTHOR, PUBLISHDATE }
 
 	// Book Library Members
-	private LinkedList<Book> bookList;
+	private BookTreeList bookList;
 	private LinkedList<Author> authorList;
 
+	// Hashed lookups over the book and author lists so duplicate checks and
+	// author registration do not have to walk the lists
+	private BookIdentityIndex bookIndex;
+	private HashMap<String, Author> authorIndex;
+
+	// Books of a library loaded lazily from a binary file. Null once every
+	// book has been loaded.
+	private LazyBookStore lazyStore = null;
+
+	// The book list as handed out by getBookList, and whether the book list
+	// is in title order. It is left out of order by sorting the list handed
+	// out by another field.
+	private final List<Book> bookListView = new BookListView();
+	private boolean titleSorted = true;
+
+	// True if the library was built from an up to date index file
+	private boolean indexed = false;
+
+	// The library file last read or written, its length and time last
+	// modified then and the CRC32 checksum of its contents. Null until a
+	// checksum has been worked out.
+	private File checkedFile = null;
+	private long checkedLength;
+	private long checkedModified;
+	private int checkedChecksum;
+
+	// Columns of the searched book fields, whether the book list or the books
+	// in it have changed since they were made and the books modified since.
+	// Null until first searched. Guarded by the lock of the library, as a
+	// search may run on another thread.
+	private BookColumns columns = null;
+	private boolean columnsChanged = false;
+	private Set<Book> columnsModified = newBookSet();
+
+	// The books in author and publish date order, each built when first
+	// asked for and then kept in order as the library changes
+	private EnumMap<Order, BookOrder> orders = new EnumMap<Order, BookOrder>(Order.class);
+	private List<Book> titleOrder = null;
+
+	// Collator ordering the titles and author names of the orders. Null for
+	// the titles in the order of the book list.
+	private Collator collator = null;
+	private Locale collationLocale = null;
+
+	// Reversed views of the orders for descending lists. Null until first
+	// asked for.
+	private EnumMap<Order, List<Book>> reversedOrders = new EnumMap<Order, List<Book>>(Order.class);
+
+	// Listeners notified of each change to the library
+	private List<BookLibraryListener> listeners = new CopyOnWriteArrayList<BookLibraryListener>();
+
 	// Constructors
 
 	/** 
 	 * Create a blank book library object.
 	 */
 	public BookLibrary() {
-		bookList = new LinkedList<Book>();
+		bookList = new BookTreeList();
 		authorList = new LinkedList<Author>();
+		bookIndex = new BookIdentityIndex();
+		authorIndex = new HashMap<String, Author>();
 	};
 
 	/**
@@ -63,36 +139,67 @@ public class BookLibrary {
 	 * depending on where the error occurred.
 	 * 
 	 * @param f File descriptor of the file containing the
+	 * @throws IllegalStateException If the file defines the same book twice
 	 */
-	public BookLibrary(File f) throws DOMException {
-		bookList = new LinkedList<Book>();
-		authorList = new LinkedList<Author>();
+	public BookLibrary(File f) throws DOMException, IllegalStateException {
+		this(f, null);
+	};
 
-		Document doc = null;
-		try {
-			DocumentBuilderFactory factory =
-				DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			doc = builder.parse(f.getPath());
-		} catch (Exception e) {
-			e.printStackTrace(System.err);
-			throw new DOMException(
-				DOMException.INVALID_STATE_ERR,
-				"Unable to parse file");
-		}
+	/**
+	 * Create a book library by reading from the passed file descriptor,
+	 * reporting the progress of the load after each book is read. The file
+	 * is read as a stream of XML events and each book built as soon as it
+	 * has been read, rather than holding the whole document in memory.
+	 * 
+	 * @param f File descriptor of the file containing the
+	 * @param progress Told of the progress of the load. May be null.
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	public BookLibrary(File f, BookLibraryLoadProgress progress)
+		throws DOMException, IllegalStateException {
+		this();
+
+		// Build every book first and then add them in one bulk pass rather
+		// than re-checking and re-sorting the library once per book
+		List<Book> books = readFile(f, progress);
+		addLoadedBooks(books, openIndex(f));
+	};
 
-		NodeList bookNodes = doc.getElementsByTagName(Book.TAGNAME_BOOK);
-		for (int i = 0; i < bookNodes.getLength(); i++) {
-			Book book;
-			Node n = bookNodes.item(i);
-			try {
-				book = new Book(n);
-			} catch (DOMException e) {
-				throw e;
-			}
-			addBook(book);
-		}
+	/**
+	 * Create a book library holding the books already read from a library
+	 * file.
+	 * 
+	 * @param books The books read from the file, in file order
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	BookLibrary(List<Book> books) throws IllegalStateException {
+		this();
+		addLoadedBooks(books);
+	};
+
+	/**
+	 * Create a book library holding the books already read from the passed
+	 * library file, using the index file of the library file if it is up to
+	 * date.
+	 * 
+	 * @param books The books read from the file, in file order
+	 * @param f The library file
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	BookLibrary(List<Book> books, File f) throws IllegalStateException {
+		this();
+		addLoadedBooks(books, openIndex(f));
+	};
 
+	/**
+	 * Create a book library whose books are loaded lazily from the passed
+	 * store. The books must be in title order.
+	 * 
+	 * @param store The books of a binary library file
+	 */
+	private BookLibrary(LazyBookStore store) {
+		this();
+		lazyStore = store;
 	};
 
 	/** 
@@ -103,11 +210,253 @@ public class BookLibrary {
 	 * @param authorlist A linked list of author objects
 	 */
 	public BookLibrary(LinkedList<Book> booklist, LinkedList<Author> authorlist) {
-		bookList = booklist;
+		bookList = new BookTreeList(booklist);
 		authorList = authorlist;
-		Collections.sort(bookList, new BookListCompare());
+		BookOrder.sort(bookList, new BookListCompare());
+		bookIndex = new BookIdentityIndex();
+		for (Book b : bookList)
+			bookIndex.add(b);
+		authorIndex = new HashMap<String, Author>();
+		for (Author a : authorList)
+			authorIndex.putIfAbsent(a.nameKey(), a);
 	};
 
+	/**
+	 * Create a book library by reading from the passed file, in the binary
+	 * format if the file has the binary library extension and as XML
+	 * otherwise.
+	 * 
+	 * The index file of the library file is used to build the library
+	 * when it is up to date, and is written again when it is not.
+	 * 
+	 * @param f File descriptor of the file containing the library
+	 * @param progress Told of the progress of an XML load. May be null.
+	 * @return The book library read from the file
+	 * @throws IOException If a binary file cannot be read
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	public static BookLibrary load(File f, BookLibraryLoadProgress progress)
+		throws IOException, DOMException, IllegalStateException {
+		List<Book> books;
+		if (isBinaryFile(f)) {
+			if (BookLibraryBinary.readBookCount(f) >= LAZY_BOOKS) {
+				BookLibrary library = loadLazy(BookLibraryBinary.map(f), f);
+				if (library != null)
+					return library;
+			}
+			books = BookLibraryBinary.open(f).getBooks();
+		} else
+			books = ParallelBookLoader.readBooks(f, progress);
+
+		// The index holds the positions of the books in the file, so it is
+		// written from the books in the order they were read
+		BookLibrary library = new BookLibrary(books, f);
+		if (!library.indexed)
+			library.writeIndex(f, books);
+		return library;
+	}
+
+	/**
+	 * Create a book library from the passed binary library file whose books
+	 * are only created when they are asked for, by <code>getBook</code>, the
+	 * book list or as the results of a search. Searches use the strings of
+	 * the file without creating the books. Any other use of the library, such
+	 * as a change to it or a lookup of an author, creates every book first.
+	 * 
+	 * @param f File descriptor of the binary library file
+	 * @return The book library read from the file
+	 * @throws IOException If the file cannot be read or is not valid
+	 */
+	public static BookLibrary loadLazy(File f) throws IOException, IllegalStateException {
+		BookLibrary library = loadLazy(BookLibraryBinary.map(f), f);
+		return (library != null) ? library : new BookLibrary(BookLibraryBinary.open(f).getBooks());
+	}
+
+	/**
+	 * Create a lazily loaded book library from the opened binary library
+	 * file, or return null if its books are not in title order.
+	 */
+	private static BookLibrary loadLazy(BookLibraryBinary bin, File f) {
+		LazyBookStore store = new LazyBookStore(bin, f);
+		if (!store.isTitleSorted())
+			return null;
+		return new BookLibrary(store);
+	}
+
+	/**
+	 * Create a book library by reading from the passed file, splitting a
+	 * large file into runs of books which are read in parallel. The library
+	 * created is exactly the one <code>BookLibrary(File, BookLibraryLoadProgress)</code>
+	 * would create, and that is used instead for small files or files
+	 * which cannot safely be split.
+	 * 
+	 * @param f File descriptor of the file containing the library
+	 * @param progress Told of the progress of the load. May be null.
+	 * @return The book library read from the file
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	public static BookLibrary loadParallel(File f, BookLibraryLoadProgress progress)
+		throws DOMException, IllegalStateException {
+		return ParallelBookLoader.load(f, progress);
+	}
+
+	/**
+	 * Read the books defined by the passed library file, in the order they
+	 * are read. The strings read are shared through a pool only kept for the
+	 * load.
+	 * 
+	 * @param f File descriptor of the file containing the library
+	 * @param progress Told of the progress after each book. May be null.
+	 * @return The books of the file, in file order
+	 * @throws DOMException If the file cannot be parsed
+	 */
+	static List<Book> readFile(File f, BookLibraryLoadProgress progress) throws DOMException {
+		ArrayList<Book> books = new ArrayList<Book>();
+		StringPool pool = new StringPool();
+		try (CountingInputStream in = new CountingInputStream(
+			new BufferedInputStream(new FileInputStream(f), 65536))) {
+			readBooks(in, books, progress, f.length(), pool);
+			pool.report(progress);
+		} catch (DOMException | CancellationException e) {
+			throw e;
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			throw new DOMException(
+				DOMException.INVALID_STATE_ERR,
+				"Unable to parse file");
+		}
+		return books;
+	}
+
+	/**
+	 * Read the books defined by the library XML read from the passed stream
+	 * and add them to the passed list, in the order they are read.
+	 * 
+	 * @param in The stream holding the library XML
+	 * @param books The list to add the books to
+	 * @param progress Told of the progress after each book. May be null.
+	 * @param length The length of the whole file for reporting progress
+	 * @param pool Shares the strings read. May be null.
+	 * @throws XMLStreamException If the XML cannot be read
+	 * @throws DOMException If a book contains an invalid element
+	 */
+	static void readBooks(
+		CountingInputStream in,
+		List<Book> books,
+		BookLibraryLoadProgress progress,
+		long length,
+		StringPool pool)
+		throws XMLStreamException, DOMException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+		try {
+			while (reader.hasNext()) {
+				if ((reader.next() == XMLStreamConstants.START_ELEMENT)
+					&& reader.getLocalName().equals(Book.TAGNAME_BOOK)) {
+					books.add(new Book(reader, pool));
+					if (progress != null)
+						progress.loadProgress(books.size(), in.getCount(), length);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Add the books read from a library file to the empty library in one
+	 * bulk pass rather than re-checking and re-sorting the library once per
+	 * book.
+	 * 
+	 * @param books The books read from the file, in file order
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	private void addLoadedBooks(List<Book> books) throws IllegalStateException {
+		List<Book> rejected = addAll(books);
+		if (!rejected.isEmpty())
+			throw new IllegalStateException(
+				"Book already exists in library: " + rejected.get(0).getTitle());
+	}
+
+	/**
+	 * Add the books read from a library file to the empty library using the
+	 * passed index of the file. The books are placed in the title order and
+	 * their authors registered as the index records, and the books are only
+	 * hashed for the identity index when it is first used. The books are
+	 * added the usual way if there is no index or it does not fit the books.
+	 * 
+	 * @param books The books read from the file, in file order
+	 * @param index The index of the library file. May be null.
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	private void addLoadedBooks(List<Book> books, BookLibraryIndex index)
+		throws IllegalStateException {
+		if ((index == null) || !index.matches(books)) {
+			addLoadedBooks(books);
+			return;
+		}
+
+		Book[] ordered = new Book[books.size()];
+		for (int p = 0; p < ordered.length; p++)
+			ordered[p] = books.get(index.getBookPosition(p));
+		bookList.addAll(Arrays.asList(ordered));
+		bookIndex.addDeferred(books);
+
+		Author[] authors = new Author[index.getAuthorCount()];
+		int s = 0;
+		for (Book b : bookList) {
+			for (Author a : b.getAuthors()) {
+				int id = index.getAuthorId(s++);
+				a.addLibraryBook(b);
+				if (authors[id] == null) {
+					authors[id] = a;
+					authorList.add(a);
+					authorIndex.put(a.nameKey(), a);
+				} else
+					authors[id].addLibraryBook(b);
+			}
+		}
+		indexed = true;
+	}
+
+	/**
+	 * Create every book of a lazily loaded library and add them to the
+	 * library, as for a library loaded in full. Listeners are not told of
+	 * the books as they are not changes to the library. Nothing is done if
+	 * the library is already loaded in full.
+	 * 
+	 * The books of the store are already in title order. They are checked to
+	 * be distinct as they are indexed, before anything else is changed, so a
+	 * file defining the same book twice leaves the library loaded lazily.
+	 * 
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	private void loadAllBooks() throws IllegalStateException {
+		if (lazyStore == null)
+			return;
+		List<Book> books = lazyStore.getAll();
+		BookIdentityIndex index = new BookIdentityIndex();
+		for (Book b : books) {
+			if (index.find(b) != null)
+				throw new IllegalStateException(
+					"Book already exists in library: " + b.getTitle());
+			index.add(b);
+		}
+
+		lazyStore = null;
+		bookIndex = index;
+		bookList.addAll(books);
+		List<BookLibraryListener> saved = listeners;
+		listeners = new CopyOnWriteArrayList<BookLibraryListener>();
+		try {
+			for (Book b : books)
+				registerAuthors(b);
+		} finally {
+			listeners = saved;
+		}
+	}
+
 	// Accessor Methods
 
 	/**
@@ -117,6 +466,7 @@ public class BookLibrary {
 	 * @param lastname The last name of the author to find.
 	 */
 	public Author[] findAuthorByLastName(String lastname) {
+		loadAllBooks();
 		LinkedList<Author> auths = new LinkedList<>();
 		Author a;
 		String lname;
@@ -138,13 +488,7 @@ public class BookLibrary {
 	 * @param fullname The name of the author to find.
 	 */
 	public Author findAuthorByName(String fullname) {
-		Author a = new Author(fullname);
-		int index = authorList.indexOf(a);
-		if (index < 0) {
-			return null;
-		} else {
-			return authorList.get(index);
-		}
+		return findAuthor(new Author(fullname));
 	};
 
 	/**
@@ -155,14 +499,24 @@ public class BookLibrary {
 	 * @return The matched Author in the author list. Otherwise, null.
 	 */
 	public Author findAuthor(Author author) {
-		int index = authorList.indexOf(author);
-		if (index < 0) {
-			return null;
-		} else {
-			return authorList.get(index);
-		}
+		loadAllBooks();
+		return authorIndex.get(author.nameKey());
 	};
 
+	/**
+	 * Returns the book in the library with the passed ISBN and title. As for
+	 * <code>Book.equals</code> the ISBN is used if both have one, otherwise
+	 * the title.
+	 * 
+	 * @param isbn The ISBN of the book to find. May be null.
+	 * @param title The title of the book to find
+	 * @return The matched Book in the library. Otherwise, null.
+	 */
+	Book findBook(String isbn, String title) {
+		loadAllBooks();
+		return bookIndex.find(isbn, title, null);
+	}
+
 	/**
 	 * Returns the book at index i in the book list.
 	 * 
@@ -170,24 +524,134 @@ public class BookLibrary {
 	 * @return The Book object at that index
 	 */
 	public Book getBook(int i) {
+		if (lazyStore != null)
+			return lazyStore.get(i);
 		return bookList.get(i);
 	}
 
 	/**
-	 * Return the linked list of books in the book library.
+	 * Return the list of books in the book library. The list can be sorted
+	 * but not otherwise changed. Books are added, removed and changed through
+	 * <code>addBook</code>, <code>removeBook</code> and <code>modifyBook</code>.
 	 * 
-	 * @return Linked list of book objects in the library
+	 * @return List of book objects in the library
 	 */
-	public LinkedList<Book> getBookList() {
-		return this.bookList;
+	public List<Book> getBookList() {
+		return bookListView;
 	};
 
+	/**
+	 * Returns the position of the passed book object in the book list. The
+	 * book is found by a binary search of the list while the list is in
+	 * title order.
+	 * 
+	 * @param book The book object to find
+	 * @return The position of the book or -1 if not in the library
+	 */
+	public int getBookIndex(Book book) {
+		loadAllBooks();
+		return indexOf(book);
+	}
+
+	/**
+	 * Return the books of the library in the passed order. The list cannot be
+	 * changed but follows each change made to the library, so the same list
+	 * is returned each time for an order, until the collation locale is set.
+	 * Without a collation locale the title order is the book list itself.
+	 * The other orders are sorted when first asked for and then kept
+	 * in order as books are added, removed and modified.
+	 * 
+	 * @param order The order of the books
+	 * @return List of book objects in the library in that order
+	 */
+	public List<Book> getBookList(Order order) {
+		if ((order == Order.TITLE) && (collator == null)) {
+			if (titleOrder == null)
+				titleOrder = Collections.unmodifiableList(getBookList());
+			return titleOrder;
+		}
+		return bookOrder(order).getBooks();
+	}
+
+	/**
+	 * Return the books of the library in the passed order, ascending or
+	 * descending. A descending list is a view of the ascending list read
+	 * from its end, so no sort or copy of the books is made. Like the
+	 * ascending list it cannot be changed but follows each change made to
+	 * the library.
+	 * 
+	 * @param order The order of the books
+	 * @param ascending True for the books in ascending order
+	 * @return List of book objects in the library in that order
+	 */
+	public List<Book> getBookList(Order order, boolean ascending) {
+		if (ascending)
+			return getBookList(order);
+		List<Book> reversed = reversedOrders.get(order);
+		if (reversed == null) {
+			reversed = new ReversedBookList(getBookList(order));
+			reversedOrders.put(order, reversed);
+		}
+		return reversed;
+	}
+
+	/**
+	 * Returns the position of the passed book object in the list of books
+	 * in the passed order.
+	 * 
+	 * @param book The book object to find
+	 * @param order The order of the books
+	 * @return The position of the book or -1 if not in the library
+	 */
+	public int getBookIndex(Book book, Order order) {
+		if ((order == Order.TITLE) && (collator == null))
+			return getBookIndex(book);
+		return bookOrder(order).indexOf(book);
+	}
+
+	/**
+	 * Returns the position of the passed book object in the list of books
+	 * in the passed order, ascending or descending.
+	 * 
+	 * @param book The book object to find
+	 * @param order The order of the books
+	 * @param ascending True for the position in ascending order
+	 * @return The position of the book or -1 if not in the library
+	 */
+	public int getBookIndex(Book book, Order order, boolean ascending) {
+		int i = getBookIndex(book, order);
+		if (ascending || (i < 0))
+			return i;
+		return length() - 1 - i;
+	}
+
+	/**
+	 * Returns the locale whose collation orders the titles and author names
+	 * of the orders of the library.
+	 * 
+	 * @return The collation locale, or null if titles are ordered as the book list
+	 */
+	public Locale getCollationLocale() {
+		return collationLocale;
+	}
+
+	/**
+	 * Returns the collator of the collation locale.
+	 * 
+	 * @return The collator, or null if titles are ordered as the book list
+	 */
+	Collator getCollator() {
+		return collator;
+	}
+
 	/**
 	 * Returns the number of books in the library
 	 * 
 	 * @return Number of books in the library
 	 */
 	public int length() {
+		if (lazyStore != null)
+			return lazyStore.size();
 		return bookList.size();
 	}
 
@@ -197,7 +661,7 @@ public class BookLibrary {
 	 * @return Iterator over list of books in the library
 	 */
 	public ListIterator<Book> booklistIterator() {
-		return bookList.listIterator();
+		return getBookList().listIterator();
 	}
 
 	// Modification Methods
@@ -213,31 +677,73 @@ public class BookLibrary {
 	 * @throws IllegalStateException If book already in library
 	 */
 	public void addBook(Book newbook) throws IllegalStateException {
-		if ((bookList != null) && (bookList.contains(newbook))) {
+		loadAllBooks();
+		if (bookIndex.find(newbook) != null) {
 			//consoleOutput();
 			throw new IllegalStateException(
 				"Book already exists in library: " + newbook.getTitle());
 		}
 
-		// Loop through the book list finding the correct spot to insert the book
-		int i = 0;
-		boolean found = false;
-		while ((i < bookList.size()) && (!found)) {
-			Book b = bookList.get(i);
-			if (b.compareTo(newbook) == 1)
-				found = true;
-			else
-				i++;
+		bookList.add(insertionPoint(newbook), newbook);
+		for (BookOrder o : orders.values())
+			o.add(newbook);
+		bookIndex.add(newbook);
+		registerAuthors(newbook);
+		fireBookEvent(BookLibraryEvent.Type.BOOK_ADDED, newbook, null);
+	};
+
+	/**
+	 * Adds all the passed books to the library in a single pass. Books which
+	 * are already in the library, or which duplicate an earlier book in the
+	 * passed collection, are not added but returned to the caller. The
+	 * remaining books are sorted once and merged into the sorted book list
+	 * and their authors registered with the managed author list.
+	 * 
+	 * @param books The Book objects to add to the managed book list
+	 * @return The books rejected as duplicates, in the order they were passed
+	 */
+	public List<Book> addAll(Iterable<Book> books) {
+		loadAllBooks();
+		LinkedList<Book> rejected = new LinkedList<Book>();
+		ArrayList<Book> accepted = new ArrayList<Book>();
+		for (Book b : books) {
+			if (bookIndex.find(b) != null)
+				rejected.add(b);
+			else {
+				bookIndex.add(b);
+				accepted.add(b);
+			}
 		}
-		bookList.add(i, newbook);
-		LinkedList<Author> auths = newbook.getAuthors();
-		for (i = 0; i < auths.size(); i++) {
-			Author a = auths.get(i);
-			a.addBook(newbook);
-			if (!authorList.contains(a))
-				authorList.add(a);
+		if (accepted.isEmpty())
+			return rejected;
+
+		// Sort the new books once and then merge them into the already sorted
+		// book list in a single walk of that list
+		BookListCompare comparator = new BookListCompare();
+		BookOrder.sort(accepted, comparator);
+		if (titleSorted) {
+			ArrayList<Book> merged = new ArrayList<Book>(bookList.size() + accepted.size());
+			int i = 0;
+			for (Book b : accepted) {
+				while ((i < bookList.size()) && (comparator.compare(bookList.get(i), b) <= 0))
+					merged.add(bookList.get(i++));
+				merged.add(b);
+			}
+			merged.addAll(bookList.subList(i, bookList.size()));
+			bookList.clear();
+			bookList.addAll(merged);
+		} else
+			for (Book b : accepted)
+				bookList.add(insertionPoint(b), b);
+		for (BookOrder o : orders.values())
+			o.addAll(accepted);
+
+		for (Book b : accepted) {
+			registerAuthors(b);
+			fireBookEvent(BookLibraryEvent.Type.BOOK_ADDED, b, null);
 		}
-	};
+		return rejected;
+	}
 
 	/**
 	 * Remove the passed book from the library of books. Also update the author list
@@ -248,25 +754,284 @@ public class BookLibrary {
 	 *                               the book in their list of authored books
 	 */
 	public void removeBook(Book delbook) throws IllegalStateException {
+		loadAllBooks();
 		if (bookList != null) {
-			if (bookList.contains(delbook)) {
-				LinkedList<Author> auths = delbook.getAuthors();
+			Book libbook = bookIndex.find(delbook);
+			if (libbook != null) {
+				LinkedList<Author> auths = libbook.getAuthors();
 				//dumpAuthors();
 				for (int i = 0; i < auths.size(); i++) {
 					Author auth = auths.get(i);
-					if (!auth.removeBook(delbook))
+					if (!auth.getBooks().contains(libbook))
 						throw new IllegalStateException(
 							"Book not found for author " + auth.toString());
-					if (auth.getBooks().size() == 0)
-						authorList.remove(auth);
 				};
-				bookList.remove(delbook);
+				// The book is removed before the authors left without books,
+				// as for removeAll
+				Set<Author> delauthors = Collections.newSetFromMap(new IdentityHashMap<Author, Boolean>());
+				unregisterAuthors(libbook, delauthors);
+				bookIndex.remove(libbook);
+				bookList.remove(indexOf(libbook));
+				for (BookOrder o : orders.values())
+					o.remove(libbook);
+				authorList.removeIf(delauthors::contains);
+				fireBookEvent(BookLibraryEvent.Type.BOOK_REMOVED, libbook, null);
+				for (Author a : delauthors)
+					fireAuthorEvent(BookLibraryEvent.Type.AUTHOR_REMOVED, a);
 
 			} else
 				throw new IllegalStateException("Book not found");
 		}
 	}
 
+	/**
+	 * Removes all the passed books from the library in a single pass of the
+	 * book and author lists. Books which are not in the library are returned
+	 * to the caller.
+	 * 
+	 * @param books The books to remove from the library
+	 * @return The books not found in the library, in the order they were passed
+	 */
+	public List<Book> removeAll(Collection<Book> books) {
+		loadAllBooks();
+		LinkedList<Book> notFound = new LinkedList<Book>();
+		Set<Book> delbooks = Collections.newSetFromMap(new IdentityHashMap<Book, Boolean>());
+		for (Book b : books) {
+			Book libbook = bookIndex.find(b);
+			if (libbook == null)
+				notFound.add(b);
+			else
+				delbooks.add(libbook);
+		}
+		if (delbooks.isEmpty())
+			return notFound;
+
+		Set<Author> delauthors = Collections.newSetFromMap(new IdentityHashMap<Author, Boolean>());
+		for (Book b : delbooks) {
+			bookIndex.remove(b);
+			unregisterAuthors(b, delauthors);
+		}
+		bookList.removeIf(delbooks::contains);
+		for (BookOrder o : orders.values())
+			o.removeAll(delbooks);
+		authorList.removeIf(delauthors::contains);
+		for (Book b : delbooks)
+			fireBookEvent(BookLibraryEvent.Type.BOOK_REMOVED, b, null);
+		for (Author a : delauthors)
+			fireAuthorEvent(BookLibraryEvent.Type.AUTHOR_REMOVED, a);
+		return notFound;
+	}
+
+	/**
+	 * Sets the series of all the passed books in the library to the passed
+	 * series. Books which are not in the library are ignored.
+	 * 
+	 * @param books The books whose series is to be set
+	 * @param series The new series of the books. Null or blank for no series.
+	 * @return The number of books whose series was changed
+	 */
+	public int setSeries(Collection<Book> books, String series) {
+		loadAllBooks();
+		int changed = 0;
+		for (Book b : books) {
+			Book libbook = bookIndex.find(b);
+			if ((libbook != null) && modifyBook(libbook, new BookDelta(libbook, series)))
+				changed++;
+		}
+		return changed;
+	}
+
+	/**
+	 * Sets the locale whose collation orders the titles and author names of
+	 * the orders of the library, so titles in the language of the locale are
+	 * listed in the order its readers expect. The collation key of each title
+	 * and name is made once and kept by its book, so sorting does not collate
+	 * on every comparison. The book list itself stays in title order by
+	 * character code, the order of the library files. The orders are built
+	 * again when next asked for.
+	 * 
+	 * @param locale The collation locale, or null to order titles as the book list
+	 */
+	public void setCollationLocale(Locale locale) {
+		if (Objects.equals(locale, collationLocale))
+			return;
+		collationLocale = locale;
+		collator = (locale == null) ? null : Collator.getInstance(locale);
+		orders.clear();
+		reversedOrders.clear();
+	}
+
+	/**
+	 * Applies the values of the passed modified book to the passed book held in
+	 * the library. See <code>modifyBook(Book, BookDelta)</code>.
+	 * 
+	 * @param book The Book object in the library to modify
+	 * @param modbook The book holding the new values
+	 * @return True if the book was modified. False otherwise.
+	 * @throws IllegalStateException If the modified book would duplicate another
+	 *                               book in the library
+	 */
+	public boolean modifyBook(Book book, Book modbook) throws IllegalStateException {
+		return modifyBook(book, book.diff(modbook));
+	}
+
+	/**
+	 * Applies the passed delta to the passed book held in the library. Only the
+	 * library state affected by the changed fields is updated: the identity
+	 * lookups for a changed title or ISBN, the author list for the authors
+	 * added or removed and the position of the book in the sorted book list
+	 * and the other orders for a changed title or other compared field.
+	 * Nothing is changed if the modified book would duplicate another book
+	 * in the library.
+	 * 
+	 * @param book The Book object in the library to modify
+	 * @param delta The changes to the book, as returned by <code>book.diff</code>
+	 * @return True if the book was modified. False otherwise.
+	 * @throws IllegalStateException If the modified book would duplicate another
+	 *                               book in the library
+	 */
+	public boolean modifyBook(Book book, BookDelta delta) throws IllegalStateException {
+		loadAllBooks();
+		if (delta.isEmpty())
+			return false;
+
+		// Only the title and ISBN are used by the identity index
+		boolean rekey = delta.isChanged(Book.Field.TITLE) || delta.isChanged(Book.Field.ISBN);
+		if (rekey && (bookIndex.find(delta.getNewISBN(), delta.getNewTitle(), book) != null))
+			throw new IllegalStateException(
+				"Book already exists in library: " + delta.getNewTitle());
+
+		// Find the current sort position before the title changes
+		int index = -1;
+		if (delta.isChanged(Book.Field.TITLE))
+			index = indexOf(book);
+		IdentityHashMap<BookOrder, Integer> moved = new IdentityHashMap<BookOrder, Integer>();
+		for (BookOrder o : orders.values())
+			if (o.isMovedBy(delta))
+				moved.put(o, o.indexOf(book));
+
+		if (rekey)
+			bookIndex.remove(book);
+		for (Author a : delta.getRemovedAuthors())
+			unregisterAuthor(a, book, null);
+		delta.applyTo(book);
+		if (rekey)
+			bookIndex.add(book);
+		for (Author a : delta.getAddedAuthors()) {
+			// The book may already list an author of the same name
+			a.addBook(book);
+			Author libauthor = authorIndex.get(a.nameKey());
+			if ((libauthor == null) || !libauthor.getBooks().contains(book))
+				addAuthor(a, book);
+		}
+		if (index >= 0) {
+			bookList.remove(index);
+			bookList.add(insertionPoint(book), book);
+		}
+		for (Map.Entry<BookOrder, Integer> e : moved.entrySet())
+			if (e.getValue() >= 0)
+				e.getKey().move(e.getValue(), book);
+		fireBookEvent(BookLibraryEvent.Type.BOOK_MODIFIED, book, delta);
+		return true;
+	}
+
+	/**
+	 * Returns the position in the sorted book list at which the passed book
+	 * should be inserted, after any books with the same title. Found by a
+	 * search down the tree of the list while the list is in title order,
+	 * and otherwise before the first book with a later title.
+	 * 
+	 * @param book The book to insert
+	 * @return The insertion position
+	 */
+	private int insertionPoint(Book book) {
+		BookListCompare comparator = new BookListCompare();
+		if (titleSorted)
+			return bookList.upperBound(book, comparator);
+		int i = 0;
+		for (Book b : bookList) {
+			if (comparator.compare(b, book) > 0)
+				return i;
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the position of the passed book object in the book list. The
+	 * book is found by a search down the tree of the list while the list is
+	 * in title order, and otherwise by walking the list.
+	 * 
+	 * @param book The book object to find
+	 * @return The position of the book or -1 if not in the list
+	 */
+	private int indexOf(Book book) {
+		if (titleSorted) {
+			// Books with the same title compare as equal so look through them all
+			BookListCompare comparator = new BookListCompare();
+			int last = bookList.upperBound(book, comparator);
+			for (int k = bookList.lowerBound(book, comparator); k < last; k++)
+				if (bookList.get(k) == book)
+					return k;
+			return -1;
+		}
+		int i = 0;
+		for (Book b : bookList) {
+			if (b == book)
+				return i;
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Associates the passed book with each of its authors and adds any author
+	 * not yet known to the managed author list.
+	 * 
+	 * @param book The book whose authors are to be registered
+	 */
+	private void registerAuthors(Book book) {
+		for (Author a : book.getAuthors()) {
+			a.addLibraryBook(book);
+			addAuthor(a, book);
+		}
+	}
+
+	/**
+	 * Removes the association of the passed book with each of its authors in
+	 * the managed author list. Authors left without books are collected in the
+	 * passed set, to be removed from the managed author list by the caller in
+	 * one pass, or removed immediately if the set is null.
+	 * 
+	 * @param book The book whose authors are to be unregistered
+	 * @param delauthors Collects the authors left without books. May be null.
+	 */
+	private void unregisterAuthors(Book book, Set<Author> delauthors) {
+		for (Author a : book.getAuthors())
+			unregisterAuthor(a, book, delauthors);
+	}
+
+	/**
+	 * Removes the association of the passed book with the passed author of
+	 * that book. See <code>unregisterAuthors</code>.
+	 */
+	private void unregisterAuthor(Author a, Book book, Set<Author> delauthors) {
+		a.removeBook(book);
+		String key = a.nameKey();
+		Author libauthor = authorIndex.get(key);
+		if (libauthor != null) {
+			libauthor.removeBook(book);
+			if (libauthor.getBooks().size() == 0) {
+				authorIndex.remove(key);
+				if (delauthors == null) {
+					authorList.remove(libauthor);
+					fireAuthorEvent(BookLibraryEvent.Type.AUTHOR_REMOVED, libauthor);
+				} else
+					delauthors.add(libauthor);
+			}
+		}
+	}
+
 	/**
 	 * Checks if the passed author is already in the managed author
 	 * list. If the author is already in the list, the entry is updated
@@ -277,17 +1042,77 @@ public class BookLibrary {
 	 * @param newbook The book written by the newauthor
 	 */
 	private void addAuthor(Author newauthor, Book newbook) {
-		int index = authorList.indexOf(newauthor);
-		if (index < 0) {
-			newauthor.addBook(newbook);
+		String key = newauthor.nameKey();
+		Author a = authorIndex.get(key);
+		if (a == null) {
+			newauthor.addLibraryBook(newbook);
 			authorList.add(newauthor);
+			authorIndex.put(key, newauthor);
+			fireAuthorEvent(BookLibraryEvent.Type.AUTHOR_ADDED, newauthor);
 		} else {
-			Author a = authorList.get(index);
-			a.addBook(newbook);
+			a.addLibraryBook(newbook);
 		}
 
 	};
 
+	// Listener Methods
+
+	/**
+	 * Register the passed listener to be notified of each change to the library.
+	 * 
+	 * @param l The listener to register
+	 */
+	public void addBookLibraryListener(BookLibraryListener l) {
+		listeners.add(l);
+	}
+
+	/**
+	 * Stop notifying the passed listener of changes to the library.
+	 * 
+	 * @param l The listener to remove
+	 */
+	public void removeBookLibraryListener(BookLibraryListener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * Notify the registered listeners of a change to a book, after marking
+	 * the columns of the searched fields as changed.
+	 */
+	private void fireBookEvent(BookLibraryEvent.Type type, Book book, BookDelta delta) {
+		booksChanged((type == BookLibraryEvent.Type.BOOK_MODIFIED) ? book : null);
+		if (listeners.isEmpty())
+			return;
+		BookLibraryEvent e = new BookLibraryEvent(this, type, book, delta);
+		for (BookLibraryListener l : listeners) {
+			switch (type) {
+				case BOOK_ADDED :
+					l.bookAdded(e);
+					break;
+				case BOOK_REMOVED :
+					l.bookRemoved(e);
+					break;
+				default :
+					l.bookModified(e);
+			}
+		}
+	}
+
+	/**
+	 * Notify the registered listeners of a change to the author list.
+	 */
+	private void fireAuthorEvent(BookLibraryEvent.Type type, Author author) {
+		if (listeners.isEmpty())
+			return;
+		BookLibraryEvent e = new BookLibraryEvent(this, type, author);
+		for (BookLibraryListener l : listeners) {
+			if (type == BookLibraryEvent.Type.AUTHOR_ADDED)
+				l.authorAdded(e);
+			else
+				l.authorRemoved(e);
+		}
+	}
+
 	// Search Methods
 
 	/**
@@ -297,7 +1122,8 @@ public class BookLibrary {
 	 * @return True if book is in list, false otherwise.
 	 */
 	public boolean containsBook(Book book) {
-		return bookList.contains(book);
+		loadAllBooks();
+		return bookIndex.find(book) != null;
 	};
 
 	/**
@@ -311,6 +1137,11 @@ public class BookLibrary {
 	 */
 	public LinkedList<Book> searchResults(BookSearchObject searchObject, boolean caseInsensitive) {
 
+		// Search the strings of a lazily loaded library without creating
+		// the books
+		if (lazyStore != null)
+			return lazyStore.search(searchObject, caseInsensitive);
+
 		// Farm the search off to the appropriate private method based
 		// on the type of search in the search object
 		if (searchObject.getSearchType() == BookSearchObject.BOOKSEARCH)
@@ -334,40 +1165,51 @@ public class BookLibrary {
 	 * @return Linked list of books matching the book information search criteria
 	 */
 	private LinkedList<Book> bookSearchResults(BookSearchObject searchObject, boolean caseInsensitive) {
-		LinkedList<Book> resultList = new LinkedList<>();
-		for (int i = 0; i < bookList.size(); i++) {
+		return columns().bookSearch(searchObject, caseInsensitive);
+	};
 
-			// If anything in the book search object does not
-			// match with the book, the book is *not* added to the
-			// returned result list
-			boolean addToList = true;
-
-			Book b = bookList.get(i);
-
-			if ((searchObject.getCoverType() != Book.BADCOVER)
-				&& (searchObject.getCoverType() != Book.ANYCOVER))
-				if (searchObject.getCoverType() != b.getCoverType())
-					addToList = false;
-
-			if (searchObject.getDate() != Book.BADDATE)
-				if (searchObject.getDate() != b.getPublishYear())
-					addToList = false;
-
-			if (!searchObject.getISBN().equals(""))
-				if (!BookSearchObject
-					.WildCardMatch(searchObject.getISBN(), b.getISBN(), caseInsensitive))
-					addToList = false;
-
-			if (!searchObject.getTitle().equals(""))
-				if (!BookSearchObject
-					.WildCardMatch(searchObject.getTitle(), b.getTitle(), caseInsensitive))
-					addToList = false;
-
-			if (addToList)
-				resultList.add(b);
-		}
-		return resultList;
-	};
+	/**
+	 * Returns true if a book with the passed information matches the book
+	 * information search criteria specified in the search object. If anything
+	 * in the book search object does not match with the book, the book does
+	 * *not* match.
+	 * 
+	 * @param searchObject
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @param title The title of the book
+	 * @param isbn The ISBN of the book
+	 * @param year The publish year of the book
+	 * @param cover The cover type of the book
+	 * @return True if the book matches
+	 */
+	static boolean bookMatches(
+		BookSearchObject searchObject,
+		boolean caseInsensitive,
+		String title,
+		String isbn,
+		int year,
+		int cover) {
+		if ((searchObject.getCoverType() != Book.BADCOVER)
+			&& (searchObject.getCoverType() != Book.ANYCOVER))
+			if (searchObject.getCoverType() != cover)
+				return false;
+
+		if (searchObject.getDate() != Book.BADDATE)
+			if (searchObject.getDate() != year)
+				return false;
+
+		if (!searchObject.getISBN().equals(""))
+			if (!BookSearchObject
+				.WildCardMatch(searchObject.getISBN(), isbn, caseInsensitive))
+				return false;
+
+		if (!searchObject.getTitle().equals(""))
+			if (!BookSearchObject
+				.WildCardMatch(searchObject.getTitle(), title, caseInsensitive))
+				return false;
+
+		return true;
+	}
 
 	/**
 	 * Search through the book list of the library for books which match the book
@@ -378,25 +1220,106 @@ public class BookLibrary {
 	 * @return Linked list of books matching the book series search criteria
 	 */
 	private LinkedList<Book> seriesSearchResults(BookSearchObject searchObject, boolean caseInsensitive) {
-		LinkedList<Book> resultList = new LinkedList<>();
-		for (int i = 0; i < bookList.size(); i++) {
+		return columns().seriesSearch(searchObject, caseInsensitive);
+	};
 
-			// If anything in the book search object does not
-			// match with the book, the book is *not* added to the
-			// returned result list
-			boolean addToList = true;
+	/**
+	 * Returns a filter of the books now in the library, finding those whose
+	 * title, authors, series or ISBN contain a piece of text. The filter
+	 * holds the books as they are now and may be used on another thread,
+	 * but its results are only those of the library as it is if the same
+	 * filter is still returned once it has run. See <code>BookFilter</code>.
+	 * A lazily loaded library is filtered using the strings of its file
+	 * without creating the books.
+	 * 
+	 * @return The filter of the books in book list order
+	 */
+	public BookFilter getBookFilter() {
+		if (lazyStore != null)
+			return lazyStore;
+		return columns();
+	}
 
-			Book b = bookList.get(i);
-			if (!searchObject.getSeries().equals(""))
-				if (!BookSearchObject
-					.WildCardMatch(searchObject.getSeries(), b.getSeries(), caseInsensitive))
-					addToList = false;
+	/**
+	 * Returns the order of the books of the passed kind, loading every book
+	 * and sorting them into the order if not yet built.
+	 * 
+	 * @param order The order, other than the title order of the book list
+	 * @return The order of the books
+	 */
+	private BookOrder bookOrder(Order order) {
+		BookOrder o = orders.get(order);
+		if (o == null) {
+			loadAllBooks();
+			if (order == Order.TITLE)
+				o = new BookOrder(bookList, new BookListCompare(collator),
+					EnumSet.of(Book.Field.TITLE), collator);
+			else if (order == Order.AUTHOR)
+				o = new BookOrder(bookList, new AuthorListCompare(collator),
+					EnumSet.of(Book.Field.AUTHORS, Book.Field.TITLE), collator);
+			else
+				o = new BookOrder(bookList, new PublishDateListCompare(collator),
+					EnumSet.of(Book.Field.YEAR, Book.Field.TITLE), collator);
+			orders.put(order, o);
+		}
+		return o;
+	}
 
-			if (addToList)
-				resultList.add(b);
+	/**
+	 * Returns the columns of the searched fields of the books, updating them
+	 * if the book list or the books in it have changed since they were last
+	 * made. Only the books added or modified since are read again.
+	 * 
+	 * @return The columns of the books in book list order
+	 */
+	private synchronized BookColumns columns() {
+		if (columns == null)
+			columns = new BookColumns(bookList);
+		else if (columnsChanged) {
+			columns = columns.update(bookList, columnsModified);
+			columnsModified = newBookSet();
 		}
-		return resultList;
-	};
+		columnsChanged = false;
+		return columns;
+	}
+
+	/**
+	 * Mark the columns of the searched fields as changed, after a change to
+	 * the book list or to the fields of the passed book.
+	 * 
+	 * @param modified The book whose fields changed. May be null.
+	 */
+	private synchronized void booksChanged(Book modified) {
+		if (columns == null)
+			return;
+		columnsChanged = true;
+		if (modified != null)
+			columnsModified.add(modified);
+	}
+
+	/**
+	 * Returns a new empty set of books held by identity.
+	 */
+	private static Set<Book> newBookSet() {
+		return Collections.newSetFromMap(new IdentityHashMap<Book, Boolean>());
+	}
+
+	/**
+	 * Returns true if a book in the passed series matches the book series
+	 * search criteria specified in the search object.
+	 * 
+	 * @param searchObject
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @param series The series of the book
+	 * @return True if the book matches
+	 */
+	static boolean seriesMatches(BookSearchObject searchObject, boolean caseInsensitive, String series) {
+		if (!searchObject.getSeries().equals(""))
+			if (!BookSearchObject
+				.WildCardMatch(searchObject.getSeries(), series, caseInsensitive))
+				return false;
+		return true;
+	}
 
 	/**
 	 * Search through the book list of the library for books which match the book
@@ -409,89 +1332,321 @@ public class BookLibrary {
 	 * @return Linked list of books matching the book author search criteria
 	 */
 	private LinkedList<Book> authorSearchResults(BookSearchObject searchObject, boolean caseInsensitive) {
-		LinkedList<Book> resultList = new LinkedList<>();
-		for (int i = 0; i < bookList.size(); i++) {
-
-			// If any Author in the author list of the book matches,
-			// the book is added to the list
-			Book b = bookList.get(i);
-			LinkedList<Author> auth_list = b.getAuthors();
-			boolean authorFound = false;
-			for (int j = 0;(!authorFound) && (j < auth_list.size()); j++) {
-				boolean foundFirst = true;
-				boolean foundLast = true;
-				Author auth = auth_list.get(j);
-				if (!searchObject.getFirstName().equals(""))
-					if (!BookSearchObject
-						.WildCardMatch(
-							searchObject.getFirstName(),
-							auth.getFirstName(),
-							caseInsensitive))
-						foundFirst = false;
-				if (!searchObject.getLastName().equals(""))
-					if (!BookSearchObject
-						.WildCardMatch(
-							searchObject.getLastName(),
-							auth.getLastName(),
-							caseInsensitive))
-						foundLast = false;
-				authorFound = foundFirst && foundLast;
-			}
-
-			if (authorFound)
-				resultList.add(b);
-		}
-		return resultList;
+		return columns().authorSearch(searchObject, caseInsensitive);
 	};
 
+	/**
+	 * Returns true if an author with the passed names matches the book author
+	 * search criteria specified in the search object. Both the first and last
+	 * names must match if specified.
+	 * 
+	 * @param searchObject
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @param firstname The first name of the author
+	 * @param lastname The last name of the author
+	 * @return True if the author matches
+	 */
+	static boolean authorMatches(
+		BookSearchObject searchObject,
+		boolean caseInsensitive,
+		String firstname,
+		String lastname) {
+		if (!searchObject.getFirstName().equals(""))
+			if (!BookSearchObject
+				.WildCardMatch(searchObject.getFirstName(), firstname, caseInsensitive))
+				return false;
+		if (!searchObject.getLastName().equals(""))
+			if (!BookSearchObject
+				.WildCardMatch(searchObject.getLastName(), lastname, caseInsensitive))
+				return false;
+		return true;
+	}
+
 	// Output methods
 
+	/**
+	 * Load every book of a library loaded lazily from the passed file and
+	 * drop its store, so the library no longer holds the file mapped into
+	 * memory. A mapped file cannot be replaced on Windows, so this is done
+	 * before the file is written over. Nothing is done for a library loaded
+	 * in full or from another file. The books are loaded as for any other
+	 * change to the library, so this is called on the thread changing the
+	 * library before the file is written on another.
+	 * 
+	 * @param f The file about to be written
+	 */
+	public void releaseFile(File f) {
+		if ((lazyStore != null) && lazyStore.isStoreOf(f))
+			loadAllBooks();
+	}
+
+	/**
+	 * Writes out the book library to the passed file, in the binary format if
+	 * the file has the binary library extension and as XML otherwise.
+	 * 
+	 * @param f File to write the book library to
+	 */
+	public void write(File f) throws FileNotFoundException, IOException {
+		if (isBinaryFile(f))
+			writeBinary(f);
+		else
+			writeXML(f);
+	}
+
 	/**
 	 * Writes out the XML definition of the book library to the passed file.
 	 * A backup file is first created, over-writing any existing backup file.
-	 * None of the I/O exceptions which could be generated by these I/O operations
-	 * are caught...they are passed upwards.
+	 * The library is written to a temporary file in the same directory which
+	 * is forced to disk and then moved over the passed file in one step, so
+	 * the file is never left partially written. The file keeps the permissions
+	 * of the file it replaces, and a new file is given the default permissions
+	 * of a file created in the directory. None of the I/O exceptions which
+	 * could be generated by these I/O operations are caught...they are passed
+	 * upwards.
 	 * 
 	 * @param f File to write the book library xml definition
 	 */
 	public void writeXML(File f) throws FileNotFoundException, IOException {
+		releaseFile(f);
+		int checksum = saveFile(f, fout -> {
+			BufferedWriter bufwriter =
+				new BufferedWriter(new OutputStreamWriter(fout, "UTF-8"), 65536);
+
+			// Write out the required xml file header information and then
+			// the start of the book library xml definition
+			bufwriter.write(TAGNAME_XML + TAGNAME_STYLESHEET);
+			bufwriter.write("<" + TAGNAME_BOOKLIBRARY + TAGNAME_NAMESPACE + ">\n");
+
+			// Loop through each book and have it write out it's xml definition
+			// to the file
+			for (int i = 0; i < length(); i++) {
+				Book b = getBook(i);
+				b.writeXML(bufwriter, "  ");
+			}
+			bufwriter.write("</booklibrary>\n");
+			bufwriter.flush();
+		});
+		saved(f, checksum);
+	}
+
+	/**
+	 * Writes out the book library to the passed file in the binary format,
+	 * with the same backup file and replacement of the file in one step as
+	 * <code>writeXML</code>.
+	 * 
+	 * @param f File to write the binary book library to
+	 */
+	public void writeBinary(File f) throws FileNotFoundException, IOException {
+		releaseFile(f);
+		int checksum = saveFile(f, fout -> BookLibraryBinary.write(this, fout));
+		saved(f, checksum);
+	}
+
+	/**
+	 * Record the checksum of the library file just written and write its
+	 * index file, which holds the books of this library in book list order.
+	 * No index is written for a library loaded lazily, which builds no
+	 * indexes.
+	 * 
+	 * @param f The library file
+	 * @param checksum The checksum of the contents written
+	 */
+	private void saved(File f, int checksum) {
+		recordChecksum(f, f.length(), f.lastModified(), checksum);
+		if (lazyStore == null)
+			BookLibraryIndex.update(f, bookList, checksum);
+	}
+
+	/**
+	 * Write the index file of the passed library file, whose books are the
+	 * passed books in file order. No index is written if the file cannot be
+	 * read.
+	 * 
+	 * @param f The library file
+	 * @param books The books of the file, in file order
+	 */
+	private void writeIndex(File f, List<Book> books) {
+		try {
+			BookLibraryIndex.update(f, books, fileChecksum(f));
+		} catch (IOException e) {
+			// The index is only an aid to loading
+		}
+	}
+
+	/**
+	 * Returns the index of the passed library file, or null if it has no up
+	 * to date index or cannot be read.
+	 * 
+	 * @param f The library file
+	 * @return The index of the file or null
+	 */
+	private BookLibraryIndex openIndex(File f) {
+		try {
+			return BookLibraryIndex.open(f, fileChecksum(f));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the CRC32 checksum of the contents of the passed library file.
+	 * The checksum worked out when the library last read or wrote the file
+	 * is used if the file has not changed since, so the file is not read
+	 * again each time its checksum is needed.
+	 * 
+	 * @param f The library file
+	 * @return The checksum of the file
+	 * @throws IOException If the file cannot be read
+	 */
+	synchronized int fileChecksum(File f) throws IOException {
+		File file = f.getAbsoluteFile();
+		long length = file.length();
+		long modified = file.lastModified();
+		if (!file.equals(checkedFile) || (length != checkedLength) || (modified != checkedModified))
+			recordChecksum(file, length, modified, BookLibraryIndex.checksum(file));
+		return checkedChecksum;
+	}
+
+	/**
+	 * Record the checksum of the passed library file as it is now.
+	 */
+	private synchronized void recordChecksum(File f, long length, long modified, int checksum) {
+		checkedFile = f.getAbsoluteFile();
+		checkedLength = length;
+		checkedModified = modified;
+		checkedChecksum = checksum;
+	}
+
+	/**
+	 * Returns true if the passed file has the binary library extension.
+	 * 
+	 * @param f A book library file
+	 * @return True if the file is in the binary format
+	 */
+	public static boolean isBinaryFile(File f) {
+		return f.getName().toLowerCase(Locale.ROOT).endsWith(EXT_BOOKLIBRARY_BINARY);
+	}
+
+	/**
+	 * Saves a file by backing up the existing file, writing the new contents
+	 * to a temporary file in the same directory which is forced to disk, and
+	 * then moving it over the file in one step. The checksum of the contents
+	 * is worked out as they are written.
+	 * 
+	 * @param f The file to save
+	 * @param contents Writes the new contents of the file
+	 * @return The CRC32 checksum of the contents written
+	 */
+	static int saveFile(File f, FileContentsWriter contents) throws IOException {
+		File dir = f.getAbsoluteFile().getParentFile();
 
 		// Create backup file
-		if (f.exists()) {
-			File f_bak = new File(f.getPath() + "." + EXT_BOOKLIBRARY_BACKUP);
-			BufferedReader in = new BufferedReader(new InputStreamReader( new FileInputStream(f), "UTF-8"));
-			BufferedWriter out = new BufferedWriter(new OutputStreamWriter( new FileOutputStream(f_bak), "UTF-8"));
-
-			// Transfer bytes from in to out
-			CharBuffer buf = CharBuffer.allocate(1024);
-			while (in.read(buf) > 0) {
-				out.append(buf.flip());
-				buf.clear();
+		if (f.exists())
+			copyFile(f, new File(f.getPath() + "." + EXT_BOOKLIBRARY_BACKUP));
+
+		File f_tmp = createTempFile(f, dir);
+		CRC32 crc = new CRC32();
+		try {
+			FileOutputStream fout = new FileOutputStream(f_tmp);
+			try {
+				CheckedOutputStream cout = new CheckedOutputStream(fout, crc);
+				contents.write(cout);
+				cout.flush();
+				fout.getChannel().force(true);
+			} finally {
+				fout.close();
+			}
+			copyPermissions(f, f_tmp);
+
+			// Replace the file with the completed temporary file
+			try {
+				Files.move(f_tmp.toPath(), f.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(f_tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
-			in.close();
-			out.close();
+		} finally {
+			f_tmp.delete();
 		}
+		syncDirectory(dir);
+		return (int) crc.getValue();
+	}
 
-		FileOutputStream fout = new FileOutputStream(f);
-		BufferedWriter bufwriter =
-			new BufferedWriter(new OutputStreamWriter(fout, "UTF-8"));
+	/**
+	 * Create a new empty temporary file in the passed directory, named after
+	 * the passed file. The file is given the default permissions of a file
+	 * created in the directory, rather than the owner only permissions a
+	 * temporary file may be given, so a new library file moved into place
+	 * from it can be read by the users any other file can.
+	 *
+	 * @param f The file the temporary file will replace
+	 * @param dir The directory to create the temporary file in
+	 * @return The temporary file
+	 */
+	static File createTempFile(File f, File dir) throws IOException {
+		while (true) {
+			File f_tmp = new File(dir,
+				f.getName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+			try {
+				Files.createFile(f_tmp.toPath());
+				return f_tmp;
+			} catch (FileAlreadyExistsException e) {
+				// Try another name
+			}
+		}
+	}
 
-		// Write out the required xml file header information and then
-		// the start of the book library xml definition
-		bufwriter.write(TAGNAME_XML + TAGNAME_STYLESHEET);
-		bufwriter.write("<" + TAGNAME_BOOKLIBRARY + TAGNAME_NAMESPACE + ">\n");
+	/**
+	 * Copy the POSIX permissions of an existing file onto another file, so a
+	 * temporary file moved over it leaves it with the permissions it had. Nothing is copied if the file does not exist or the file system
+	 * does not have POSIX permissions.
+	 *
+	 * @param from The file whose permissions are copied
+	 * @param to The file given the permissions
+	 */
+	private static void copyPermissions(File from, File to) throws IOException {
+		if (!from.exists())
+			return;
+		try {
+			Files.setPosixFilePermissions(to.toPath(), Files.getPosixFilePermissions(from.toPath()));
+		} catch (UnsupportedOperationException e) {
+			// Not a POSIX file system
+		}
+	}
 
-		// Loop through each book and have it write out it's xml definition
-		// to the file
-		for (int i = 0; i < bookList.size(); i++) {
-			Book b = bookList.get(i);
-			b.writeXML(bufwriter, "  ");
-			bufwriter.flush();
+	/**
+	 * Copy the contents of one file to another, over-writing the destination
+	 * file, and force the copy to disk.
+	 *
+	 * @param from The file to copy
+	 * @param to The copy of the file
+	 */
+	private static void copyFile(File from, File to) throws IOException {
+		try (FileChannel in = FileChannel.open(from.toPath(), StandardOpenOption.READ);
+			FileChannel out = FileChannel.open(to.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long pos = 0;
+			while (pos < size)
+				pos += in.transferTo(pos, size - pos, out);
+			out.force(true);
 		}
-		bufwriter.write("</booklibrary>\n");
-		bufwriter.close();
-		fout.close();
+	}
 
+	/**
+	 * Force the entries of a directory to disk so a file just moved into it
+	 * survives a crash. Not all platforms allow a directory to be opened, in
+	 * which case nothing is done.
+	 *
+	 * @param dir The directory
+	 */
+	private static void syncDirectory(File dir) {
+		try (FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+			ch.force(true);
+		} catch (IOException e) {
+			// Best effort only
+		}
 	}
 
 	/**
@@ -499,6 +1654,7 @@ public class BookLibrary {
 	 *
 	 */
 	public void consoleOutput() {
+		loadAllBooks();
 		Author a;
 		Book b;
 		System.out.println("AUTHORS");
@@ -523,6 +1679,7 @@ public class BookLibrary {
 	 *
 	 */
 	public void dumpAuthors() {
+		loadAllBooks();
 		System.out.println("Dumping Library Author List");
 		System.out.println("+++++++++++++++++++++++++++");
 		for (int i = 0; i < authorList.size(); i++) {
@@ -537,310 +1694,168 @@ public class BookLibrary {
 			}
 		}
 	}
-};
-
-/**
- * An auxilliary class to allow the search of library book and
- * author lists. There are three types of search criteria which
- * can be used:
- *  1. Book Information Search:
- *       Can optionally define the following information to search 
- *       for matching books:
- *            - "Title" (will do wild card matching)
- *            - "ISBN" (will do wild card matching)
- *            - "Publish Date" (Must be an exact match if specified)
- *            - "Cover type" (Must be an exact match if specified)
- *  2. Author Information Search:
- *       Can optionally define the following information to search
- *       for matching books:
- *            - "First Name" (will do wild card matching)
- *            - "Last Name" (will do wild card matching)
- *  3. Book Series Search:
- *       Can only define the book series to search for matching books
- *       but you can do wild card matching
- * 
- * Wildcard matching will only be done if the correct wildcard is found
- * in the string, <code>BookSearchObject.WILDCARD</code>. There is no
- * way to override the definition of the wildcard character if it is
- * found in the search string (ie. it cannot be "escaped")
- *
- */
-class BookSearchObject {
-
-	// An unknown search
-	static final int BADSEARCH = -1;
-
-	// Search based on series information
-	static final int SERIESSEARCH = 1;
-
-	// Search based on book information
-	static final int BOOKSEARCH = 2;
-
-	// Search based on author information
-	static final int AUTHORSEARCH = 3;
-
-	// Wildcard character in search string
-	static final char WILDCARD = '*';
-
-	private int searchtype;
-	private String series;
-	private String title;
-	private String isbn;
-	private int date;
-	private int bookcover;
-	private String lastname;
-	private String firstname;
 
 	/**
-	 * The wildcard match method. It takes the search string and looks for
-	 * positive match in the passed string. It uses the java regular expression
-	 * parser. The wildcard character, if found in the search string, is converted
-	 * to a mactch 0 or more characters before being passed to the the regular
-	 * expression parser.
-	 * 
-	 * @param searchStr Search string
-	 * @param Str String to look in for a match of the search string
-	 * @param caseInsensitive If we should use a case insensitive search
-	 * @return True if a match is found. False otherwise (ie. no match)
+	 * The book list as handed out by <code>getBookList</code>. The books of a
+	 * lazily loaded library are created as they are read from the list. The
+	 * list can only be sorted, as books added, removed or set through it
+	 * would bypass the indexes, orders and listeners of the library, and
+	 * throws <code>UnsupportedOperationException</code> for any other change.
+	 * Sorting the list by title leaves a lazily loaded library as it is, as
+	 * its books are already in title order, but sorting it into another order
+	 * creates every book first and leaves the book list out of title order
+	 * until it is next sorted by title.
 	 */
-	static public boolean WildCardMatch(String searchStr, String Str, boolean caseInsensitive) {
-
-		if ((searchStr == null) || (Str == null))
-			return false;
-
-		// Convert the wildcard character to the excepted version
-		// for one or more character matches in regular expressions
-		int i, k;
-		char[] patStrArray = searchStr.trim().toCharArray();
-		StringBuffer patStr = new StringBuffer(patStrArray.length * 2);
-		for (i = 0, k = 0; i < patStrArray.length; i++, k++) {
-			if (patStrArray[i] == WILDCARD) {
-				patStr.insert(k, '.');
-				k++;
-				patStr.insert(k, WILDCARD);
-			} else
-				patStr.insert(k, patStrArray[i]);
-
-		};
+	private class BookListView extends AbstractList<Book> implements RandomAccess {
 
-		// Pad, if required, the regular expression to allow a match
-		// anywhere in the string
-		if (patStr.charAt(0) != '.')
-			patStr.insert(0, ".*");
-		if (patStr.charAt(i - 1) != WILDCARD)
-			patStr.append(".*");
+		public Book get(int i) {
+			return getBook(i);
+		}
 
-		// Make case insensitive if required
-		if (caseInsensitive)
-			patStr.insert(0, "(?i)");
+		public int size() {
+			return length();
+		}
 
-		boolean matched = Pattern.matches(patStr.toString(), Str);
-		return matched;
+		public void sort(Comparator<? super Book> c) {
+			boolean byTitle = (c instanceof BookListCompare) && !((BookListCompare) c).isCollated();
+			if ((lazyStore != null) && byTitle)
+				return;
+			loadAllBooks();
+			bookList.sort(c);
+			titleSorted = byTitle;
+			booksChanged(null);
+		}
 	}
+};
 
-	// Constructors
+/**
+ * An auxilliary class to find the book in a library which is equal to a
+ * passed book without walking the book list. Books are equal if their
+ * ISBNs are equal or, when either does not have an ISBN, their titles are
+ * the same (see <code>Book.equals</code>). Both comparisons ignore case so
+ * books are hashed on their lower case ISBN and title.
+ */
+class BookIdentityIndex {
 
-	/**
-	 * Create a blank search object which will later be filled
-	 * in with the information to use in the search.
-	 *
-	 */
-	public BookSearchObject() {
-		searchtype = BADSEARCH;
-		series = "";
-		title = isbn = "";
-		date = Book.BADDATE;
-		bookcover = Book.BADCOVER;
-		lastname = firstname = "";
-	}
+	// Books which have an ISBN keyed on that ISBN
+	private HashMap<String, Book> isbnMap = new HashMap<String, Book>();
 
-	// Setter methods
+	// All books keyed on their title. Several books with differing ISBNs
+	// may share a title.
+	private HashMap<String, LinkedList<Book>> titleMap =
+		new HashMap<String, LinkedList<Book>>();
 
-	/**
-	 * Set the type of search to be performed. It will be based on the
-	 * information populated in the search object.
-	 * 
-	 * @param SearchType Type of search information to use in the search.
-	 */
-	public void setSearchType(int SearchType) {
-		switch (SearchType) {
-			case SERIESSEARCH :
-				searchtype = SERIESSEARCH;
-				break;
-			case AUTHORSEARCH :
-				searchtype = AUTHORSEARCH;
-				break;
-			case BOOKSEARCH :
-				searchtype = BOOKSEARCH;
-				break;
-			default :
-				searchtype = BADSEARCH;
-		};
-	};
+	// Books known to be distinct which are still to be indexed. Null once
+	// they have been.
+	private List<Book> deferred = null;
 
 	/**
-	 * Set the information for searching based on the passed series 
-	 * search string
-	 * 
-	 * @param Series Book series search string.
+	 * Return the hash key for a title or ISBN.
 	 */
-	public void setSeries(String Series) {
-		if (Series == null)
-			series = "";
+	static String key(String s) {
+		if (s == null)
+			return "";
 		else
-			series = Series;
+			return s.toLowerCase(Locale.ROOT);
 	}
 
 	/**
-	 * Set the information for searching based on the passed title
-	 * search string.
+	 * Returns the indexed book equal to the passed book.
 	 * 
-	 * @param Title Book title search string.
+	 * @param book The book to find
+	 * @return The equal book in the index. Otherwise, null.
 	 */
-	public void setTitle(String Title) {
-		if (Title == null)
-			title = "";
-		else
-			title = Title;
+	public Book find(Book book) {
+		return find(book, null);
 	}
 
 	/**
-	 * Set the information for searching based on the passed ISBN
-	 * search string.
+	 * Returns the indexed book, other than the excluded book, which is
+	 * equal to the passed book.
 	 * 
-	 * @param ISBN Book ISBN search string.
+	 * @param book The book to find
+	 * @param exclude An indexed book to ignore when matching
+	 * @return The equal book in the index. Otherwise, null.
 	 */
-	public void setISBN(String ISBN) {
-		if (ISBN == null)
-			isbn = "";
-		else
-			isbn = ISBN;
+	public Book find(Book book, Book exclude) {
+		return find(book.getISBN(), book.getTitle(), exclude);
 	}
 
 	/**
-	 * Set publish date of the book to search on.
+	 * Returns the indexed book, other than the excluded book, which is
+	 * equal to a book with the passed ISBN and title.
 	 * 
-	 * @param Date Book publish date to search on.
+	 * @param isbn The ISBN of the book to find. May be null.
+	 * @param title The title of the book to find
+	 * @param exclude An indexed book to ignore when matching
+	 * @return The equal book in the index. Otherwise, null.
 	 */
-	public void setDate(int Date) {
-		date = Date;
+	public Book find(String isbn, String title, Book exclude) {
+		indexDeferred();
+		if (isbn != null) {
+			Book b = isbnMap.get(key(isbn));
+			if ((b != null) && (b != exclude))
+				return b;
+		}
+		LinkedList<Book> titled = titleMap.get(key(title));
+		if (titled != null)
+			for (Book b : titled)
+				if ((b != exclude) && ((isbn == null) || (b.getISBN() == null)))
+					return b;
+		return null;
 	}
 
 	/**
-	 * Set the cover type of the book to search on.
+	 * Add the passed book to the index.
 	 * 
-	 * @param BookType Cover type of the book to search on.
+	 * @param book The book to index
 	 */
-	public void setCoverType(int BookType) {
-		bookcover = BookType;
+	public void add(Book book) {
+		indexDeferred();
+		if (book.getISBN() != null)
+			isbnMap.put(key(book.getISBN()), book);
+		titleMap.computeIfAbsent(key(book.getTitle()), k -> new LinkedList<Book>()).add(book);
 	}
 
 	/**
-	 * Set information for searching based on the passed
-	 * author last name search string.
-	 * 
-	 * @param LastName Author last name search string.
-	 */
-	public void setLastName(String LastName) {
-		if (LastName == null)
-			lastname = "";
-		else
-			lastname = LastName;
-	}
-
-	/** 
-	 * Set information for searching based on the passed author
-	 * first name search string.
+	 * Remove the passed book from the index.
 	 * 
-	 * @param FirstName Author first name search string.
-	 */
-	public void setFirstName(String FirstName) {
-		if (FirstName == null)
-			firstname = "";
-		firstname = FirstName;
-	}
-
-	// Accessor Methods
-
-	/**
-	 * Get the type of search to perform.
-	 * @return Type of search to perform. 
-	 */
-	public int getSearchType() {
-		return searchtype;
-	}
-
-	/**
-	 * Get the series search string.
-	 * @return Series search string.
-	 */
-	public String getSeries() {
-		return series;
-	}
-
-	/**
-	 * Get the book title search string.
-	 * @return Book title search string.
-	 */
-	public String getTitle() {
-		return title;
-	}
-
-	/**
-	 * Get the book ISBN search string.
-	 * @return Book ISBN search string.
-	 */
-	public String getISBN() {
-		return isbn;
-	}
-
-	/**
-	 * Get the book publish date to search on.
-	 * @return The book publish date to search on.
-	 */
-	public int getDate() {
-		return date;
-	}
-
-	/**
-	 * Get the book cover type to search on.
-	 * @return The book cover type to search on.
-	 */
-	public int getCoverType() {
-		return bookcover;
-	}
-
-	/**
-	 * Get the author last name search string.
-	 * @return The author last name search string.
+	 * @param book The indexed book to remove
 	 */
-	public String getLastName() {
-		return lastname;
+	public void remove(Book book) {
+		indexDeferred();
+		if (book.getISBN() != null)
+			isbnMap.remove(key(book.getISBN()), book);
+		String titleKey = key(book.getTitle());
+		LinkedList<Book> titled = titleMap.get(titleKey);
+		if (titled != null) {
+			titled.removeIf(b -> b == book);
+			if (titled.isEmpty())
+				titleMap.remove(titleKey);
+		}
 	}
 
 	/**
-	 * Get the author first name search string.
-	 * @return The author first name search string.
+	 * Add the passed books, which are known to be distinct, to the index when
+	 * it is next used rather than now.
+	 * 
+	 * @param books The books to index
 	 */
-	public String getFirstName() {
-		return firstname;
+	public void addDeferred(List<Book> books) {
+		indexDeferred();
+		deferred = books;
 	}
 
-	// Output methods
-
 	/**
-	 * Dump search information to the console.
+	 * Add any deferred books to the index.
 	 */
-	public void consoleOutput() {
-		System.out.println("Search Type:" + searchtype);
-		System.out.println("Series:" + series);
-		System.out.println("Title:" + title);
-		System.out.println("ISBN:" + isbn);
-		System.out.println("Date:" + date);
-		System.out.println("Book Type:" + bookcover);
-		System.out.println("Last Name:" + lastname);
-		System.out.println("First Name:" + firstname);
-
+	private void indexDeferred() {
+		if (deferred == null)
+			return;
+		List<Book> books = deferred;
+		deferred = null;
+		for (Book b : books)
+			add(b);
 	}
 }
 
@@ -851,92 +1866,115 @@ class BookSearchObject {
  * with the fewest authors is considered "less" (-1 in Comparator terms). 
  * The authors are compared first by last names. If they are equal, then
  * they are compared by first names with no first name being "less".
+ * A book with no authors is less than any book with authors.
+ * 
+ * The last names are first compared by the sort keys the books keep of
+ * them, so most comparisons compare numbers. If created with a collator,
+ * the names are instead compared by the collation keys the books keep of
+ * them.
  * 
  * The primary purpose of this class is to allow the sorting of a list
  * of books by author.
  */
 class AuthorListCompare implements Comparator<Book> {
+	private final Collator collator;
+
+	AuthorListCompare() {
+		this(null);
+	}
+
+	AuthorListCompare(Collator collator) {
+		this.collator = collator;
+	}
+
 	@Override
 	public int compare(Book a, Book b) {
-		int less = -1;
-		int equal = 0;
-		int greater = 1;
-
-		Book book_a = a;
-		Book book_b = b;
-		LinkedList<Author> auths_a = book_a.getAuthors();
-		LinkedList<Author> auths_b = book_b.getAuthors();
+		if (collator != null)
+			return compareCollated(a, b);
+		int c = Long.compareUnsigned(a.authorKey(), b.authorKey());
+		if (c != 0)
+			return c;
 
 		// Only check the first author in the list even if the book
 		// has multiple authors. But the book with the least authors
 		// has precedence when the first author matches.
-		Author auth_a = auths_a.get(0);
-		Author auth_b = auths_b.get(0);
-		String lastname_a = auth_a.getLastName();
-		String lastname_b = auth_b.getLastName();
-		if (lastname_a.equals(lastname_b)) {
-			String firstname_a = auth_a.getFirstName();
-			String firstname_b = auth_b.getFirstName();
-			if (firstname_a.equals(firstname_b)) {
-				if (auths_a.size() < auths_b.size())
-					return less;
-				if (auths_a.size() == auths_b.size())
-					return equal;
-				if (auths_a.size() > auths_b.size())
-					return greater;
-				return less;
-			} else
-				return firstname_a.compareTo(firstname_b);
-		} else
-			return lastname_a.compareTo(lastname_b);
+		LinkedList<Author> auths_a = a.getAuthors();
+		LinkedList<Author> auths_b = b.getAuthors();
+		if (auths_a.isEmpty() || auths_b.isEmpty())
+			return Integer.compare(auths_a.size(), auths_b.size());
+		Author auth_a = auths_a.getFirst();
+		Author auth_b = auths_b.getFirst();
+		c = compareNames(auth_a.getLastName(), auth_b.getLastName());
+		if (c != 0)
+			return c;
+		c = compareNames(auth_a.getFirstName(), auth_b.getFirstName());
+		if (c != 0)
+			return c;
+		return Integer.compare(auths_a.size(), auths_b.size());
+	}
+
+	/**
+	 * Compares the books by the collation keys of the names of their first
+	 * authors.
+	 */
+	private int compareCollated(Book a, Book b) {
+		CollationKey[] keys_a = a.authorCollationKeys(collator);
+		CollationKey[] keys_b = b.authorCollationKeys(collator);
+		if ((keys_a == null) || (keys_b == null))
+			return Boolean.compare(keys_a != null, keys_b != null);
+		int c = compareNames(keys_a[0], keys_b[0]);
+		if (c != 0)
+			return c;
+		c = compareNames(keys_a[1], keys_b[1]);
+		if (c != 0)
+			return c;
+		return Integer.compare(a.getAuthors().size(), b.getAuthors().size());
+	}
+
+	/**
+	 * Compares two names with no name being less than any name.
+	 */
+	private static <T extends Comparable<T>> int compareNames(T a, T b) {
+		if (a == null)
+			return (b == null) ? 0 : -1;
+		if (b == null)
+			return 1;
+		return a.compareTo(b);
 	}
 }
 
 /**
  * An auxilliary class to implement the comparison sorting of books
  * based on their publish date. If the publish date of each book is equal
- * the secondary sort is based on book title.
+ * the secondary sort is based on book title, collated if created with a
+ * collator.
  * 
  * The primary purpose of this class is to allow the sorting of a list
  * of books by publish date.
  */
 class PublishDateListCompare implements Comparator<Book> {
+	private final BookListCompare titles;
+
+	PublishDateListCompare() {
+		this(null);
+	}
+
+	PublishDateListCompare(Collator collator) {
+		titles = new BookListCompare(collator);
+	}
+
 	@Override
 	public int compare(Book a, Book b) {
-		int less = -1;
-		int greater = 1;
-
-		Book book_a = a;
-		Book book_b = b;
-		int publishDate_a = book_a.getPublishYear();
-		int publishDate_b = book_b.getPublishYear();
-
-		if (publishDate_a == publishDate_b) {
-			// Handle same publish date scenario
-			String title_a = book_a.getTitle();
-			String title_b = book_b.getTitle();
-			return title_a.compareTo(title_b);
-		} else {
-			 return publishDate_a < publishDate_b ? less : greater;
-		}
-
+		int c = Integer.compare(a.getPublishYear(), b.getPublishYear());
+		if (c != 0)
+			return c;
+		return titles.compare(a, b);
 	}
 }
 
 /**
-* Compares the two passed book objects. Calls the equals method for equality. 
-* Otherwise, the title strings are compared and result returned.
-* 
-* @param obj The two book objects to compare
-* @return 0 if equal. -1 if first book is less than second book. 1 if first
-*           book is greater than the second book.
-*/
-class BookListCompare implements Comparator<Book> {
-	@Override
-	public int compare(Book A, Book B) {
-		if (A.equals(B))
-			return 0;
-		else
-			return A.getTitle().compareTo(B.getTitle());
-	}
+ * Writes the contents of a file being saved.
+ */
+interface FileContentsWriter {
+	void write(OutputStream out) throws IOException;
 }
\ No newline at end of file
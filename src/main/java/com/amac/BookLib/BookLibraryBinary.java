@@ -0,0 +1,479 @@
+package com.amac.BookLib;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A <code>BookLibraryBinary</code> reads and writes a book library in the
+ * compact binary <code>.bdbx</code> format, which loads far faster than
+ * parsing the XML <code>.bdb</code> format. The file holds, in order:
+ *
+ *   1. a fixed size header with the counts of each table
+ *   2. the string table: the offset of each distinct string followed by
+ *      the UTF-8 bytes of all the strings. Every title, series, ISBN and
+ *      author name part is stored once however often it is used.
+ *   3. the author table: five string references for each distinct author
+ *      name (title, first, middle, last and sur-title)
+ *   4. the book table: a fixed width record for each book holding string
+ *      references for the title, series and ISBN, the publish year and
+ *      cover type, and the run of the book's authors in the author list
+ *   5. the author list: the author table reference of each book author
+ *   6. a CRC32 checksum of everything before it
+ *
+ * All numbers are big-endian ints and every table starts on a four byte
+ * boundary so the tables can be read in place from a mapped file. A
+ * missing string is stored as the reference -1.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+public class BookLibraryBinary {
+
+	// Binary format constants
+	static final int MAGIC = 0x42444258; // "BDBX"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 32;
+	static final int NO_STRING = -1;
+
+	/*
+	 * Fields of an author table record
+	 */
+	static final int AUTHOR_TITLE = 0;
+	static final int AUTHOR_FIRSTNAME = 1;
+	static final int AUTHOR_MIDDLENAME = 2;
+	static final int AUTHOR_LASTNAME = 3;
+	static final int AUTHOR_SURTITLE = 4;
+	static final int AUTHOR_INTS = 5;
+
+	/*
+	 * Fields of a book table record
+	 */
+	static final int BOOK_TITLE = 0;
+	static final int BOOK_SERIES = 1;
+	static final int BOOK_ISBN = 2;
+	static final int BOOK_YEAR = 3;
+	static final int BOOK_COVER = 4;
+	static final int BOOK_FIRSTAUTHOR = 5;
+	static final int BOOK_AUTHORCOUNT = 6;
+	static final int BOOK_INTS = 7;
+
+	// Binary file members
+	private final int stringCount;
+	private final int authorCount;
+	private final int bookCount;
+	private final IntBuffer stringOffsets;
+	private final ByteBuffer stringData;
+	private final IntBuffer authorTable;
+	private final IntBuffer bookTable;
+	private final IntBuffer authorList;
+
+	// Strings already decoded, by reference. Null until decodeStrings.
+	private String[] strings = null;
+
+	// Constructors
+
+	/**
+	 * Open the binary library held in the passed buffer, checking the header,
+	 * table sizes and checksum.
+	 *
+	 * @param buf The buffer holding the whole binary library file
+	 * @throws IOException If the buffer does not hold a valid binary library
+	 */
+	BookLibraryBinary(ByteBuffer buf) throws IOException {
+		if ((buf.limit() < HEADER_BYTES + 8) || (buf.getInt(0) != MAGIC))
+			throw new IOException("Not a binary book library file");
+		if (buf.getInt(4) != VERSION)
+			throw new IOException("Unsupported binary book library version " + buf.getInt(4));
+		stringCount = buf.getInt(8);
+		int stringBytes = buf.getInt(12);
+		authorCount = buf.getInt(16);
+		bookCount = buf.getInt(20);
+		int authorListCount = buf.getInt(24);
+
+		long offsetsPos = HEADER_BYTES;
+		long dataPos = offsetsPos + 4L * (stringCount + 1);
+		long authorPos = dataPos + stringBytes;
+		long bookPos = authorPos + 4L * AUTHOR_INTS * authorCount;
+		long listPos = bookPos + 4L * BOOK_INTS * bookCount;
+		long crcPos = listPos + 4L * authorListCount;
+		if ((stringCount < 0) || (stringBytes < 0) || ((stringBytes & 3) != 0)
+			|| (authorCount < 0) || (bookCount < 0) || (authorListCount < 0)
+			|| (crcPos + 4 != buf.limit()))
+			throw new IOException("Binary book library file is truncated or corrupt");
+
+		CRC32 crc = new CRC32();
+		crc.update(section(buf, 0, crcPos));
+		if ((int) crc.getValue() != buf.getInt((int) crcPos))
+			throw new IOException("Binary book library file checksum does not match");
+
+		stringOffsets = section(buf, offsetsPos, dataPos).asIntBuffer();
+		stringData = section(buf, dataPos, authorPos);
+		authorTable = section(buf, authorPos, bookPos).asIntBuffer();
+		bookTable = section(buf, bookPos, listPos).asIntBuffer();
+		authorList = section(buf, listPos, crcPos).asIntBuffer();
+	}
+
+	/**
+	 * Open the passed binary library file by reading it into memory. Nothing
+	 * holds the file open once it has been read.
+	 *
+	 * @param f The binary library file
+	 * @return The opened binary library
+	 * @throws IOException If the file cannot be read or is not valid
+	 */
+	static BookLibraryBinary open(File f) throws IOException {
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			if (ch.size() > Integer.MAX_VALUE)
+				throw new IOException("Binary book library file is too large");
+			ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+			while (buf.hasRemaining())
+				if (ch.read(buf) < 0)
+					throw new IOException("Binary book library file is truncated or corrupt");
+			buf.flip();
+			return new BookLibraryBinary(buf);
+		}
+	}
+
+	/**
+	 * Open the passed binary library file by mapping it into memory, so its
+	 * strings can be read in place without being copied onto the heap. The
+	 * mapping lasts until the binary library is no longer used, and the file
+	 * cannot be replaced on some platforms until then.
+	 *
+	 * @param f The binary library file
+	 * @return The opened binary library
+	 * @throws IOException If the file cannot be read or is not valid
+	 */
+	static BookLibraryBinary map(File f) throws IOException {
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			if (ch.size() > Integer.MAX_VALUE)
+				throw new IOException("Binary book library file is too large");
+			return new BookLibraryBinary(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		}
+	}
+
+	/**
+	 * Returns the number of books the header of the passed binary library
+	 * file gives, without checking or reading the rest of the file. Returns 0
+	 * if the file has no binary library header.
+	 *
+	 * @param f The binary library file
+	 * @return The number of books in the file
+	 * @throws IOException If the file cannot be read
+	 */
+	static int readBookCount(File f) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+			if (in.readInt() != MAGIC)
+				return 0;
+			in.skipBytes(16);
+			return in.readInt();
+		} catch (EOFException e) {
+			return 0;
+		}
+	}
+
+	// Reading and writing libraries
+
+	/**
+	 * Create a book library from the passed binary library file. All the
+	 * books are created and then added to the library in one bulk pass.
+	 *
+	 * @param f The binary library file
+	 * @return The book library read from the file
+	 * @throws IOException If the file cannot be read or is not valid
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	public static BookLibrary read(File f) throws IOException, IllegalStateException {
+		return new BookLibrary(open(f).getBooks(), f);
+	}
+
+	/**
+	 * Write the passed book library to the passed stream in the binary
+	 * format. The books are written in library order.
+	 *
+	 * @param library The book library to write
+	 * @param os The stream to write to
+	 * @throws IOException If the stream cannot be written
+	 */
+	public static void write(BookLibrary library, OutputStream os) throws IOException {
+		HashMap<String, Integer> stringRefs = new HashMap<String, Integer>();
+		ArrayList<String> stringList = new ArrayList<String>();
+		HashMap<List<Integer>, Integer> authorRefs = new HashMap<List<Integer>, Integer>();
+		ArrayList<List<Integer>> authorRecords = new ArrayList<List<Integer>>();
+		List<Book> books = library.getBookList();
+		int[] bookRecords = new int[books.size() * BOOK_INTS];
+		int authorListCount = 0;
+
+		// Collect the distinct strings and author names of every book
+		ArrayList<Integer> authorRun = new ArrayList<Integer>();
+		for (int i = 0; i < books.size(); i++) {
+			Book b = books.get(i);
+			int r = i * BOOK_INTS;
+			bookRecords[r + BOOK_TITLE] = stringRef(b.getTitle(), stringRefs, stringList);
+			bookRecords[r + BOOK_SERIES] = stringRef(b.getSeries(), stringRefs, stringList);
+			bookRecords[r + BOOK_ISBN] = stringRef(b.getISBN(), stringRefs, stringList);
+			bookRecords[r + BOOK_YEAR] = b.getPublishYear();
+			bookRecords[r + BOOK_COVER] = b.getCoverType();
+			bookRecords[r + BOOK_FIRSTAUTHOR] = authorListCount;
+			bookRecords[r + BOOK_AUTHORCOUNT] = b.getAuthors().size();
+			for (Author a : b.getAuthors()) {
+				List<Integer> rec = Arrays.asList(
+					stringRef(a.getTitle(), stringRefs, stringList),
+					stringRef(a.getFirstName(), stringRefs, stringList),
+					stringRef(a.getMiddleName(), stringRefs, stringList),
+					stringRef(a.getLastName(), stringRefs, stringList),
+					stringRef(a.getSurTitle(), stringRefs, stringList));
+				Integer ref = authorRefs.get(rec);
+				if (ref == null) {
+					ref = authorRecords.size();
+					authorRefs.put(rec, ref);
+					authorRecords.add(rec);
+				}
+				authorRun.add(ref);
+			}
+			authorListCount += b.getAuthors().size();
+		}
+
+		// Encode the strings and find their offsets
+		int[] offsets = new int[stringList.size() + 1];
+		byte[][] encoded = new byte[stringList.size()][];
+		int stringBytes = 0;
+		for (int i = 0; i < stringList.size(); i++) {
+			offsets[i] = stringBytes;
+			encoded[i] = stringList.get(i).getBytes(StandardCharsets.UTF_8);
+			stringBytes += encoded[i].length;
+		}
+		offsets[stringList.size()] = stringBytes;
+		int padding = (4 - (stringBytes & 3)) & 3;
+
+		CheckedOutputStream cout = new CheckedOutputStream(os, new CRC32());
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(cout, 65536));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(stringList.size());
+		out.writeInt(stringBytes + padding);
+		out.writeInt(authorRecords.size());
+		out.writeInt(books.size());
+		out.writeInt(authorListCount);
+		out.writeInt(0);
+		for (int offset : offsets)
+			out.writeInt(offset);
+		for (byte[] s : encoded)
+			out.write(s);
+		for (int i = 0; i < padding; i++)
+			out.writeByte(0);
+		for (List<Integer> rec : authorRecords)
+			for (int ref : rec)
+				out.writeInt(ref);
+		for (int v : bookRecords)
+			out.writeInt(v);
+		for (int ref : authorRun)
+			out.writeInt(ref);
+		out.flush();
+		new DataOutputStream(os).writeInt((int) cout.getChecksum().getValue());
+		os.flush();
+	}
+
+	/**
+	 * Convert a library file between the XML and binary formats. The format
+	 * of each file is taken from its extension.
+	 *
+	 * @param from The library file to read
+	 * @param to The library file to write
+	 * @throws IOException If either file cannot be read or written
+	 */
+	public static void convert(File from, File to) throws IOException {
+		BookLibrary.load(from, null).write(to);
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Get the number of books in the file
+	 * @return The number of books
+	 */
+	int getBookCount() {
+		return bookCount;
+	}
+
+	/**
+	 * Get the number of strings in the string table
+	 * @return The number of strings
+	 */
+	int getStringCount() {
+		return stringCount;
+	}
+
+	/**
+	 * Get a field of the record of a book in the file
+	 * @param book The position of the book in the file
+	 * @param field The field of the book record
+	 * @return The value of the field
+	 */
+	int getBookField(int book, int field) {
+		return bookTable.get(book * BOOK_INTS + field);
+	}
+
+	/**
+	 * Get a string of the string table
+	 * @param ref The string reference
+	 * @return The string or null for no string
+	 */
+	String getString(int ref) {
+		if (ref == NO_STRING)
+			return null;
+		if (strings != null)
+			return strings[ref];
+		return decodeString(ref);
+	}
+
+	/**
+	 * Get a string of the string table as characters read in place from the
+	 * file, so the string is not copied onto the heap. Only a string of
+	 * ASCII characters can be read in place, using the passed view, and any
+	 * other string is decoded.
+	 * @param ref The string reference
+	 * @param view The view to read the string through
+	 * @return The characters of the string or null for no string
+	 */
+	CharSequence getText(int ref, StringView view) {
+		if (ref == NO_STRING)
+			return null;
+		if (strings != null)
+			return strings[ref];
+		if (view.set(stringData, stringOffsets.get(ref), stringOffsets.get(ref + 1)))
+			return view;
+		return decodeString(ref);
+	}
+
+	/**
+	 * Get the number of authors of a book in the file
+	 * @param book The position of the book in the file
+	 * @return The number of authors of the book
+	 */
+	int getAuthorCount(int book) {
+		return getBookField(book, BOOK_AUTHORCOUNT);
+	}
+
+	/**
+	 * Get part of the name of an author of a book in the file
+	 * @param book The position of the book in the file
+	 * @param author The position of the author in the authors of the book
+	 * @param part The field of the author record
+	 * @return The part of the name or null if the author has none
+	 */
+	String getAuthorPart(int book, int author, int part) {
+		return getString(getAuthorPartRef(book, author, part));
+	}
+
+	/**
+	 * Get the string reference of part of the name of an author of a book
+	 * in the file
+	 * @param book The position of the book in the file
+	 * @param author The position of the author in the authors of the book
+	 * @param part The field of the author record
+	 * @return The string reference of the part of the name
+	 */
+	int getAuthorPartRef(int book, int author, int part) {
+		int a = authorList.get(getBookField(book, BOOK_FIRSTAUTHOR) + author);
+		return authorTable.get(a * AUTHOR_INTS + part);
+	}
+
+	/**
+	 * Create the book at the passed position in the file, with its authors.
+	 * @param i The position of the book in the file
+	 * @return The new book
+	 */
+	Book getBook(int i) {
+		int count = getAuthorCount(i);
+		LinkedList<Author> auths = new LinkedList<Author>();
+		for (int k = 0; k < count; k++)
+			auths.add(new Author(
+				namePart(i, k, AUTHOR_TITLE),
+				namePart(i, k, AUTHOR_FIRSTNAME),
+				namePart(i, k, AUTHOR_MIDDLENAME),
+				namePart(i, k, AUTHOR_LASTNAME),
+				namePart(i, k, AUTHOR_SURTITLE)));
+		return new Book(
+			getString(getBookField(i, BOOK_TITLE)),
+			getString(getBookField(i, BOOK_SERIES)),
+			auths,
+			getString(getBookField(i, BOOK_ISBN)),
+			getBookField(i, BOOK_YEAR),
+			getBookField(i, BOOK_COVER));
+	}
+
+	/**
+	 * Create all the books in the file, in file order. Every string is
+	 * decoded once first so books sharing a string share the same object.
+	 * @return The books of the file
+	 */
+	ArrayList<Book> getBooks() {
+		decodeStrings();
+		ArrayList<Book> books = new ArrayList<Book>(bookCount);
+		for (int i = 0; i < bookCount; i++)
+			books.add(getBook(i));
+		return books;
+	}
+
+	// Private helper methods
+
+	/**
+	 * Decode every string of the string table, so later reads of strings
+	 * share the decoded string objects.
+	 */
+	void decodeStrings() {
+		if (strings != null)
+			return;
+		String[] decoded = new String[stringCount];
+		for (int i = 0; i < stringCount; i++)
+			decoded[i] = decodeString(i);
+		strings = decoded;
+	}
+
+	private String decodeString(int ref) {
+		int start = stringOffsets.get(ref);
+		int end = stringOffsets.get(ref + 1);
+		byte[] b = new byte[end - start];
+		stringData.get(start, b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Author name parts are passed to the <code>Author</code> constructor as
+	 * empty strings rather than null.
+	 */
+	private String namePart(int book, int author, int part) {
+		String s = getAuthorPart(book, author, part);
+		return (s == null) ? "" : s;
+	}
+
+	private static int stringRef(String s, HashMap<String, Integer> refs, ArrayList<String> list) {
+		if (s == null)
+			return NO_STRING;
+		Integer ref = refs.get(s);
+		if (ref == null) {
+			ref = list.size();
+			refs.put(s, ref);
+			list.add(s);
+		}
+		return ref;
+	}
+
+	/**
+	 * Returns the bytes of the passed buffer between two positions.
+	 */
+	private static ByteBuffer section(ByteBuffer buf, long from, long to) {
+		ByteBuffer b = buf.duplicate();
+		b.limit((int) to).position((int) from);
+		return b.slice();
+	}
+}
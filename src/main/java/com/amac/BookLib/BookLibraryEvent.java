@@ -0,0 +1,115 @@
+package com.amac.BookLib;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.Set;
+
+/**
+ * A <code>BookLibraryEvent</code> describes a single change to a
+ * <code>BookLibrary</code>: a book added, removed or modified, or an
+ * author added to or removed from the library author list. It is
+ * published to each <code>BookLibraryListener</code> registered with
+ * the library.
+ * 
+ * @author amac
+ * @version 1.0
+ *
+ */
+public class BookLibraryEvent extends EventObject {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The kind of change to the library
+	 */
+	public enum Type { BOOK_ADDED, BOOK_REMOVED, BOOK_MODIFIED, AUTHOR_ADDED, AUTHOR_REMOVED }
+
+	private final Type type;
+	private final Book book;
+	private final Author author;
+	private final BookDelta delta;
+
+	/**
+	 * Creates a new event for a change to a book.
+	 * 
+	 * @param library The library changed
+	 * @param type The kind of change
+	 * @param book The book added, removed or modified
+	 * @param delta The changes made to a modified book. Null unless the book was modified.
+	 */
+	public BookLibraryEvent(BookLibrary library, Type type, Book book, BookDelta delta) {
+		super(library);
+		this.type = type;
+		this.book = book;
+		this.author = null;
+		this.delta = delta;
+	}
+
+	/**
+	 * Creates a new event for a change to the library author list.
+	 * 
+	 * @param library The library changed
+	 * @param type The kind of change
+	 * @param author The author added or removed
+	 */
+	public BookLibraryEvent(BookLibrary library, Type type, Author author) {
+		super(library);
+		this.type = type;
+		this.book = null;
+		this.author = author;
+		this.delta = null;
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Get the library changed
+	 * @return The library changed
+	 */
+	public BookLibrary getLibrary() {
+		return (BookLibrary) getSource();
+	}
+
+	/**
+	 * Get the kind of change to the library
+	 * @return The kind of change
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Get the book added, removed or modified
+	 * @return The book changed or null for an author change
+	 */
+	public Book getBook() {
+		return book;
+	}
+
+	/**
+	 * Get the author added or removed
+	 * @return The author changed or null for a book change
+	 */
+	public Author getAuthor() {
+		return author;
+	}
+
+	/**
+	 * Get the changes made to a modified book
+	 * @return The changes made or null unless a book was modified
+	 */
+	public BookDelta getDelta() {
+		return delta;
+	}
+
+	/**
+	 * Get the fields of a modified book which were changed
+	 * @return The fields changed. Empty unless a book was modified.
+	 */
+	public Set<Book.Field> getChangedFields() {
+		if (delta == null)
+			return Collections.emptySet();
+		else
+			return delta.getChangedFields();
+	}
+}
@@ -0,0 +1,302 @@
+package com.amac.BookLib;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A <code>BookLibraryIndex</code> is the sidecar file kept next to a
+ * library file holding the indexes a <code>BookLibrary</code> otherwise
+ * builds from scratch each time the file is loaded. The file holds, in
+ * order:
+ *
+ *   1. a fixed size header with the version, the length and CRC32
+ *      checksum of the library file indexed, and the counts of each table
+ *   2. the title order: the position in the library file of each book, in
+ *      the title order of the book list
+ *   3. the author ids: for each author of each book, in title order, the
+ *      number of the distinct author it is. Authors are numbered in the
+ *      order they are first met.
+ *   4. a CRC32 checksum of everything before it
+ *
+ * The index is only used when the checksum of the library file matches
+ * the one recorded, so the library is exactly the one indexed. It is
+ * then known to hold no duplicate books, its books are placed in title
+ * order without sorting, and its authors are registered without looking
+ * each one up by name. Otherwise the library is built the usual way and
+ * the index written again.
+ *
+ * All numbers are big-endian. The index file is small and is read whole
+ * onto the heap rather than mapped, so it can always be replaced, and the
+ * checksum of the library file is passed in by the library, which works
+ * it out as it writes or first reads the file.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class BookLibraryIndex {
+
+	// Index format constants
+	static final int MAGIC = 0x42444249; // "BDBI"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 32;
+
+	// Index file members
+	private final int bookCount;
+	private final int authorCount;
+	private final IntBuffer order;
+	private final IntBuffer authorIds;
+
+	// Constructors
+
+	/**
+	 * Open the index held in the passed buffer, checking the header, table
+	 * sizes and checksum.
+	 *
+	 * @param buf The buffer holding the whole index file
+	 * @throws IOException If the buffer does not hold a valid index
+	 */
+	BookLibraryIndex(ByteBuffer buf) throws IOException {
+		if ((buf.limit() < HEADER_BYTES + 4) || (buf.getInt(0) != MAGIC))
+			throw new IOException("Not a book library index file");
+		if (buf.getInt(4) != VERSION)
+			throw new IOException("Unsupported book library index version " + buf.getInt(4));
+		bookCount = buf.getInt(20);
+		int authorIdCount = buf.getInt(24);
+		authorCount = buf.getInt(28);
+
+		long orderPos = HEADER_BYTES;
+		long idsPos = orderPos + 4L * bookCount;
+		long crcPos = idsPos + 4L * authorIdCount;
+		if ((bookCount < 0) || (authorIdCount < 0) || (authorCount < 0)
+			|| (crcPos + 4 != buf.limit()))
+			throw new IOException("Book library index file is truncated or corrupt");
+
+		CRC32 crc = new CRC32();
+		crc.update(section(buf, 0, crcPos));
+		if ((int) crc.getValue() != buf.getInt((int) crcPos))
+			throw new IOException("Book library index file checksum does not match");
+
+		order = section(buf, orderPos, idsPos).asIntBuffer();
+		authorIds = section(buf, idsPos, crcPos).asIntBuffer();
+	}
+
+	/**
+	 * Return the index file for the passed library file.
+	 *
+	 * @param f The library file
+	 * @return The index file next to the library file
+	 */
+	static File indexFile(File f) {
+		return new File(f.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_INDEX);
+	}
+
+	/**
+	 * Open the index of the passed library file by reading it into memory.
+	 * An index which is missing, cannot be read or was not written for the
+	 * current contents of the library file is ignored.
+	 *
+	 * @param f The library file
+	 * @param checksum The checksum of the library file as it is now
+	 * @return The index or null if there is no usable index
+	 */
+	static BookLibraryIndex open(File f, int checksum) {
+		File idx = indexFile(f);
+		if (!idx.isFile() || (idx.length() > Integer.MAX_VALUE))
+			return null;
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(idx.toPath()));
+			if ((buf.limit() < HEADER_BYTES)
+				|| (buf.getLong(8) != f.length())
+				|| (buf.getInt(16) != checksum))
+				return null;
+			return new BookLibraryIndex(buf);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	// Reading and writing indexes
+
+	/**
+	 * Write the index of the passed library file, whose books are the passed
+	 * books in file order. The index is written to a temporary file which is
+	 * then moved over the index file in one step, so a reader never sees a
+	 * partially written index. The index is only an aid to loading so any
+	 * failure to write it is ignored, leaving no index.
+	 *
+	 * @param f The library file
+	 * @param books The books of the library, in the order of the file
+	 * @param checksum The checksum of the library file as it is now
+	 */
+	static void update(File f, List<Book> books, int checksum) {
+		File idx = indexFile(f);
+		File dir = idx.getAbsoluteFile().getParentFile();
+		File idx_tmp = null;
+		try {
+			idx_tmp = BookLibrary.createTempFile(idx, dir);
+			try (FileOutputStream fout = new FileOutputStream(idx_tmp)) {
+				write(books, f.length(), checksum, fout);
+			}
+			try {
+				Files.move(idx_tmp.toPath(), idx.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(idx_tmp.toPath(), idx.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			idx.delete();
+		} finally {
+			if (idx_tmp != null)
+				idx_tmp.delete();
+		}
+	}
+
+	/**
+	 * Write the index of the passed books to the passed stream.
+	 *
+	 * @param books The books of the library, in the order of the file
+	 * @param length The length of the library file
+	 * @param checksum The checksum of the library file
+	 * @param os The stream to write to
+	 * @throws IOException If the stream cannot be written
+	 */
+	static void write(List<Book> books, long length, int checksum, OutputStream os)
+		throws IOException {
+		// Books with the same title keep their file order, as when the books
+		// are sorted into the book list
+		Integer[] sorted = new Integer[books.size()];
+		for (int i = 0; i < sorted.length; i++)
+			sorted[i] = i;
+		BookListCompare comparator = new BookListCompare();
+		Arrays.sort(sorted, (a, b) -> comparator.compare(books.get(a), books.get(b)));
+
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		int authorIdCount = 0;
+		for (Book b : books)
+			authorIdCount += b.getAuthors().size();
+		int[] authorRun = new int[authorIdCount];
+		int s = 0;
+		for (int i : sorted)
+			for (Author a : books.get(i).getAuthors())
+				authorRun[s++] = ids.computeIfAbsent(a.nameKey(), k -> ids.size());
+
+		CheckedOutputStream cout = new CheckedOutputStream(os, new CRC32());
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(cout, 65536));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(length);
+		out.writeInt(checksum);
+		out.writeInt(books.size());
+		out.writeInt(authorIdCount);
+		out.writeInt(ids.size());
+		for (int i : sorted)
+			out.writeInt(i);
+		for (int id : authorRun)
+			out.writeInt(id);
+		out.flush();
+		new DataOutputStream(os).writeInt((int) cout.getChecksum().getValue());
+		os.flush();
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Returns true if the index fits the passed books read from the library
+	 * file: there is a book for each position of the title order, each
+	 * position is used once, each book has as many authors as indexed and
+	 * authors are numbered in the order they are first met.
+	 *
+	 * @param books The books of the library, in the order of the file
+	 * @return True if the index can be used for the books
+	 */
+	boolean matches(List<Book> books) {
+		if (books.size() != bookCount)
+			return false;
+		boolean[] used = new boolean[bookCount];
+		int s = 0;
+		int next = 0;
+		for (int p = 0; p < bookCount; p++) {
+			int i = order.get(p);
+			if ((i < 0) || (i >= bookCount) || used[i])
+				return false;
+			used[i] = true;
+			int count = books.get(i).getAuthors().size();
+			if (s + count > authorIds.limit())
+				return false;
+			for (int k = 0; k < count; k++, s++) {
+				int id = authorIds.get(s);
+				if ((id < 0) || (id > next))
+					return false;
+				if (id == next)
+					next++;
+			}
+		}
+		return (s == authorIds.limit()) && (next == authorCount);
+	}
+
+	/**
+	 * Get the number of distinct authors indexed
+	 * @return The number of authors
+	 */
+	int getAuthorCount() {
+		return authorCount;
+	}
+
+	/**
+	 * Get the position in the library file of a book of the title order
+	 * @param p The position of the book in title order
+	 * @return The position of the book in the file
+	 */
+	int getBookPosition(int p) {
+		return order.get(p);
+	}
+
+	/**
+	 * Get the id of an author of the books, taken in title order
+	 * @param s The position of the author among the authors of every book
+	 * @return The number of the distinct author
+	 */
+	int getAuthorId(int s) {
+		return authorIds.get(s);
+	}
+
+	// Checksums
+
+	/**
+	 * Returns the CRC32 checksum of the contents of the passed file, read as
+	 * a stream.
+	 *
+	 * @param f The file
+	 * @return The checksum of the file
+	 * @throws IOException If the file cannot be read
+	 */
+	static int checksum(File f) throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream in = new FileInputStream(f)) {
+			byte[] buf = new byte[65536];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				crc.update(buf, 0, n);
+		}
+		return (int) crc.getValue();
+	}
+
+	// Private helper methods
+
+	/**
+	 * Returns the bytes of the passed buffer between two positions.
+	 */
+	private static ByteBuffer section(ByteBuffer buf, long from, long to) {
+		ByteBuffer b = buf.duplicate();
+		b.limit((int) to).position((int) from);
+		return b.slice();
+	}
+}
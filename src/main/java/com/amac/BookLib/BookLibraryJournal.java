@@ -0,0 +1,420 @@
+package com.amac.BookLib;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A <code>BookLibraryJournal</code> records the changes made to a
+ * <code>BookLibrary</code> as compact records appended to a side log
+ * next to the library file, rather than rewriting the whole library
+ * file each time it is saved. Each book added, removed or modified is
+ * held as a single line record until <code>commit</code> is called when
+ * all the records held are appended to the journal file as one group
+ * and forced to disk once. Records not committed can be thrown away
+ * with <code>discard</code>, so the journal keeps the usual "save or
+ * lose the changes" behaviour.
+ *
+ * The library file itself is only rewritten when the journal is
+ * compacted. The journal starts with a header identifying the library
+ * file it applies to so a journal left over from an interrupted
+ * compaction is removed rather than replayed twice, and the next commit
+ * starts a new journal.
+ *
+ * A library is brought up to date by loading the library file and then
+ * calling <code>replay</code> before a new journal is attached.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+public class BookLibraryJournal implements BookLibraryListener, Closeable {
+
+	// Journal constants
+	private static final String HEADER_TAG = "BDBJ";
+	private static final int VERSION = 1;
+	private static final char RECORD_ADD = 'A';
+	private static final char RECORD_REMOVE = 'R';
+	private static final char RECORD_MODIFY = 'M';
+	private static final char SEP = '\t';
+
+	/*
+	 * Compact once this many records have been committed
+	 */
+	static final int COMPACT_RECORDS = 1000;
+
+	// Journal members
+	private final BookLibrary library;
+	private final File libraryFile;
+	private final File journalFile;
+	private FileChannel channel;
+	private StringBuilder pending = new StringBuilder(1024);
+	private int pendingRecords = 0;
+	private int committedRecords = 0;
+
+	// Constructors
+
+	/**
+	 * Start journalling the changes made to the passed library which was
+	 * loaded from, or has just been written to, the passed library file. Any
+	 * existing journal for the library file is appended to, so it must already
+	 * have been replayed into the library, and its records count towards the
+	 * next compaction.
+	 *
+	 * @param library The library whose changes are recorded
+	 * @param f The library file the journal applies to
+	 * @throws IOException If an existing journal cannot be read
+	 */
+	public BookLibraryJournal(BookLibrary library, File f) throws IOException {
+		this.library = library;
+		this.libraryFile = f;
+		this.journalFile = journalFile(f);
+		this.committedRecords = countRecords(journalFile);
+		library.addBookLibraryListener(this);
+	}
+
+	/**
+	 * Return the journal file for the passed library file.
+	 *
+	 * @param f The library file
+	 * @return The journal file next to the library file
+	 */
+	public static File journalFile(File f) {
+		return new File(f.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_JOURNAL);
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Return the library file the journal applies to.
+	 *
+	 * @return The library file
+	 */
+	public File getLibraryFile() {
+		return libraryFile;
+	}
+
+	// Listener methods recording changes
+
+	public void bookAdded(BookLibraryEvent e) {
+		StringBuilder rec = startRecord(RECORD_ADD);
+		appendBook(rec, e.getBook());
+		endRecord(rec);
+	}
+
+	public void bookRemoved(BookLibraryEvent e) {
+		Book b = e.getBook();
+		StringBuilder rec = startRecord(RECORD_REMOVE);
+		appendField(rec, b.getISBN());
+		appendField(rec, b.getTitle());
+		endRecord(rec);
+	}
+
+	public void bookModified(BookLibraryEvent e) {
+		BookDelta delta = e.getDelta();
+		StringBuilder rec = startRecord(RECORD_MODIFY);
+		appendField(rec, delta.getOldISBN());
+		appendField(rec, delta.getOldTitle());
+		appendBook(rec, e.getBook());
+		endRecord(rec);
+	}
+
+	// Journal operations
+
+	/**
+	 * Returns true if enough records have been committed that the library
+	 * file should be rewritten and the journal emptied with <code>compact</code>.
+	 *
+	 * @return True if the journal should be compacted
+	 */
+	public boolean needsCompaction() {
+		return (committedRecords + pendingRecords) >= COMPACT_RECORDS;
+	}
+
+	/**
+	 * Append all the records held since the last commit to the journal file
+	 * and force them to disk.
+	 *
+	 * @throws IOException If the journal file cannot be written
+	 */
+	public void commit() throws IOException {
+		if (pendingRecords == 0)
+			return;
+		if (channel == null) {
+			channel = FileChannel.open(
+				journalFile.toPath(),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+			if (channel.size() == 0)
+				pending.insert(0, header(library, libraryFile));
+		}
+		ByteBuffer buf = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+		while (buf.hasRemaining())
+			channel.write(buf);
+		channel.force(false);
+		committedRecords += pendingRecords;
+		discard();
+	}
+
+	/**
+	 * Throw away the records held since the last commit.
+	 */
+	public void discard() {
+		pending.setLength(0);
+		pendingRecords = 0;
+	}
+
+	/**
+	 * Rewrite the library file from the library and empty the journal. Any
+	 * records held are no longer needed and are thrown away.
+	 *
+	 * @throws IOException If the library or journal file cannot be written
+	 */
+	public void compact() throws IOException {
+		library.write(libraryFile);
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+		journalFile.delete();
+		committedRecords = 0;
+		discard();
+	}
+
+	/**
+	 * Stop journalling the library. Records not committed are thrown away.
+	 */
+	public void close() throws IOException {
+		library.removeBookLibraryListener(this);
+		discard();
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Apply the records of the journal for the passed library file to the
+	 * passed library loaded from that file. A journal whose header does not
+	 * match the library file, left by an interrupted compaction, is deleted
+	 * without being applied. A final record only partially written is ignored
+	 * and cut from the journal so later records are appended after the last
+	 * whole record.
+	 *
+	 * @param library The library loaded from the library file
+	 * @param f The library file
+	 * @return The number of records applied
+	 * @throws IOException If the journal cannot be read or a record does not
+	 *                     apply to the library
+	 */
+	public static int replay(BookLibrary library, File f) throws IOException {
+		File jf = journalFile(f);
+		if (!jf.exists())
+			return 0;
+
+		byte[] contents = java.nio.file.Files.readAllBytes(jf.toPath());
+		String text = new String(contents, StandardCharsets.UTF_8);
+		String header = header(library, f);
+		if (!text.startsWith(header)) {
+			if (!jf.delete())
+				throw new IOException("Unable to delete stale journal " + jf.getName());
+			return 0;
+		}
+
+		int applied = 0;
+		int start = header.length();
+		int lineno = 1;
+		int end;
+		while ((end = text.indexOf('\n', start)) >= 0) {
+			String[] fields = splitRecord(text.substring(start, end));
+			start = end + 1;
+			lineno++;
+			try {
+				applyRecord(library, fields);
+			} catch (RuntimeException e) {
+				throw new IOException(
+					"Unable to apply record " + lineno + " of " + jf.getName() + ": " + e.getMessage());
+			}
+			applied++;
+		}
+		int whole = wholeRecordsLength(contents);
+		if (whole < contents.length)
+			try (FileChannel ch = FileChannel.open(jf.toPath(), StandardOpenOption.WRITE)) {
+				ch.truncate(whole);
+			}
+		return applied;
+	}
+
+	// Private helper methods
+
+	/**
+	 * Returns the number of records in the passed journal file, not counting
+	 * its header or a final record only partially written. The journal is
+	 * read a block at a time rather than held in memory.
+	 */
+	private static int countRecords(File jf) throws IOException {
+		if (!jf.exists())
+			return 0;
+		int lines = 0;
+		try (InputStream in = new FileInputStream(jf)) {
+			byte[] buf = new byte[65536];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				for (int i = 0; i < n; i++)
+					if (buf[i] == '\n')
+						lines++;
+		}
+		return Math.max(0, lines - 1);
+	}
+
+	/**
+	 * Returns the length of the journal contents up to the end of its last
+	 * whole record.
+	 */
+	private static int wholeRecordsLength(byte[] contents) {
+		int n = contents.length;
+		while ((n > 0) && (contents[n - 1] != '\n'))
+			n--;
+		return n;
+	}
+
+	/**
+	 * Apply a single journal record to the library.
+	 */
+	private static void applyRecord(BookLibrary library, String[] fields) {
+		switch (fields[0].charAt(0)) {
+			case RECORD_ADD :
+				library.addBook(readBook(fields, 1));
+				break;
+			case RECORD_REMOVE :
+				library.removeBook(findBook(library, fields[1], fields[2]));
+				break;
+			case RECORD_MODIFY :
+				library.modifyBook(findBook(library, fields[1], fields[2]), readBook(fields, 3));
+				break;
+			default :
+				throw new IllegalStateException("Unknown record type " + fields[0]);
+		}
+	}
+
+	/**
+	 * Return the book in the library with the passed ISBN and title.
+	 */
+	private static Book findBook(BookLibrary library, String isbn, String title) {
+		Book b = library.findBook(isbn.equals("") ? null : isbn, title);
+		if (b == null)
+			throw new IllegalStateException("Book not found: " + title);
+		return b;
+	}
+
+	/**
+	 * Return the header line identifying the library file, by its length and
+	 * checksum, as it is now. The checksum is the one the library worked out
+	 * when it last read or wrote the file, unless the file has changed since.
+	 */
+	private static String header(BookLibrary library, File f) throws IOException {
+		int checksum = f.exists() ? library.fileChecksum(f) : 0;
+		return HEADER_TAG + SEP + VERSION + SEP + f.length() + SEP + Integer.toHexString(checksum) + "\n";
+	}
+
+	private StringBuilder startRecord(char type) {
+		StringBuilder rec = new StringBuilder(256);
+		rec.append(type);
+		return rec;
+	}
+
+	private void endRecord(StringBuilder rec) {
+		pending.append(rec).append('\n');
+		pendingRecords++;
+	}
+
+	/**
+	 * Append the fields of a book to a record.
+	 */
+	private static void appendBook(StringBuilder rec, Book b) {
+		appendField(rec, b.getTitle());
+		appendField(rec, b.getSeries());
+		appendField(rec, b.getISBN());
+		appendField(rec, Integer.toString(b.getPublishYear()));
+		appendField(rec, Integer.toString(b.getCoverType()));
+		LinkedList<Author> auths = b.getAuthors();
+		appendField(rec, Integer.toString(auths.size()));
+		for (Author a : auths) {
+			appendField(rec, a.getTitle());
+			appendField(rec, a.getFirstName());
+			appendField(rec, a.getMiddleName());
+			appendField(rec, a.getLastName());
+			appendField(rec, a.getSurTitle());
+		}
+	}
+
+	/**
+	 * Create a book from the fields of a record starting at the passed field.
+	 */
+	private static Book readBook(String[] fields, int i) {
+		String title = fields[i++];
+		String series = fields[i++];
+		String isbn = fields[i++];
+		int year = Integer.parseInt(fields[i++]);
+		int cover = Integer.parseInt(fields[i++]);
+		int nauthors = Integer.parseInt(fields[i++]);
+		LinkedList<Author> auths = new LinkedList<Author>();
+		for (int k = 0; k < nauthors; k++, i += 5)
+			auths.add(new Author(fields[i], fields[i + 1], fields[i + 2], fields[i + 3], fields[i + 4]));
+		return new Book(title, series, auths, isbn, year, cover);
+	}
+
+	/**
+	 * Append a field to a record escaping the separator and line ends. A null
+	 * field is written as an empty field.
+	 */
+	private static void appendField(StringBuilder rec, String s) {
+		rec.append(SEP);
+		if (s == null)
+			return;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '\\' :
+					rec.append("\\\\");
+					break;
+				case '\t' :
+					rec.append("\\t");
+					break;
+				case '\n' :
+					rec.append("\\n");
+					break;
+				case '\r' :
+					rec.append("\\r");
+					break;
+				default :
+					rec.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Split a record line into its unescaped fields.
+	 */
+	private static String[] splitRecord(String line) {
+		ArrayList<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder(line.length());
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == SEP) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if ((c == '\\') && (i + 1 < line.length())) {
+				char e = line.charAt(++i);
+				field.append((e == 't') ? '\t' : (e == 'n') ? '\n' : (e == 'r') ? '\r' : e);
+			} else
+				field.append(c);
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+}
@@ -0,0 +1,77 @@
+package com.amac.BookLib;
+
+import java.util.EventListener;
+
+/**
+ * A <code>BookLibraryListener</code> is notified of each change made to
+ * a <code>BookLibrary</code> it is registered with. Each book added,
+ * removed or modified and each author added to or removed from the
+ * library author list is published as a <code>BookLibraryEvent</code> so
+ * listeners can keep their own state up to date with just the change
+ * rather than re-reading the whole library.
+ * 
+ * All the methods do nothing but pass the event on to
+ * <code>libraryChanged</code> so a listener need only implement the
+ * methods of interest, or just <code>libraryChanged</code> to be told of
+ * any change.
+ * 
+ * @author amac
+ * @version 1.0
+ *
+ */
+public interface BookLibraryListener extends EventListener {
+
+	/**
+	 * Invoked after a book is added to the library.
+	 * 
+	 * @param e The event holding the added book
+	 */
+	default void bookAdded(BookLibraryEvent e) {
+		libraryChanged(e);
+	}
+
+	/**
+	 * Invoked after a book is removed from the library.
+	 * 
+	 * @param e The event holding the removed book
+	 */
+	default void bookRemoved(BookLibraryEvent e) {
+		libraryChanged(e);
+	}
+
+	/**
+	 * Invoked after a book in the library is modified.
+	 * 
+	 * @param e The event holding the modified book and the fields changed
+	 */
+	default void bookModified(BookLibraryEvent e) {
+		libraryChanged(e);
+	}
+
+	/**
+	 * Invoked after an author is added to the library author list.
+	 * 
+	 * @param e The event holding the added author
+	 */
+	default void authorAdded(BookLibraryEvent e) {
+		libraryChanged(e);
+	}
+
+	/**
+	 * Invoked after an author is removed from the library author list.
+	 * 
+	 * @param e The event holding the removed author
+	 */
+	default void authorRemoved(BookLibraryEvent e) {
+		libraryChanged(e);
+	}
+
+	/**
+	 * Invoked for any change to the library which is not handled by
+	 * one of the more specific methods.
+	 * 
+	 * @param e The event describing the change
+	 */
+	default void libraryChanged(BookLibraryEvent e) {
+	}
+}
@@ -0,0 +1,40 @@
+package com.amac.BookLib;
+
+/**
+ * A <code>BookLibraryLoadProgress</code> is told how far the loading of
+ * a <code>BookLibrary</code> from a file has got, so a caller can show
+ * progress while a large library file is read. It is called after each
+ * book is read from the file.
+ *
+ * A listener may stop the load, such as when the user cancels it, by
+ * throwing a <code>CancellationException</code>. The load then ends at
+ * once and throws the exception on to its caller.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+public interface BookLibraryLoadProgress {
+
+	/**
+	 * Invoked after each book is read from the library file.
+	 *
+	 * @param books The number of books read so far
+	 * @param bytesRead The number of bytes of the file read so far
+	 * @param totalBytes The length of the file in bytes
+	 */
+	void loadProgress(int books, long bytesRead, long totalBytes);
+
+	/**
+	 * Invoked once the books have been read from an XML library file, with
+	 * the heap taken by the series and author name strings read. Strings
+	 * repeated across books are shared, so the heap taken is less than the
+	 * strings would have taken read one by one. Does nothing by default.
+	 *
+	 * @param strings The number of strings read
+	 * @param heapBefore The bytes the strings would take without sharing
+	 * @param heapAfter The bytes the shared strings take
+	 */
+	default void stringsPooled(long strings, long heapBefore, long heapAfter) {
+	}
+}
@@ -0,0 +1,58 @@
+package com.amac.BookLib;
+
+import java.text.Collator;
+import java.util.Comparator;
+
+/**
+* Compares the two passed book objects by their titles. The titles are
+* first compared by the sort keys the books keep of them, so most
+* comparisons compare numbers. A library never holds two equal books, so
+* the books of the library are ordered by title alone. If created with a
+* collator, the titles are instead compared by the collation keys the books
+* keep of them, ordering them for the language of the collator. The book
+* list of a library is always in the order of a comparison without one.
+* 
+* @param obj The two book objects to compare
+* @return 0 if the titles are equal. Less than 0 if the first title is less
+*           than the second title. Greater than 0 otherwise.
+*
+* @author amac
+* @version 1.0
+*
+*/
+class BookListCompare implements Comparator<Book> {
+	private final Collator collator;
+
+	BookListCompare() {
+		this(null);
+	}
+
+	BookListCompare(Collator collator) {
+		this.collator = collator;
+	}
+
+	/**
+	 * Returns true if titles are collated for a language rather than compared
+	 * by character code, the order of the book list.
+	 */
+	boolean isCollated() {
+		return collator != null;
+	}
+
+	@Override
+	public int compare(Book A, Book B) {
+		if (collator != null)
+			return A.titleCollationKey(collator).compareTo(B.titleCollationKey(collator));
+		return compareTitles(A, B);
+	}
+
+	/**
+	 * Compares the titles of the two passed books.
+	 */
+	static int compareTitles(Book a, Book b) {
+		int c = Long.compareUnsigned(a.titleKey(), b.titleKey());
+		if (c != 0)
+			return c;
+		return a.getTitle().compareTo(b.getTitle());
+	}
+}
@@ -0,0 +1,222 @@
+package com.amac.BookLib;
+
+import java.text.Collator;
+import java.util.*;
+
+/**
+ * A <code>BookOrder</code> keeps the books of a library sorted in an order
+ * other than the title order of the book list, such as by author or by
+ * publish date. The order is held as its own list of the library's book
+ * objects, in a <code>BookTreeList</code>. It is sorted once when first
+ * built and from then on kept in order as books are added, removed and
+ * modified, each book being placed by a search down the tree in O(log n),
+ * so moving between orders never sorts the library again.
+ *
+ * Books which compare as equal in the order are kept in title order.
+ * An order may collate titles and names for a language, in which case the
+ * collator of the order is used to make the collation keys of the books
+ * before they are sorted in parallel.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class BookOrder {
+
+	/*
+	 * Lists of at least this many books are sorted in parallel
+	 */
+	static final int PARALLEL_SORT_BOOKS = 8192;
+
+	// Data Members
+	private final Comparator<Book> comparator;
+	private final EnumSet<Book.Field> sortFields;
+	private final Collator collator;
+	private final BookTreeList books;
+	private final List<Book> view;
+
+	// Constructors
+
+	/**
+	 * Sort the passed books into the order of the passed comparator.
+	 *
+	 * @param booklist The books to order
+	 * @param order The comparator of the order
+	 * @param sortFields The book fields compared by the order, including the
+	 *                   title used to order equal books
+	 * @param collator The collator used by the comparator. May be null.
+	 */
+	BookOrder(List<Book> booklist, Comparator<Book> order, EnumSet<Book.Field> sortFields,
+		Collator collator) {
+		this.comparator = order.thenComparing(new BookListCompare());
+		this.sortFields = sortFields;
+		this.collator = collator;
+		books = new BookTreeList(booklist);
+		sort(books, comparator, collator);
+		view = Collections.unmodifiableList(books);
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Returns the books in order. The list cannot be changed but follows
+	 * each change made to the order.
+	 *
+	 * @return The ordered list of books
+	 */
+	List<Book> getBooks() {
+		return view;
+	}
+
+	/**
+	 * Returns true if the passed change to a book may move the book in the
+	 * order.
+	 *
+	 * @param delta The change to a book
+	 * @return True if the change is to a field compared by the order
+	 */
+	boolean isMovedBy(BookDelta delta) {
+		for (Book.Field f : sortFields)
+			if (delta.isChanged(f))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the position of the passed book object in the order. The book
+	 * is found by a search down the tree, looking through the books comparing
+	 * as equal for the same object.
+	 *
+	 * @param book The book object to find
+	 * @return The position of the book or -1 if not in the order
+	 */
+	int indexOf(Book book) {
+		int last = books.upperBound(book, comparator);
+		for (int k = books.lowerBound(book, comparator); k < last; k++)
+			if (books.get(k) == book)
+				return k;
+		int k = 0;
+		for (Book b : books) {
+			if (b == book)
+				return k;
+			k++;
+		}
+		return -1;
+	}
+
+	// Modification Methods
+
+	/**
+	 * Add the passed book at its place in the order.
+	 *
+	 * @param book The book to add
+	 */
+	void add(Book book) {
+		books.add(insertionPoint(book), book);
+	}
+
+	/**
+	 * Add all the passed books to the order. The books are sorted once and
+	 * then merged into the order in a single walk of it.
+	 *
+	 * @param added The books to add
+	 */
+	void addAll(List<Book> added) {
+		ArrayList<Book> sorted = new ArrayList<Book>(added);
+		sort(sorted, comparator, collator);
+		ArrayList<Book> merged = new ArrayList<Book>(books.size() + sorted.size());
+		int i = 0;
+		for (Book b : sorted) {
+			while ((i < books.size()) && (comparator.compare(books.get(i), b) <= 0))
+				merged.add(books.get(i++));
+			merged.add(b);
+		}
+		merged.addAll(books.subList(i, books.size()));
+		books.clear();
+		books.addAll(merged);
+	}
+
+	/**
+	 * Remove the passed book object from the order.
+	 *
+	 * @param book The book to remove
+	 */
+	void remove(Book book) {
+		int i = indexOf(book);
+		if (i >= 0)
+			books.remove(i);
+	}
+
+	/**
+	 * Remove all the passed books from the order in a single pass.
+	 *
+	 * @param removed The book objects to remove
+	 */
+	void removeAll(Set<Book> removed) {
+		books.removeIf(removed::contains);
+	}
+
+	/**
+	 * Move the book at the passed position, whose compared fields have
+	 * changed, to its new place in the order.
+	 *
+	 * @param index The position of the book before it changed
+	 * @param book The changed book
+	 */
+	void move(int index, Book book) {
+		books.remove(index);
+		books.add(insertionPoint(book), book);
+	}
+
+	/**
+	 * Sort the passed list of books, keeping books which compare as equal in
+	 * their order in the list. The books compare by the sort keys they keep,
+	 * so large lists are sorted in parallel once the keys of every book are
+	 * up to date.
+	 *
+	 * @param books The books to sort
+	 * @param comparator The order to sort the books into
+	 */
+	static void sort(List<Book> books, Comparator<? super Book> comparator) {
+		sort(books, comparator, null);
+	}
+
+	/**
+	 * Sort the passed list of books with a comparator using the passed
+	 * collator. See <code>sort(List, Comparator)</code>. The collation keys
+	 * of every book are made before a parallel sort, as a collator cannot be
+	 * used by several threads.
+	 *
+	 * @param books The books to sort
+	 * @param comparator The order to sort the books into
+	 * @param collator The collator used by the comparator. May be null.
+	 */
+	static void sort(List<Book> books, Comparator<? super Book> comparator, Collator collator) {
+		if (books.size() < PARALLEL_SORT_BOOKS) {
+			books.sort(comparator);
+			return;
+		}
+		Book[] sorted = books.toArray(new Book[books.size()]);
+		for (Book b : sorted)
+			b.packSortKeys(collator);
+		Arrays.parallelSort(sorted, comparator);
+		ListIterator<Book> i = books.listIterator();
+		for (Book b : sorted) {
+			i.next();
+			i.set(b);
+		}
+	}
+
+	// Private helper methods
+
+	/**
+	 * Returns the position in the order at which the passed book should be
+	 * inserted, after any books comparing as equal.
+	 *
+	 * @param book The book to insert
+	 * @return The insertion position
+	 */
+	private int insertionPoint(Book book) {
+		return books.upperBound(book, comparator);
+	}
+}
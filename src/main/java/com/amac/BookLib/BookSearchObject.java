@@ -0,0 +1,369 @@
+package com.amac.BookLib;
+
+import java.util.regex.Pattern;
+
+/**
+ * An auxilliary class to allow the search of library book and
+ * author lists. There are three types of search criteria which
+ * can be used:
+ *  1. Book Information Search:
+ *       Can optionally define the following information to search 
+ *       for matching books:
+ *            - "Title" (will do wild card matching)
+ *            - "ISBN" (will do wild card matching)
+ *            - "Publish Date" (Must be an exact match if specified)
+ *            - "Cover type" (Must be an exact match if specified)
+ *  2. Author Information Search:
+ *       Can optionally define the following information to search
+ *       for matching books:
+ *            - "First Name" (will do wild card matching)
+ *            - "Last Name" (will do wild card matching)
+ *  3. Book Series Search:
+ *       Can only define the book series to search for matching books
+ *       but you can do wild card matching
+ * 
+ * Wildcard matching will only be done if the correct wildcard is found
+ * in the string, <code>BookSearchObject.WILDCARD</code>. There is no
+ * way to override the definition of the wildcard character if it is
+ * found in the search string (ie. it cannot be "escaped")
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class BookSearchObject {
+
+	// An unknown search
+	static final int BADSEARCH = -1;
+
+	// Search based on series information
+	static final int SERIESSEARCH = 1;
+
+	// Search based on book information
+	static final int BOOKSEARCH = 2;
+
+	// Search based on author information
+	static final int AUTHORSEARCH = 3;
+
+	// Wildcard character in search string
+	static final char WILDCARD = '*';
+
+	private int searchtype;
+	private String series;
+	private String title;
+	private String isbn;
+	private int date;
+	private int bookcover;
+	private String lastname;
+	private String firstname;
+
+	/**
+	 * The wildcard match method. It takes the search string and looks for
+	 * positive match in the passed string. It uses the java regular expression
+	 * parser. The wildcard character, if found in the search string, is converted
+	 * to a mactch 0 or more characters before being passed to the the regular
+	 * expression parser, and every other character is matched as it is. Both
+	 * strings are normalized by <code>BookTextAnalyzer</code> first, so Japanese
+	 * text matches however its kana and character widths were typed. To match
+	 * many strings, match their normalized text against the pattern of
+	 * <code>wildCardPattern</code> instead.
+	 * 
+	 * @param searchStr Search string
+	 * @param Str String to look in for a match of the search string
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @return True if a match is found. False otherwise (ie. no match)
+	 */
+	static public boolean WildCardMatch(String searchStr, String Str, boolean caseInsensitive) {
+
+		if ((searchStr == null) || (Str == null))
+			return false;
+
+		return wildCardPattern(searchStr, caseInsensitive).matcher(BookTextAnalyzer.normalize(Str)).matches();
+	}
+
+	/**
+	 * Returns the regular expression pattern used by <code>WildCardMatch</code>
+	 * for the passed search string, so it can be matched against many strings.
+	 * The search string is normalized by <code>BookTextAnalyzer</code>, so the
+	 * pattern is to be matched against normalized strings. Normalizing may
+	 * turn full-width punctuation into regular expression characters, so
+	 * the text between wildcards is quoted and matched as it is.
+	 * 
+	 * @param searchStr Search string
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @return The compiled pattern
+	 */
+	static Pattern wildCardPattern(String searchStr, boolean caseInsensitive) {
+
+		// Convert the wildcard character to the excepted version
+		// for one or more character matches in regular expressions,
+		// quoting the text between them
+		String search = BookTextAnalyzer.normalize(searchStr).trim();
+		StringBuilder patStr = new StringBuilder(search.length() + 16);
+		int start = 0;
+		int wild;
+		while ((wild = search.indexOf(WILDCARD, start)) >= 0) {
+			if (wild > start)
+				patStr.append(Pattern.quote(search.substring(start, wild)));
+			patStr.append(".*");
+			start = wild + 1;
+		}
+		if (start < search.length())
+			patStr.append(Pattern.quote(search.substring(start)));
+
+		// Pad, if required, the regular expression to allow a match
+		// anywhere in the string
+		if ((search.length() == 0) || (search.charAt(0) != WILDCARD))
+			patStr.insert(0, ".*");
+		if ((search.length() > 0) && (search.charAt(search.length() - 1) != WILDCARD))
+			patStr.append(".*");
+
+		// Make case insensitive if required
+		if (caseInsensitive)
+			patStr.insert(0, "(?i)");
+
+		return Pattern.compile(patStr.toString());
+	}
+
+	/**
+	 * Returns true if the passed text contains the passed search string,
+	 * ignoring case as <code>String.regionMatches</code> does. Unlike
+	 * <code>WildCardMatch</code> the search string is plain text, as typed
+	 * into a filter. Both are to have been normalized by
+	 * <code>BookTextAnalyzer</code> already, once for every search.
+	 * 
+	 * @param text The normalized text to look in. May be null.
+	 * @param searchStr Search string, already normalized
+	 * @return True if the text contains the search string
+	 */
+	static boolean containsIgnoreCase(CharSequence text, String searchStr) {
+		if (text == null)
+			return false;
+		int n = searchStr.length();
+		for (int start = 0, last = text.length() - n; start <= last; start++) {
+			int k = 0;
+			while ((k < n) && sameIgnoringCase(text.charAt(start + k), searchStr.charAt(k)))
+				k++;
+			if (k == n)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the two characters are the same, ignoring case.
+	 */
+	static boolean sameIgnoringCase(char a, char b) {
+		if (a == b)
+			return true;
+		char upperA = Character.toUpperCase(a);
+		char upperB = Character.toUpperCase(b);
+		return (upperA == upperB)
+			|| (Character.toLowerCase(upperA) == Character.toLowerCase(upperB));
+	}
+
+	// Constructors
+
+	/**
+	 * Create a blank search object which will later be filled
+	 * in with the information to use in the search.
+	 *
+	 */
+	public BookSearchObject() {
+		searchtype = BADSEARCH;
+		series = "";
+		title = isbn = "";
+		date = Book.BADDATE;
+		bookcover = Book.BADCOVER;
+		lastname = firstname = "";
+	}
+
+	// Setter methods
+
+	/**
+	 * Set the type of search to be performed. It will be based on the
+	 * information populated in the search object.
+	 * 
+	 * @param SearchType Type of search information to use in the search.
+	 */
+	public void setSearchType(int SearchType) {
+		switch (SearchType) {
+			case SERIESSEARCH :
+				searchtype = SERIESSEARCH;
+				break;
+			case AUTHORSEARCH :
+				searchtype = AUTHORSEARCH;
+				break;
+			case BOOKSEARCH :
+				searchtype = BOOKSEARCH;
+				break;
+			default :
+				searchtype = BADSEARCH;
+		};
+	};
+
+	/**
+	 * Set the information for searching based on the passed series 
+	 * search string
+	 * 
+	 * @param Series Book series search string.
+	 */
+	public void setSeries(String Series) {
+		if (Series == null)
+			series = "";
+		else
+			series = Series;
+	}
+
+	/**
+	 * Set the information for searching based on the passed title
+	 * search string.
+	 * 
+	 * @param Title Book title search string.
+	 */
+	public void setTitle(String Title) {
+		if (Title == null)
+			title = "";
+		else
+			title = Title;
+	}
+
+	/**
+	 * Set the information for searching based on the passed ISBN
+	 * search string.
+	 * 
+	 * @param ISBN Book ISBN search string.
+	 */
+	public void setISBN(String ISBN) {
+		if (ISBN == null)
+			isbn = "";
+		else
+			isbn = ISBN;
+	}
+
+	/**
+	 * Set publish date of the book to search on.
+	 * 
+	 * @param Date Book publish date to search on.
+	 */
+	public void setDate(int Date) {
+		date = Date;
+	}
+
+	/**
+	 * Set the cover type of the book to search on.
+	 * 
+	 * @param BookType Cover type of the book to search on.
+	 */
+	public void setCoverType(int BookType) {
+		bookcover = BookType;
+	}
+
+	/**
+	 * Set information for searching based on the passed
+	 * author last name search string.
+	 * 
+	 * @param LastName Author last name search string.
+	 */
+	public void setLastName(String LastName) {
+		if (LastName == null)
+			lastname = "";
+		else
+			lastname = LastName;
+	}
+
+	/** 
+	 * Set information for searching based on the passed author
+	 * first name search string.
+	 * 
+	 * @param FirstName Author first name search string.
+	 */
+	public void setFirstName(String FirstName) {
+		if (FirstName == null)
+			firstname = "";
+		firstname = FirstName;
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Get the type of search to perform.
+	 * @return Type of search to perform. 
+	 */
+	public int getSearchType() {
+		return searchtype;
+	}
+
+	/**
+	 * Get the series search string.
+	 * @return Series search string.
+	 */
+	public String getSeries() {
+		return series;
+	}
+
+	/**
+	 * Get the book title search string.
+	 * @return Book title search string.
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Get the book ISBN search string.
+	 * @return Book ISBN search string.
+	 */
+	public String getISBN() {
+		return isbn;
+	}
+
+	/**
+	 * Get the book publish date to search on.
+	 * @return The book publish date to search on.
+	 */
+	public int getDate() {
+		return date;
+	}
+
+	/**
+	 * Get the book cover type to search on.
+	 * @return The book cover type to search on.
+	 */
+	public int getCoverType() {
+		return bookcover;
+	}
+
+	/**
+	 * Get the author last name search string.
+	 * @return The author last name search string.
+	 */
+	public String getLastName() {
+		return lastname;
+	}
+
+	/**
+	 * Get the author first name search string.
+	 * @return The author first name search string.
+	 */
+	public String getFirstName() {
+		return firstname;
+	}
+
+	// Output methods
+
+	/**
+	 * Dump search information to the console.
+	 */
+	public void consoleOutput() {
+		System.out.println("Search Type:" + searchtype);
+		System.out.println("Series:" + series);
+		System.out.println("Title:" + title);
+		System.out.println("ISBN:" + isbn);
+		System.out.println("Date:" + date);
+		System.out.println("Book Type:" + bookcover);
+		System.out.println("Last Name:" + lastname);
+		System.out.println("First Name:" + firstname);
+
+	}
+}
@@ -0,0 +1,139 @@
+package com.amac.BookLib;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * A <code>BookTextAnalyzer</code> prepares the text of books and of
+ * searches so Japanese, and other CJK, text is matched as a reader would
+ * expect. Text is normalized to NFKC, which maps half-width katakana to
+ * full width and full-width letters and digits to their usual forms, and
+ * katakana is then folded to hiragana, so a title may be found whichever
+ * of these it was typed in. Text of only ASCII characters is left as it is.
+ *
+ * Runs of CJK characters are split into overlapping pairs of characters,
+ * the bigrams used by the search indexes. CJK text has no spaces between
+ * words, so any two characters of a search may be part of a word, and
+ * every bigram of a search must appear in the text it matches.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class BookTextAnalyzer {
+
+	// Katakana folded to hiragana, and the katakana iteration marks
+	private static final char KATAKANA_FIRST = '\u30a1';
+	private static final char KATAKANA_LAST = '\u30f6';
+	private static final char KATAKANA_ITERATION = '\u30fd';
+	private static final char KATAKANA_VOICED_ITERATION = '\u30fe';
+	private static final int KATAKANA_TO_HIRAGANA = 0x60;
+
+	// The katakana prolonged sound mark, common to hiragana and katakana
+	private static final char PROLONGED_SOUND = '\u30fc';
+
+	private BookTextAnalyzer() {
+	}
+
+	/**
+	 * Returns the passed text normalized to NFKC with katakana folded to
+	 * hiragana. Text of only ASCII characters is returned as it is.
+	 *
+	 * @param text The text to normalize. May be null.
+	 * @return The normalized text or null
+	 */
+	static String normalize(String text) {
+		if ((text == null) || isAscii(text))
+			return text;
+		return foldKana(Normalizer.normalize(text, Normalizer.Form.NFKC));
+	}
+
+	/**
+	 * Returns true if the passed character is written in a CJK script and
+	 * so is indexed in bigrams.
+	 *
+	 * @param c The character
+	 * @return True for a CJK character
+	 */
+	static boolean isCJK(char c) {
+		if (c < '\u1100')
+			return false;
+		if (c == PROLONGED_SOUND)
+			return true;
+		switch (Character.UnicodeScript.of(c)) {
+			case HAN:
+			case HIRAGANA:
+			case KATAKANA:
+			case HANGUL:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Returns the bigram of the two passed characters, as a key of the
+	 * search indexes.
+	 *
+	 * @param first The first character
+	 * @param second The character following it
+	 * @return The bigram
+	 */
+	static int bigram(char first, char second) {
+		return (first << 16) | second;
+	}
+
+	/**
+	 * Returns the distinct bigrams of the CJK runs of the passed normalized
+	 * text, which is plain text as typed into a filter or a wildcard search
+	 * string, as matched by <code>BookSearchObject.WildCardMatch</code>. A
+	 * run does not continue across a wildcard, which is not a CJK character.
+	 *
+	 * @param text The normalized text
+	 * @return The bigrams, which may be none
+	 */
+	static int[] textBigrams(String text) {
+		int[] bigrams = new int[Math.max(0, text.length() - 1)];
+		int count = 0;
+		for (int i = 1; i < text.length(); i++)
+			if (isCJK(text.charAt(i - 1)) && isCJK(text.charAt(i)))
+				bigrams[count++] = bigram(text.charAt(i - 1), text.charAt(i));
+		return distinct(bigrams, count);
+	}
+
+	// Private helper methods
+
+	private static boolean isAscii(CharSequence text) {
+		for (int i = 0; i < text.length(); i++)
+			if (text.charAt(i) >= '\u0080')
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the passed text with its katakana folded to hiragana.
+	 */
+	private static String foldKana(String text) {
+		char[] chars = null;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (((c >= KATAKANA_FIRST) && (c <= KATAKANA_LAST))
+				|| (c == KATAKANA_ITERATION) || (c == KATAKANA_VOICED_ITERATION)) {
+				if (chars == null)
+					chars = text.toCharArray();
+				chars[i] = (char) (c - KATAKANA_TO_HIRAGANA);
+			}
+		}
+		return (chars == null) ? text : new String(chars);
+	}
+
+	private static int[] distinct(int[] values, int count) {
+		int[] sorted = Arrays.copyOf(values, count);
+		Arrays.sort(sorted);
+		int kept = 0;
+		for (int i = 0; i < sorted.length; i++)
+			if ((i == 0) || (sorted[i] != sorted[i - 1]))
+				sorted[kept++] = sorted[i];
+		return Arrays.copyOf(sorted, kept);
+	}
+}
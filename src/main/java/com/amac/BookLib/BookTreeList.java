@@ -0,0 +1,329 @@
+package com.amac.BookLib;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A <code>BookTreeList</code> is a list of books held in a balanced binary
+ * tree in which each node records the number of books below it. A book is
+ * found, inserted or removed by its position in O(log n) time, rather than
+ * the O(n) of shifting the books of an array list, so a book can be moved
+ * to its new place in a sorted list in O(log n). A sorted list is searched
+ * by walking down the tree with <code>lowerBound</code> and
+ * <code>upperBound</code>.
+ *
+ * The tree is kept in balance by rebuilding any subtree in which one side
+ * has grown to more than three quarters of the books, which keeps the
+ * height of the tree within a small multiple of log n. Building the list
+ * from a collection, sorting it or removing books in bulk builds a fully
+ * balanced tree in O(n) once the books are in order.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class BookTreeList extends AbstractList<Book> implements RandomAccess {
+
+	// The root of the tree. Null for an empty list.
+	private Node root = null;
+
+	// Constructors
+
+	/**
+	 * Create an empty list of books.
+	 */
+	BookTreeList() {
+	}
+
+	/**
+	 * Create a list of the passed books, in the order of the collection.
+	 *
+	 * @param books The books of the list
+	 */
+	BookTreeList(Collection<? extends Book> books) {
+		addAll(books);
+	}
+
+	// Accessor Methods
+
+	public int size() {
+		return size(root);
+	}
+
+	public Book get(int index) {
+		return node(index).book;
+	}
+
+	public Iterator<Book> iterator() {
+		return new TreeIterator();
+	}
+
+	/**
+	 * Returns the position of the first book of the sorted list which does
+	 * not compare less than the passed book, or the size of the list if there
+	 * is none.
+	 *
+	 * @param book The book to look for
+	 * @param comparator The order the list is sorted in
+	 * @return The position of the first book not before the passed book
+	 */
+	int lowerBound(Book book, Comparator<? super Book> comparator) {
+		return bound(book, comparator, false);
+	}
+
+	/**
+	 * Returns the position of the first book of the sorted list which compares
+	 * greater than the passed book, or the size of the list if there is none.
+	 * A book inserted at this position follows any books comparing as equal.
+	 *
+	 * @param book The book to look for
+	 * @param comparator The order the list is sorted in
+	 * @return The position of the first book after the passed book
+	 */
+	int upperBound(Book book, Comparator<? super Book> comparator) {
+		return bound(book, comparator, true);
+	}
+
+	// Modification Methods
+
+	public Book set(int index, Book book) {
+		Node n = node(index);
+		Book old = n.book;
+		n.book = book;
+		return old;
+	}
+
+	public void add(int index, Book book) {
+		if ((index < 0) || (index > size()))
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+		root = insert(root, index, book);
+		modCount++;
+	}
+
+	public Book remove(int index) {
+		Book old = node(index).book;
+		root = delete(root, index);
+		modCount++;
+		return old;
+	}
+
+	public void clear() {
+		root = null;
+		modCount++;
+	}
+
+	/**
+	 * Add the passed books to the end of the list. The books of an empty list
+	 * are built into a balanced tree in one pass.
+	 */
+	public boolean addAll(Collection<? extends Book> books) {
+		if (root != null)
+			return super.addAll(books);
+		Book[] all = books.toArray(new Book[books.size()]);
+		root = build(all, 0, all.length);
+		modCount++;
+		return all.length > 0;
+	}
+
+	/**
+	 * Remove the books the passed filter accepts, building the tree of the
+	 * books kept in one pass.
+	 */
+	public boolean removeIf(Predicate<? super Book> filter) {
+		ArrayList<Book> kept = new ArrayList<Book>(size());
+		for (Book b : this)
+			if (!filter.test(b))
+				kept.add(b);
+		if (kept.size() == size())
+			return false;
+		root = build(kept.toArray(new Book[kept.size()]), 0, kept.size());
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Sort the list, keeping books which compare as equal in their order in
+	 * the list, and build the tree of the sorted books in one pass.
+	 */
+	public void sort(Comparator<? super Book> comparator) {
+		Book[] all = toArray(new Book[size()]);
+		Arrays.sort(all, comparator);
+		root = build(all, 0, all.length);
+		modCount++;
+	}
+
+	// Private helper methods
+
+	private static int size(Node n) {
+		return (n == null) ? 0 : n.size;
+	}
+
+	/**
+	 * Returns the node at the passed position.
+	 */
+	private Node node(int index) {
+		if ((index < 0) || (index >= size()))
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+		Node n = root;
+		while (true) {
+			int left = size(n.left);
+			if (index < left)
+				n = n.left;
+			else if (index > left) {
+				index -= left + 1;
+				n = n.right;
+			} else
+				return n;
+		}
+	}
+
+	/**
+	 * Returns the position of the first book comparing greater than, or not
+	 * less than, the passed book.
+	 */
+	private int bound(Book book, Comparator<? super Book> comparator, boolean after) {
+		int bound = size();
+		int skipped = 0;
+		Node n = root;
+		while (n != null) {
+			int c = comparator.compare(n.book, book);
+			if ((c < 0) || (after && (c == 0))) {
+				skipped += size(n.left) + 1;
+				n = n.right;
+			} else {
+				bound = skipped + size(n.left);
+				n = n.left;
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * Insert a book at the passed position of a subtree, returning the new
+	 * root of the subtree.
+	 */
+	private static Node insert(Node n, int index, Book book) {
+		if (n == null)
+			return new Node(book);
+		int left = size(n.left);
+		if (index <= left)
+			n.left = insert(n.left, index, book);
+		else
+			n.right = insert(n.right, index - left - 1, book);
+		n.size++;
+		return balance(n);
+	}
+
+	/**
+	 * Delete the book at the passed position of a subtree, returning the new
+	 * root of the subtree.
+	 */
+	private static Node delete(Node n, int index) {
+		int left = size(n.left);
+		if (index < left)
+			n.left = delete(n.left, index);
+		else if (index > left)
+			n.right = delete(n.right, index - left - 1);
+		else if (n.left == null)
+			return n.right;
+		else if (n.right == null)
+			return n.left;
+		else {
+			// Take the place of the first book of the right subtree
+			Node first = n.right;
+			while (first.left != null)
+				first = first.left;
+			n.book = first.book;
+			n.right = delete(n.right, 0);
+		}
+		n.size--;
+		return balance(n);
+	}
+
+	/**
+	 * Rebuild the passed subtree if one side holds more than three quarters
+	 * of its books, returning the root of the balanced subtree.
+	 */
+	private static Node balance(Node n) {
+		int heavier = Math.max(size(n.left), size(n.right));
+		if (4 * heavier <= 3 * n.size + 4)
+			return n;
+		Book[] books = new Book[n.size];
+		flatten(n, books, 0);
+		return build(books, 0, books.length);
+	}
+
+	/**
+	 * Copy the books of a subtree, in order, into the passed array from the
+	 * passed position. Returns the position after the last book copied.
+	 */
+	private static int flatten(Node n, Book[] books, int pos) {
+		while (n != null) {
+			pos = flatten(n.left, books, pos);
+			books[pos++] = n.book;
+			n = n.right;
+		}
+		return pos;
+	}
+
+	/**
+	 * Build a balanced tree of the books of the array between two positions.
+	 */
+	private static Node build(Book[] books, int from, int to) {
+		if (from >= to)
+			return null;
+		int mid = (from + to) >>> 1;
+		Node n = new Node(books[mid]);
+		n.left = build(books, from, mid);
+		n.right = build(books, mid + 1, to);
+		n.size = to - from;
+		return n;
+	}
+
+	/**
+	 * A node of the tree holding one book and the number of books of the
+	 * subtree it is the root of.
+	 */
+	private static final class Node {
+		Book book;
+		Node left;
+		Node right;
+		int size = 1;
+
+		Node(Book book) {
+			this.book = book;
+		}
+	}
+
+	/**
+	 * An iterator walking the tree in order, holding the nodes whose books
+	 * are still to be returned on the way down to the next book.
+	 */
+	private class TreeIterator implements Iterator<Book> {
+		private final ArrayDeque<Node> path = new ArrayDeque<Node>();
+		private final int expectedModCount = modCount;
+
+		TreeIterator() {
+			descend(root);
+		}
+
+		public boolean hasNext() {
+			return !path.isEmpty();
+		}
+
+		public Book next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (path.isEmpty())
+				throw new NoSuchElementException();
+			Node n = path.pop();
+			descend(n.right);
+			return n.book;
+		}
+
+		private void descend(Node n) {
+			for (; n != null; n = n.left)
+				path.push(n);
+		}
+	}
+}
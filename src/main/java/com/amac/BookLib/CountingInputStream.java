@@ -0,0 +1,48 @@
+package com.amac.BookLib;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream which counts the bytes read through it, used to report the
+ * progress of loading a library file.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class CountingInputStream extends FilterInputStream {
+	private long count = 0;
+
+	CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0)
+			count++;
+		return b;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0)
+			count += n;
+		return n;
+	}
+
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	/**
+	 * Returns the number of bytes read so far
+	 */
+	long getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,336 @@
+package com.amac.BookLib;
+
+import java.util.*;
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.regex.Matcher;
+
+/**
+ * A <code>LazyBookStore</code> holds the books of a library loaded lazily
+ * from a binary library file. Only the file, mapped into memory outside
+ * the Java heap, is held. The book records of the file act as the index
+ * from a book's position to its data, and searches read the strings of
+ * the file in place rather than copying them onto the heap. A
+ * <code>Book</code> is only created when it is asked for and is then kept
+ * in a cache of the most recently used books, so the heap taken does not
+ * grow with the size of the library.
+ *
+ * Searches match the strings of the file normalized by
+ * <code>BookTextAnalyzer</code>. Strings of only ASCII characters are left
+ * as they are and read in place. The other strings are normalized once,
+ * when the store is first searched, and kept as the search keys of the
+ * store, so only the strings which are not ASCII are held on the heap.
+ *
+ * A book evicted from the cache while still referenced elsewhere is
+ * handed out again rather than created afresh, so each position in the
+ * store is only ever represented by one <code>Book</code> object at a
+ * time. Books may be asked for on several threads at once, as when the
+ * store is filtered on a background thread while the table displaying
+ * it is drawn.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class LazyBookStore implements BookFilter {
+
+	/*
+	 * Number of most recently used books kept in the cache
+	 */
+	static final int CACHE_BOOKS = 10000;
+
+	// Number of books filtered between checks for the filter being cancelled
+	private static final int CANCEL_CHECK_BOOKS = 4096;
+
+	private final BookLibraryBinary bin;
+	private final File file;
+	private final int count;
+
+	// Most recently used books, by position
+	private final LinkedHashMap<Integer, Book> cache =
+		new LinkedHashMap<Integer, Book>(1024, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, Book> eldest) {
+				return size() > CACHE_BOOKS;
+			}
+		};
+
+	// Every book created which may still be referenced, by position
+	private final HashMap<Integer, BookReference> live = new HashMap<Integer, BookReference>();
+	private final ReferenceQueue<Book> released = new ReferenceQueue<Book>();
+
+	// The normalized text of each string of the file, by reference, or null
+	// for a string of only ASCII characters. Null until first searched.
+	private String[] searchKeys = null;
+
+	// Constructors
+
+	/**
+	 * Create the store of the books of the passed binary library file.
+	 *
+	 * @param bin The opened binary library file
+	 * @param f The binary library file mapped by <code>bin</code>
+	 */
+	LazyBookStore(BookLibraryBinary bin, File f) {
+		this.bin = bin;
+		this.file = f.getAbsoluteFile();
+		this.count = bin.getBookCount();
+	}
+
+	// Accessor Methods
+
+	/**
+	 * Returns the number of books in the store
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Returns true if the passed file is the binary library file the store
+	 * is mapped from.
+	 */
+	boolean isStoreOf(File f) {
+		return file.equals(f.getAbsoluteFile());
+	}
+
+	/**
+	 * Returns the title of the book at the passed position without creating
+	 * the book.
+	 */
+	String getTitle(int i) {
+		return bin.getString(bin.getBookField(i, BookLibraryBinary.BOOK_TITLE));
+	}
+
+	/**
+	 * Returns true if the books of the store are in ascending title order,
+	 * the order of the books of a library.
+	 */
+	boolean isTitleSorted() {
+		for (int i = 1; i < count; i++)
+			if (getTitle(i - 1).compareTo(getTitle(i)) > 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the book at the passed position, creating it if needed.
+	 *
+	 * @param i The position of the book
+	 * @return The book
+	 */
+	synchronized Book get(int i) {
+		if ((i < 0) || (i >= count))
+			throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + count);
+		Book b = cache.get(i);
+		if (b != null)
+			return b;
+
+		expungeReleased();
+		BookReference ref = live.get(i);
+		if (ref != null)
+			b = ref.get();
+		if (b == null) {
+			b = bin.getBook(i);
+			live.put(i, new BookReference(i, b, released));
+		}
+		cache.put(i, b);
+		return b;
+	}
+
+	/**
+	 * Returns every book of the store, in store order.
+	 */
+	synchronized ArrayList<Book> getAll() {
+		ArrayList<Book> books = new ArrayList<Book>(count);
+		for (int i = 0; i < count; i++)
+			books.add(get(i));
+		return books;
+	}
+
+	/**
+	 * Search the books of the store, as <code>BookLibrary.searchResults</code>,
+	 * using the strings of the file read in place and only creating the
+	 * books which match. Each wildcard pattern is made once for the search.
+	 *
+	 * @param searchObject
+	 * @param caseInsensitive If we should use a case insensitive search
+	 * @return Linked list of books matching the search criteria or null for
+	 *         an unknown type of search
+	 */
+	LinkedList<Book> search(BookSearchObject searchObject, boolean caseInsensitive) {
+		int type = searchObject.getSearchType();
+		if ((type != BookSearchObject.BOOKSEARCH)
+			&& (type != BookSearchObject.AUTHORSEARCH)
+			&& (type != BookSearchObject.SERIESSEARCH))
+			return null;
+
+		Matcher title = null, isbn = null, series = null, first = null, last = null;
+		if (type == BookSearchObject.BOOKSEARCH) {
+			title = matcher(searchObject.getTitle(), caseInsensitive);
+			isbn = matcher(searchObject.getISBN(), caseInsensitive);
+		} else if (type == BookSearchObject.SERIESSEARCH)
+			series = matcher(searchObject.getSeries(), caseInsensitive);
+		else {
+			first = matcher(searchObject.getFirstName(), caseInsensitive);
+			last = matcher(searchObject.getLastName(), caseInsensitive);
+		}
+		int cover = searchObject.getCoverType();
+		boolean anyCover = (cover == Book.BADCOVER) || (cover == Book.ANYCOVER);
+		int year = searchObject.getDate();
+
+		String[] keys = searchKeys();
+		StringView view = new StringView();
+		LinkedList<Book> resultList = new LinkedList<Book>();
+		for (int i = 0; i < count; i++) {
+			boolean found;
+			if (type == BookSearchObject.BOOKSEARCH)
+				found = (anyCover || (bin.getBookField(i, BookLibraryBinary.BOOK_COVER) == cover))
+					&& ((year == Book.BADDATE) || (bin.getBookField(i, BookLibraryBinary.BOOK_YEAR) == year))
+					&& matches(isbn, bin.getBookField(i, BookLibraryBinary.BOOK_ISBN), keys, view)
+					&& matches(title, bin.getBookField(i, BookLibraryBinary.BOOK_TITLE), keys, view);
+			else if (type == BookSearchObject.SERIESSEARCH)
+				found = matches(series, bin.getBookField(i, BookLibraryBinary.BOOK_SERIES), keys, view);
+			else {
+				found = false;
+				for (int k = 0; (!found) && (k < bin.getAuthorCount(i)); k++)
+					found = matches(first, bin.getAuthorPartRef(i, k, BookLibraryBinary.AUTHOR_FIRSTNAME), keys, view)
+						&& matches(last, bin.getAuthorPartRef(i, k, BookLibraryBinary.AUTHOR_LASTNAME), keys, view);
+			}
+			if (found)
+				resultList.add(get(i));
+		}
+		return resultList;
+	}
+
+	/**
+	 * Find the books of the store whose title, authors, series or ISBN
+	 * contain the passed text, ignoring case, using the strings of the file
+	 * read in place and only creating the books which match. The names of
+	 * the authors are put together as <code>Author.toString</code> does.
+	 * The text is normalized by <code>BookTextAnalyzer</code> and looked for
+	 * in the normalized strings.
+	 *
+	 * @param text The text to look for
+	 * @return Linked list of the books containing the text
+	 */
+	public LinkedList<Book> filter(String text) {
+		text = BookTextAnalyzer.normalize(text);
+		String[] keys = searchKeys();
+		StringView view = new StringView();
+		StringBuilder names = new StringBuilder();
+		LinkedList<Book> resultList = new LinkedList<Book>();
+		for (int i = 0; i < count; i++) {
+			if (((i % CANCEL_CHECK_BOOKS) == 0) && Thread.currentThread().isInterrupted())
+				throw new CancellationException("Filter cancelled");
+			boolean found = contains(bin.getBookField(i, BookLibraryBinary.BOOK_TITLE), text, keys, view)
+				|| contains(bin.getBookField(i, BookLibraryBinary.BOOK_SERIES), text, keys, view)
+				|| contains(bin.getBookField(i, BookLibraryBinary.BOOK_ISBN), text, keys, view);
+			if (!found) {
+				names.setLength(0);
+				for (int k = 0; k < bin.getAuthorCount(i); k++) {
+					if (k > 0)
+						names.append(", ");
+					int nameStart = names.length();
+					for (int part = BookLibraryBinary.AUTHOR_TITLE; part <= BookLibraryBinary.AUTHOR_SURTITLE; part++) {
+						CharSequence s = text(bin.getAuthorPartRef(i, k, part), keys, view);
+						if (s == null)
+							continue;
+						if (names.length() > nameStart)
+							names.append(' ');
+						names.append(s);
+					}
+				}
+				found = BookSearchObject.containsIgnoreCase(names, text);
+			}
+			if (found)
+				resultList.add(get(i));
+		}
+		return resultList;
+	}
+
+	// Private helper methods
+
+	/**
+	 * Returns the normalized text of each string of the file, normalizing
+	 * the strings which are not ASCII when first asked for.
+	 */
+	private synchronized String[] searchKeys() {
+		if (searchKeys == null) {
+			String[] keys = new String[bin.getStringCount()];
+			StringView view = new StringView();
+			for (int ref = 0; ref < keys.length; ref++) {
+				CharSequence s = bin.getText(ref, view);
+				if (s != view)
+					keys[ref] = BookTextAnalyzer.normalize(s.toString());
+			}
+			searchKeys = keys;
+		}
+		return searchKeys;
+	}
+
+	/**
+	 * Returns the normalized text of the passed string of the file, read in
+	 * place through the passed view if it is ASCII, or null for no string.
+	 */
+	private CharSequence text(int ref, String[] keys, StringView view) {
+		if (ref == BookLibraryBinary.NO_STRING)
+			return null;
+		String key = keys[ref];
+		return (key != null) ? key : bin.getText(ref, view);
+	}
+
+	/**
+	 * Returns true if the passed string of the file contains the passed
+	 * text, ignoring case. A missing string contains nothing.
+	 */
+	private boolean contains(int ref, String text, String[] keys, StringView view) {
+		return BookSearchObject.containsIgnoreCase(text(ref, keys, view), text);
+	}
+
+	/**
+	 * Returns a matcher of the wildcard pattern of the passed search string,
+	 * or null if the string is empty and so matches anything.
+	 */
+	private static Matcher matcher(String searchStr, boolean caseInsensitive) {
+		if (searchStr.equals(""))
+			return null;
+		return BookSearchObject.wildCardPattern(searchStr, caseInsensitive).matcher("");
+	}
+
+	/**
+	 * Returns true if the passed string of the file matches the passed
+	 * matcher, which is null to match anything. A missing string matches
+	 * nothing, as for <code>BookSearchObject.WildCardMatch</code>.
+	 */
+	private boolean matches(Matcher m, int ref, String[] keys, StringView view) {
+		if (m == null)
+			return true;
+		CharSequence text = text(ref, keys, view);
+		return (text != null) && m.reset(text).matches();
+	}
+
+	/**
+	 * Forget the books which are no longer referenced anywhere.
+	 */
+	private void expungeReleased() {
+		BookReference ref;
+		while ((ref = (BookReference) released.poll()) != null)
+			if (live.get(ref.position) == ref)
+				live.remove(ref.position);
+	}
+
+	/**
+	 * A weak reference to a book created by the store, remembering its
+	 * position.
+	 */
+	private static class BookReference extends WeakReference<Book> {
+		final int position;
+
+		BookReference(int position, Book book, ReferenceQueue<Book> queue) {
+			super(book, queue);
+			this.position = position;
+		}
+	}
+}
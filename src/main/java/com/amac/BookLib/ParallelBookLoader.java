@@ -0,0 +1,289 @@
+package com.amac.BookLib;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A <code>ParallelBookLoader</code> reads a large library file using more
+ * than one processor. The file is read into memory and split into runs of
+ * whole <code>book</code> elements by searching for the start tags, and
+ * each run is parsed on a pool of worker threads into its own list of
+ * books. The lists are then joined in file order and added to the
+ * library in one bulk pass, so the library is exactly the one read by
+ * <code>BookLibrary(File)</code>.
+ *
+ * A split which falls anywhere other than between books (inside a
+ * comment, or with the books nested in another element) leaves a run
+ * which is not well formed XML. If any run cannot be read the whole file
+ * is read again the usual way, which also reports any real error in the
+ * file just as before.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class ParallelBookLoader {
+
+	// Loader constants
+	/*
+	 * Files smaller than this are read on a single thread
+	 */
+	static final long MIN_PARALLEL_BYTES = 4L * 1024 * 1024;
+	private static final int RUNS_PER_THREAD = 4;
+	private static final byte[] BOOK_START =
+		("<" + Book.TAGNAME_BOOK).getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] BOOK_END =
+		("</" + Book.TAGNAME_BOOK + ">").getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RUN_PREFIX =
+		"<booklibrary>\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RUN_SUFFIX =
+		"</booklibrary>\n".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Create a book library from the passed file, reading it in parallel if
+	 * it is large enough to be worth it.
+	 *
+	 * @param f The library file
+	 * @param progress Told of the progress of the load. May be null.
+	 * @return The book library read from the file
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	static BookLibrary load(File f, BookLibraryLoadProgress progress) {
+		return new BookLibrary(readBooks(f, progress), f);
+	}
+
+	/**
+	 * Read the books of the passed file, in parallel if it is large enough
+	 * to be worth it.
+	 *
+	 * @param f The library file
+	 * @param progress Told of the progress of the load. May be null.
+	 * @return The books of the file, in file order
+	 */
+	static List<Book> readBooks(File f, BookLibraryLoadProgress progress) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long length = f.length();
+		if ((threads < 2) || (length < MIN_PARALLEL_BYTES) || (length > Integer.MAX_VALUE))
+			return BookLibrary.readFile(f, progress);
+		return readBooks(f, threads, threads * RUNS_PER_THREAD, progress);
+	}
+
+	/**
+	 * Create a book library from the passed file split into the passed
+	 * number of runs read by the passed number of threads.
+	 *
+	 * @param f The library file
+	 * @param threads The number of worker threads
+	 * @param runs The number of runs to split the file into
+	 * @param progress Told of the progress after each run. May be null.
+	 * @return The book library read from the file
+	 * @throws IllegalStateException If the file defines the same book twice
+	 */
+	static BookLibrary load(File f, int threads, int runs, BookLibraryLoadProgress progress) {
+		return new BookLibrary(readBooks(f, threads, runs, progress), f);
+	}
+
+	/**
+	 * Read the books of the passed file split into the passed number of runs
+	 * read by the passed number of threads, or read the whole file the usual
+	 * way if it cannot be split.
+	 *
+	 * @param f The library file
+	 * @param threads The number of worker threads
+	 * @param runs The number of runs to split the file into
+	 * @param progress Told of the progress after each run. May be null.
+	 * @return The books of the file, in file order
+	 */
+	static List<Book> readBooks(File f, int threads, int runs, BookLibraryLoadProgress progress) {
+		List<Book> books;
+		try {
+			books = readRuns(f, threads, runs, progress);
+		} catch (CancellationException e) {
+			throw e;
+		} catch (Exception e) {
+			books = null;
+		}
+		if (books == null)
+			return BookLibrary.readFile(f, progress);
+		return books;
+	}
+
+	/**
+	 * Read the books of the file in parallel runs. Returns null if the file
+	 * cannot be split.
+	 */
+	private static List<Book> readRuns(
+		File f,
+		int threads,
+		int runs,
+		BookLibraryLoadProgress progress)
+		throws Exception {
+		// The file is read onto the heap rather than mapped, as a mapping is
+		// only released when collected and a mapped file cannot be replaced
+		// on Windows until then
+		ByteBuffer contents;
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			contents = ByteBuffer.allocate((int) ch.size());
+			while (contents.hasRemaining())
+				if (ch.read(contents) < 0)
+					break;
+		}
+		contents.flip();
+		int length = contents.limit();
+
+		// The books lie between the first book start tag and the last book end
+		// tag. The file must be UTF-8, as the runs are read without the prolog.
+		int first = findBookStart(contents, 0, length);
+		int end = lastIndexOf(contents, BOOK_END);
+		if ((first < 0) || (end < first) || !isUTF8(contents, first))
+			return null;
+		end += BOOK_END.length;
+		if (findBookStart(contents, end, length) >= 0)
+			return null;
+
+		// Split at the first book start tag after each equal share of the file
+		ArrayList<Integer> starts = new ArrayList<Integer>(runs + 1);
+		starts.add(first);
+		int share = (end - first) / runs + 1;
+		for (int k = 1; k < runs; k++) {
+			int from = Math.max(first + k * share, starts.get(starts.size() - 1) + 1);
+			int start = findBookStart(contents, from, end);
+			if (start < 0)
+				break;
+			starts.add(start);
+		}
+		starts.add(end);
+
+		ExecutorService pool = Executors.newFixedThreadPool(
+			Math.min(threads, starts.size() - 1),
+			r -> {
+				Thread t = new Thread(r, "BookLibrary loader");
+				t.setDaemon(true);
+				return t;
+			});
+		try {
+			// Every run shares strings through the one pool
+			StringPool strings = new StringPool();
+			ArrayList<Future<ArrayList<Book>>> results =
+				new ArrayList<Future<ArrayList<Book>>>(starts.size() - 1);
+			for (int k = 0; k < starts.size() - 1; k++) {
+				ByteBuffer run = contents.duplicate();
+				run.limit(starts.get(k + 1)).position(starts.get(k));
+				ByteBuffer slice = run.slice();
+				results.add(pool.submit(() -> readRun(slice, strings)));
+			}
+
+			ArrayList<Book> books = new ArrayList<Book>();
+			for (int k = 0; k < results.size(); k++) {
+				books.addAll(results.get(k).get());
+				if (progress != null)
+					progress.loadProgress(books.size(), starts.get(k + 1), length);
+			}
+			strings.report(progress);
+			return books;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Read the books of one run, wrapped in a library element so it is a
+	 * complete XML document.
+	 */
+	private static ArrayList<Book> readRun(ByteBuffer run, StringPool strings) throws Exception {
+		ArrayList<Book> books = new ArrayList<Book>();
+		InputStream in = new SequenceInputStream(
+			Collections.enumeration(Arrays.asList(
+				new ByteArrayInputStream(RUN_PREFIX),
+				new ByteBufferInputStream(run),
+				new ByteArrayInputStream(RUN_SUFFIX))));
+		try (CountingInputStream cin = new CountingInputStream(in)) {
+			BookLibrary.readBooks(cin, books, null, 0, strings);
+		}
+		return books;
+	}
+
+	/**
+	 * Returns the position of the first book start tag from the passed
+	 * position and before the passed limit, or -1 if there is none.
+	 */
+	private static int findBookStart(ByteBuffer buf, int from, int to) {
+		int last = to - BOOK_START.length - 1;
+		for (int i = from; i <= last; i++) {
+			if (matches(buf, i, BOOK_START)) {
+				byte next = buf.get(i + BOOK_START.length);
+				if ((next == '>') || (next == '/') || (next == ' ')
+					|| (next == '\t') || (next == '\n') || (next == '\r'))
+					return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the last occurrence of the passed bytes, or -1
+	 * if there is none.
+	 */
+	private static int lastIndexOf(ByteBuffer buf, byte[] b) {
+		for (int i = buf.limit() - b.length; i >= 0; i--)
+			if (matches(buf, i, b))
+				return i;
+		return -1;
+	}
+
+	private static boolean matches(ByteBuffer buf, int pos, byte[] b) {
+		for (int k = 0; k < b.length; k++)
+			if (buf.get(pos + k) != b[k])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns true if the file prolog, before the passed position, does not
+	 * declare an encoding other than UTF-8.
+	 */
+	private static boolean isUTF8(ByteBuffer buf, int prologEnd) {
+		byte[] b = new byte[prologEnd];
+		buf.duplicate().get(b);
+		String prolog = new String(b, StandardCharsets.ISO_8859_1);
+		int i = prolog.indexOf("encoding");
+		if (i < 0)
+			return true;
+		String decl = prolog.substring(i, Math.min(prolog.length(), i + 20)).toUpperCase(Locale.ROOT);
+		return decl.contains("UTF-8") || decl.contains("UTF8");
+	}
+}
+
+/**
+ * An input stream reading the remaining bytes of a byte buffer.
+ */
+class ByteBufferInputStream extends InputStream {
+	private final ByteBuffer buf;
+
+	ByteBufferInputStream(ByteBuffer buf) {
+		this.buf = buf;
+	}
+
+	public int read() {
+		return buf.hasRemaining() ? (buf.get() & 0xff) : -1;
+	}
+
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!buf.hasRemaining())
+			return -1;
+		int n = Math.min(len, buf.remaining());
+		buf.get(b, off, n);
+		return n;
+	}
+
+	public int available() {
+		return buf.remaining();
+	}
+}
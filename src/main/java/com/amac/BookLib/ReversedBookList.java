@@ -0,0 +1,35 @@
+package com.amac.BookLib;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A view of a list of books in reverse order, used to list books in
+ * descending order without sorting or copying the ascending list. The view
+ * follows each change made to the list. Books removed from the view are
+ * removed from the list.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class ReversedBookList extends AbstractList<Book> implements RandomAccess {
+	private final List<Book> books;
+
+	ReversedBookList(List<Book> books) {
+		this.books = books;
+	}
+
+	public Book get(int i) {
+		return books.get(books.size() - 1 - i);
+	}
+
+	public int size() {
+		return books.size();
+	}
+
+	public Book remove(int i) {
+		return books.remove(books.size() - 1 - i);
+	}
+}
@@ -0,0 +1,76 @@
+package com.amac.BookLib;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A <code>StringPool</code> shares the strings read while a library file
+ * is loaded. Series names and the parts of author names are repeated
+ * across many books, and each one read from the file would otherwise be
+ * a new <code>String</code>. The pool hands out the first string read
+ * with the same characters instead, so every book uses the one copy.
+ *
+ * A pool only lives for the loading of one file and is then dropped,
+ * leaving only the strings the books use. It keeps count of the heap
+ * the pooled strings would have taken without it and do take with it.
+ * The pool may be used by several loader threads at once.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class StringPool {
+
+	// Approximate heap taken by a String object and by the header of the
+	// array holding its characters
+	private static final int STRING_BYTES = 24;
+	private static final int ARRAY_BYTES = 16;
+
+	private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<String, String>();
+	private final AtomicLong strings = new AtomicLong();
+	private final AtomicLong heapBefore = new AtomicLong();
+	private final AtomicLong heapAfter = new AtomicLong();
+
+	/**
+	 * Returns the pooled string with the same characters as the passed
+	 * string, pooling the passed string if there is none.
+	 *
+	 * @param s The string read. May be null.
+	 * @return The pooled string or null
+	 */
+	String intern(String s) {
+		if (s == null)
+			return null;
+		long size = heapSize(s);
+		strings.incrementAndGet();
+		heapBefore.addAndGet(size);
+		String pooled = pool.putIfAbsent(s, s);
+		if (pooled != null)
+			return pooled;
+		heapAfter.addAndGet(size);
+		return s;
+	}
+
+	/**
+	 * Tell the passed progress listener how much heap the pool saved.
+	 *
+	 * @param progress The listener told of the load. May be null.
+	 */
+	void report(BookLibraryLoadProgress progress) {
+		if (progress != null)
+			progress.stringsPooled(strings.get(), heapBefore.get(), heapAfter.get());
+	}
+
+	/**
+	 * Returns the approximate heap taken by the passed string, whose
+	 * characters are held one byte each if they are all Latin-1 and two
+	 * bytes each otherwise.
+	 */
+	static long heapSize(String s) {
+		int charBytes = 1;
+		for (int i = 0; (charBytes == 1) && (i < s.length()); i++)
+			if (s.charAt(i) > 0xff)
+				charBytes = 2;
+		return STRING_BYTES + ((ARRAY_BYTES + (long) s.length() * charBytes + 7) & ~7L);
+	}
+}
@@ -0,0 +1,52 @@
+package com.amac.BookLib;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A view of an ASCII string held as bytes in a buffer, read in place as
+ * characters. The view is reused for each string read.
+ *
+ * @author amac
+ * @version 1.0
+ *
+ */
+class StringView implements CharSequence {
+	private ByteBuffer data;
+	private int start;
+	private int length;
+
+	/**
+	 * Set the view to the bytes of the passed buffer between two positions.
+	 * Returns false, leaving the view unusable, if any byte is not ASCII.
+	 */
+	boolean set(ByteBuffer data, int start, int end) {
+		for (int i = start; i < end; i++)
+			if (data.get(i) < 0)
+				return false;
+		this.data = data;
+		this.start = start;
+		this.length = end - start;
+		return true;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public char charAt(int index) {
+		if ((index < 0) || (index >= length))
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+		return (char) data.get(start + index);
+	}
+
+	public CharSequence subSequence(int from, int to) {
+		return toString().substring(from, to);
+	}
+
+	public String toString() {
+		byte[] b = new byte[length];
+		data.get(start, b);
+		return new String(b, StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,48 @@
+package com.amac.BookLib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of the <code>Author</code> name handling.
+ */
+public class AuthorTest {
+
+	@Test
+	public void parsesNameIntoParts() {
+		Author a = new Author("Andrew R. MacLeod");
+		assertEquals("Andrew", a.getFirstName());
+		assertEquals("R.", a.getMiddleName());
+		assertEquals("MacLeod", a.getLastName());
+		assertEquals("Andrew R. MacLeod", a.getFullName());
+
+		a = new Author("  Ursula  Kroeber   Le  Guin ");
+		assertEquals("Ursula", a.getFirstName());
+		assertEquals("Kroeber Le", a.getMiddleName());
+		assertEquals("Guin", a.getLastName());
+
+		a = new Author("Glen Cook");
+		assertEquals("Glen", a.getFirstName());
+		assertNull(a.getMiddleName());
+		assertEquals("Cook", a.getLastName());
+
+		a = new Author("Moebius");
+		assertNull(a.getFirstName());
+		assertEquals("Moebius", a.getLastName());
+		assertThrows(IllegalArgumentException.class, () -> new Author("   "));
+	}
+
+	@Test
+	public void fullNameKeptUntilModified() {
+		Author a = new Author("Dr.", "Ann", "", "Other", "Jr.");
+		String name = a.getFullName();
+		assertEquals("Dr. Ann Other Jr.", name);
+		assertSame(name, a.toString());
+
+		assertFalse(a.isModified(new Author("Dr.", "Ann", "", "Other", "Jr.")));
+		assertSame(name, a.getFullName());
+		assertTrue(a.isModified(new Author("Ann Other")));
+		assertEquals("Ann Other", a.getFullName());
+	}
+}
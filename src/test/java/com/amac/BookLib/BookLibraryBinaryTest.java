@@ -0,0 +1,274 @@
+package com.amac.BookLib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of the binary book library format.
+ */
+public class BookLibraryBinaryTest {
+
+	/**
+	 * Returns a temporary copy of the test library, as loading a library
+	 * file writes an index file next to it.
+	 */
+	private static File copyOfTestLibrary() throws IOException {
+		File copy = File.createTempFile("binarytest", BookLibrary.EXT_BOOKLIBRARY);
+		Files.copy(new File("mylib.bdb").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return copy;
+	}
+
+	@Test
+	public void convertsToAndFromXML() throws Exception {
+		File bin = File.createTempFile("binarytest", BookLibrary.EXT_BOOKLIBRARY_BINARY);
+		File xml = File.createTempFile("binarytest", BookLibrary.EXT_BOOKLIBRARY);
+		File orig = copyOfTestLibrary();
+		try {
+			BookLibraryBinary.convert(orig, bin);
+			BookLibrary library = BookLibrary.load(bin, null);
+			BookLibrary expected = new BookLibrary(orig);
+			assertEquals(expected.length(), library.length());
+			assertEquals(expected.length(), BookLibraryBinary.readBookCount(bin));
+			assertEquals(0, BookLibraryBinary.readBookCount(orig));
+			for (int i = 0; i < expected.length(); i++)
+				assertEquals(expected.getBook(i).toXML(""), library.getBook(i).toXML(""));
+
+			BookLibraryBinary.convert(bin, xml);
+			assertArrayEquals(Files.readAllBytes(orig.toPath()), Files.readAllBytes(xml.toPath()));
+		} finally {
+			bin.delete();
+			xml.delete();
+			orig.delete();
+			BookLibraryIndex.indexFile(bin).delete();
+			BookLibraryIndex.indexFile(xml).delete();
+			BookLibraryIndex.indexFile(orig).delete();
+			new File(bin.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+			new File(xml.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	@Test
+	public void sharesStringsAndRejectsCorruptFiles() throws Exception {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		String[] authors = { "Dr. Ann Other Jr.", "Glen Cook" };
+		library.addBook(new Book("\u00dcn\u00efc\u00f6d\u00e9 Title", "The Black Company", authors, null, 2001, Book.SOFTCOVER));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BookLibraryBinary.write(library, out);
+		byte[] bytes = out.toByteArray();
+
+		BookLibraryBinary bin = new BookLibraryBinary(java.nio.ByteBuffer.wrap(bytes));
+		assertEquals(library.length(), bin.getBookCount());
+		java.util.List<Book> books = bin.getBooks();
+		for (int i = 0; i < library.length(); i++)
+			assertEquals(library.getBook(i).toXML(""), books.get(i).toXML(""));
+		assertEquals("Black Company", books.get(1).getSeries());
+		assertSame(books.get(1).getSeries(), books.get(3).getSeries());
+
+		bytes[bytes.length / 2] ^= 1;
+		assertThrows(IOException.class, () -> new BookLibraryBinary(java.nio.ByteBuffer.wrap(bytes)));
+		assertThrows(IOException.class,
+			() -> new BookLibraryBinary(java.nio.ByteBuffer.wrap(bytes, 0, bytes.length - 4).slice()));
+	}
+
+	@Test
+	public void lazyLibraryCreatesBooksOnDemand() throws Exception {
+		File bin = File.createTempFile("lazytest", BookLibrary.EXT_BOOKLIBRARY_BINARY);
+		File orig = copyOfTestLibrary();
+		try {
+			BookLibraryBinary.convert(orig, bin);
+			BookLibrary expected = BookLibrary.load(bin, null);
+			BookLibrary library = BookLibrary.loadLazy(bin);
+			java.util.List<Book> books = library.getBookList();
+			assertEquals(expected.length(), library.length());
+			assertEquals(expected.getBook(10).toXML(""), library.getBook(10).toXML(""));
+			assertSame(library.getBook(10), books.get(10));
+
+			// Searches match those of the fully loaded library
+			String[][] searches = { { "T*", "", "" }, { "", "Brin", "" }, { "", "", "*Company*" } };
+			int[] types = { BookSearchObject.BOOKSEARCH, BookSearchObject.AUTHORSEARCH, BookSearchObject.SERIESSEARCH };
+			for (int k = 0; k < types.length; k++) {
+				BookSearchObject search = new BookSearchObject();
+				search.setSearchType(types[k]);
+				search.setTitle(searches[k][0]);
+				search.setLastName(searches[k][1]);
+				search.setSeries(searches[k][2]);
+				java.util.List<Book> found = library.searchResults(search, true);
+				java.util.List<Book> want = expected.searchResults(search, true);
+				assertFalse(want.isEmpty());
+				assertEquals(want.size(), found.size());
+				for (int i = 0; i < want.size(); i++)
+					assertEquals(want.get(i).toXML(""), found.get(i).toXML(""));
+			}
+
+			// Filters match those of the fully loaded library
+			for (String text : new String[] { "the", "brin", "DAVID B" }) {
+				java.util.List<Book> found = library.getBookFilter().filter(text);
+				java.util.List<Book> want = expected.getBookFilter().filter(text);
+				assertFalse(want.isEmpty());
+				assertEquals(want.size(), found.size());
+				for (int i = 0; i < want.size(); i++)
+					assertEquals(want.get(i).toXML(""), found.get(i).toXML(""));
+			}
+
+			// Sorting by title leaves the list lazy. Changing the library loads
+			// every book, keeping the books already handed out, without telling
+			// listeners of them.
+			java.util.Collections.sort(books, new BookListCompare());
+			int[] events = { 0 };
+			library.addBookLibraryListener(new BookLibraryListener() {
+				public void libraryChanged(BookLibraryEvent e) {
+					events[0]++;
+				}
+			});
+			Book held = books.get(20);
+			Book modbook = new Book(held.getTitle(), "New Series", held.getAuthors(),
+				held.getISBN(), held.getPublishYear(), held.getCoverType());
+			assertTrue(library.modifyBook(held, modbook));
+			assertEquals(1, events[0]);
+			assertSame(held, library.getBook(20));
+			assertSame(held, books.get(20));
+			assertEquals("New Series", library.getBook(20).getSeries());
+			assertNotNull(library.findAuthor(held.getAuthors().get(0)));
+		} finally {
+			bin.delete();
+			orig.delete();
+			BookLibraryIndex.indexFile(bin).delete();
+			BookLibraryIndex.indexFile(orig).delete();
+			new File(bin.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	@Test
+	public void lazyLibraryDefiningABookTwiceStaysLazy() throws Exception {
+		File bin = File.createTempFile("lazytest", BookLibrary.EXT_BOOKLIBRARY_BINARY);
+		try {
+			BookLibrary library = new BookLibrary();
+			library.addBook(new Book("Same Title", null, "Jane Smith", "111", 2001, Book.SOFTCOVER));
+			library.addBook(new Book("Same Title", null, "Jane Smith", "222", 2002, Book.SOFTCOVER));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			BookLibraryBinary.write(library, out);
+
+			// Give the second book the ISBN of the first
+			byte[] bytes = out.toByteArray();
+			int at = new String(bytes, java.nio.charset.StandardCharsets.ISO_8859_1).indexOf("222");
+			bytes[at + 0] = bytes[at + 1] = bytes[at + 2] = '1';
+			java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+			crc.update(bytes, 0, bytes.length - 4);
+			java.nio.ByteBuffer.wrap(bytes).putInt(bytes.length - 4, (int) crc.getValue());
+			Files.write(bin.toPath(), bytes);
+
+			BookLibrary lazy = BookLibrary.loadLazy(bin);
+			assertTrue(lazy.getBookFilter() instanceof LazyBookStore);
+			Book other = new Book("Other Title", null, "Jane Smith", "333", 2003, Book.SOFTCOVER);
+			assertThrows(IllegalStateException.class, () -> lazy.addBook(other));
+			assertTrue(lazy.getBookFilter() instanceof LazyBookStore);
+			assertEquals(2, lazy.length());
+			assertEquals(2002, lazy.getBook(1).getPublishYear());
+		} finally {
+			bin.delete();
+			BookLibraryIndex.indexFile(bin).delete();
+		}
+	}
+
+	@Test
+	public void lazyLibraryReleasesItsFileBeforeWritingOverIt() throws Exception {
+		File bin = File.createTempFile("lazytest", BookLibrary.EXT_BOOKLIBRARY_BINARY);
+		File orig = copyOfTestLibrary();
+		try {
+			BookLibraryBinary.convert(orig, bin);
+			BookLibrary expected = new BookLibrary(orig);
+			BookLibrary library = BookLibrary.loadLazy(bin);
+
+			// Writing another file leaves the library lazy
+			library.releaseFile(orig);
+			assertTrue(library.getBookFilter() instanceof LazyBookStore);
+
+			library.write(bin);
+			assertFalse(library.getBookFilter() instanceof LazyBookStore);
+			BookLibrary written = BookLibrary.load(bin, null);
+			assertEquals(expected.length(), written.length());
+			for (int i = 0; i < expected.length(); i++)
+				assertEquals(expected.getBook(i).toXML(""), written.getBook(i).toXML(""));
+		} finally {
+			bin.delete();
+			orig.delete();
+			BookLibraryIndex.indexFile(bin).delete();
+			BookLibraryIndex.indexFile(orig).delete();
+			new File(bin.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	@Test
+	public void lazySearchesMatchFullyLoadedSearches() throws Exception {
+		File bin = File.createTempFile("lazytest", BookLibrary.EXT_BOOKLIBRARY_BINARY);
+		try {
+			// Rows read in place from the file and rows of other characters,
+			// which are decoded
+			BookLibrary library = new GenTestBookLib().getBookLib();
+			library.addBook(new Book("\u00c9tudes du Nord", "Les \u00c9tudes", "\u00c9mile Zola", "111", 1880, Book.SOFTCOVER));
+			library.addBook(new Book("\u30ce\u30eb\u30a6\u30a7\u30a4\u306e\u68ee", null, "\u6751\u4e0a \u6625\u6a39", "222", 1987, Book.HARDCOVER));
+			library.addBook(new Book("\uff8e\uff9d\uff94", "\u672c\u5c4b", "\u6751\u4e0a \u6625\u6a39", "333", 1990, Book.SOFTCOVER));
+			library.addBook(new Book("The Tale of \u00c9tienne", "The Black Company", "Glen Cook", "444", 2001, Book.SOFTCOVER));
+			library.writeBinary(bin);
+
+			BookLibrary lazy = BookLibrary.loadLazy(bin);
+			BookLibrary full = BookLibraryBinary.read(bin);
+			assertTrue(lazy.getBookFilter() instanceof LazyBookStore);
+
+			String[][] searches = {
+				{ "*\u00c9tudes*", "", "", "", "" },
+				{ "*\u00c9tienne", "", "", "", "" },
+				{ "\u306e\u308b*", "", "", "", "" },
+				{ "\u307b\u3093*", "", "", "", "" },
+				{ "T*", "", "", "", "" },
+				{ "", "444", "", "", "" },
+				{ "", "", "*\u00c9tudes", "", "" },
+				{ "", "", "\u672c*", "", "" },
+				{ "", "", "*Company*", "", "" },
+				{ "", "", "", "\u00c9mile", "zola" },
+				{ "", "", "", "", "\u6625\u6a39" },
+				{ "", "", "", "", "Brin" } };
+			for (String[] terms : searches) {
+				for (boolean caseInsensitive : new boolean[] { true, false }) {
+					BookSearchObject search = new BookSearchObject();
+					if (!terms[2].equals(""))
+						search.setSearchType(BookSearchObject.SERIESSEARCH);
+					else if (!terms[3].equals("") || !terms[4].equals(""))
+						search.setSearchType(BookSearchObject.AUTHORSEARCH);
+					else
+						search.setSearchType(BookSearchObject.BOOKSEARCH);
+					search.setTitle(terms[0]);
+					search.setISBN(terms[1]);
+					search.setSeries(terms[2]);
+					search.setFirstName(terms[3]);
+					search.setLastName(terms[4]);
+					java.util.List<Book> want = full.searchResults(search, caseInsensitive);
+					if (caseInsensitive)
+						assertFalse(want.isEmpty(), String.join("|", terms));
+					assertSameBooks(want, lazy.searchResults(search, caseInsensitive));
+				}
+			}
+			for (String text : new String[] { "\u00e9tudes", "\u30ce\u30eb", "\uff8e\uff9d", "zola", "\u6751\u4e0a", "\u00c9TIENNE" }) {
+				java.util.List<Book> want = full.getBookFilter().filter(text);
+				assertFalse(want.isEmpty(), text);
+				assertSameBooks(want, lazy.getBookFilter().filter(text));
+			}
+			assertTrue(lazy.getBookFilter() instanceof LazyBookStore);
+		} finally {
+			bin.delete();
+			BookLibraryIndex.indexFile(bin).delete();
+			new File(bin.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	private static void assertSameBooks(java.util.List<Book> want, java.util.List<Book> found) {
+		assertEquals(want.size(), found.size());
+		for (int i = 0; i < want.size(); i++)
+			assertEquals(want.get(i).toXML(""), found.get(i).toXML(""));
+	}
+}
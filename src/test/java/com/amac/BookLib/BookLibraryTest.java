@@ -0,0 +1,749 @@
+package com.amac.BookLib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.Collator;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.DOMException;
+
+/**
+ * Unit tests of the <code>BookLibrary</code> operations.
+ */
+public class BookLibraryTest {
+
+	@Test
+	public void addAllRejectsDuplicates() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		int length = library.length();
+
+		ArrayList<Book> books = new ArrayList<>();
+		books.add(new Book("Zebra Tales", null, "Jane Smith", "111", 2001, Book.SOFTCOVER));
+		books.add(new Book("Bleak Seasons", null, "Glen Cook", "0-312-86105-2", 1996, Book.HARDCOVER));
+		books.add(new Book("Apple Tales", null, "Jane Smith", null, 2002, Book.SOFTCOVER));
+		books.add(new Book("apple tales", null, "John Smith", "222", 2003, Book.SOFTCOVER));
+
+		List<Book> rejected = library.addAll(books);
+		assertEquals(2, rejected.size());
+		assertSame(books.get(1), rejected.get(0));
+		assertSame(books.get(3), rejected.get(1));
+		assertEquals(length + 2, library.length());
+
+		// Library remains sorted by title
+		BookListCompare comparator = new BookListCompare();
+		for (int i = 1; i < library.length(); i++)
+			assertTrue(comparator.compare(library.getBook(i - 1), library.getBook(i)) < 0);
+
+		// Authors registered once
+		Author smith = library.findAuthorByName("Jane Smith");
+		assertNotNull(smith);
+		assertEquals(2, smith.getBooks().size());
+	}
+
+	@Test
+	public void removeBookKeepsSharedAuthor() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		Book book = new Book("Bleak Seasons", null, "Glen Cook", "0-312-86105-2", 1996, Book.HARDCOVER);
+		library.removeBook(book);
+		assertFalse(library.containsBook(book));
+		assertNotNull(library.findAuthorByName("Glen Cook"));
+	}
+
+	@Test
+	public void bookListOnlyChangedThroughLibrary() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		List<Book> books = library.getBookList();
+		Book book = new Book("A New Title", null, "Jane Smith", null, 2001, Book.SOFTCOVER);
+		assertThrows(UnsupportedOperationException.class, () -> books.add(book));
+		assertThrows(UnsupportedOperationException.class, () -> books.set(0, book));
+		assertThrows(UnsupportedOperationException.class, () -> books.remove(0));
+		assertFalse(books.contains(book));
+
+		// Sorting is still allowed
+		Collections.sort(books, new PublishDateListCompare());
+		library.addBook(book);
+		assertTrue(books.contains(book));
+	}
+
+	@Test
+	public void removeAllAndSetSeries() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		int length = library.length();
+
+		ArrayList<Book> books = new ArrayList<>();
+		books.add(new Book("She Is The Darkness", null, "Glen Cook", "0-312-85907-4", 1996, Book.HARDCOVER));
+		books.add(new Book("Heaven's Reach", null, "David Brin", "0-553-10174-9", 1998, Book.HARDCOVER));
+		books.add(new Book("Not In Library", null, "David Brin", "999", 1998, Book.HARDCOVER));
+
+		assertEquals(2, library.setSeries(books, "Renamed"));
+		assertEquals(0, library.setSeries(books, "Renamed"));
+		assertEquals("Renamed", library.getBook(library.getBookList().indexOf(books.get(0))).getSeries());
+
+		List<Book> notFound = library.removeAll(books);
+		assertEquals(1, notFound.size());
+		assertSame(books.get(2), notFound.get(0));
+		assertEquals(length - 2, library.length());
+		assertNull(library.findAuthorByName("David Brin"));
+		assertNotNull(library.findAuthorByName("Glen Cook"));
+	}
+
+	@Test
+	public void listenersReceiveChanges() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		LinkedList<BookLibraryEvent> events = new LinkedList<>();
+		library.addBookLibraryListener(new BookLibraryListener() {
+			public void libraryChanged(BookLibraryEvent e) {
+				events.add(e);
+			}
+		});
+
+		Book book = new Book("New Book", null, "Jane Smith", "111", 2001, Book.SOFTCOVER);
+		library.addBook(book);
+		assertEquals(2, events.size());
+		assertEquals(BookLibraryEvent.Type.AUTHOR_ADDED, events.get(0).getType());
+		assertEquals(BookLibraryEvent.Type.BOOK_ADDED, events.get(1).getType());
+		assertSame(book, events.get(1).getBook());
+
+		events.clear();
+		Book modbook = new Book("New Book", "A Series", "Jane Smith", "111", 2005, Book.SOFTCOVER);
+		assertTrue(library.modifyBook(book, modbook));
+		assertEquals(1, events.size());
+		assertEquals(EnumSet.of(Book.Field.SERIES, Book.Field.YEAR), events.get(0).getChangedFields());
+
+		events.clear();
+		library.removeAll(Collections.singletonList(book));
+		assertEquals(2, events.size());
+		assertEquals(BookLibraryEvent.Type.BOOK_REMOVED, events.get(0).getType());
+		assertEquals(BookLibraryEvent.Type.AUTHOR_REMOVED, events.get(1).getType());
+
+		// A single book is removed in the same order as several
+		library.addBook(book);
+		events.clear();
+		library.removeBook(book);
+		assertEquals(2, events.size());
+		assertEquals(BookLibraryEvent.Type.BOOK_REMOVED, events.get(0).getType());
+		assertSame(book, events.get(0).getBook());
+		assertEquals(BookLibraryEvent.Type.AUTHOR_REMOVED, events.get(1).getType());
+	}
+
+	@Test
+	public void modifyBookAppliesDelta() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		String[] authors = { "Ann One", "Bob Two", "Cat Three" };
+		Book book = new Book("Middle Title", null, authors, "333", 2000, Book.SOFTCOVER);
+		library.addBook(book);
+
+		// Remove two adjacent authors, add one and change the title
+		String[] newauthors = { "Cat Three", "Dan Four" };
+		Book modbook = new Book("A Aardvark Title", null, newauthors, "333", 2000, Book.SOFTCOVER);
+		BookDelta delta = book.diff(modbook);
+		assertEquals(EnumSet.of(Book.Field.TITLE, Book.Field.AUTHORS), delta.getChangedFields());
+		assertEquals(2, delta.getRemovedAuthors().size());
+		assertEquals(1, delta.getAddedAuthors().size());
+		assertEquals("Middle Title", book.getTitle());
+
+		assertTrue(library.modifyBook(book, delta));
+		assertEquals(2, book.getAuthors().size());
+		assertEquals("Cat Three", book.getAuthors().get(0).toString());
+		assertEquals("Dan Four", book.getAuthors().get(1).toString());
+		assertSame(book, library.getBook(0));
+		assertNull(library.findAuthorByName("Ann One"));
+		assertNotNull(library.findAuthorByName("Dan Four"));
+		assertTrue(library.containsBook(modbook));
+	}
+
+	@Test
+	public void bookListSortedByAuthorIsStillChanged() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		Book book = new Book("Middle Title", null, "Ann One", "333", 2000, Book.SOFTCOVER);
+		library.addBook(book);
+
+		// Books are placed and found by walking a list not in title order
+		Collections.sort(library.getBookList(), new AuthorListCompare());
+		ArrayList<Book> byAuthor = new ArrayList<>(library.getBookList());
+		assertEquals(byAuthor.indexOf(book), library.getBookIndex(book));
+		assertTrue(library.modifyBook(book, new Book("A Aardvark Title", null, "Ann One", "333", 2000, Book.SOFTCOVER)));
+		assertEquals(byAuthor.size(), library.length());
+		assertSame(book, library.getBook(library.getBookIndex(book)));
+		library.removeBook(book);
+		assertEquals(-1, library.getBookIndex(book));
+		assertEquals(byAuthor.size() - 1, library.length());
+
+		// Sorting by title again places books by searching the list
+		Collections.sort(library.getBookList(), new BookListCompare());
+		library.addBook(book);
+		assertSame(book, library.getBook(0));
+		for (int i = 0; i < library.length(); i++)
+			assertEquals(i, library.getBookIndex(library.getBook(i)));
+	}
+
+	@Test
+	public void journalReplaysCommittedChanges() throws Exception {
+		File f = File.createTempFile("journaltest", ".bdb");
+		File jf = BookLibraryJournal.journalFile(f);
+		try {
+			BookLibrary library = new GenTestBookLib().getBookLib();
+			BookLibraryJournal journal = new BookLibraryJournal(library, f);
+			journal.compact();
+
+			library.addBook(new Book("Tab\tand\\Slash", null, "Jane Smith", "111", 2001, Book.SOFTCOVER));
+			library.modifyBook(
+				new Book("Bleak Seasons", null, "Glen Cook", "0-312-86105-2", 1996, Book.HARDCOVER),
+				new Book("Bleak Seasons", "The Black Company", "Glen Cook", "0-312-86105-2", 1997, Book.HARDCOVER));
+			library.removeBook(new Book("Heaven's Reach", null, "David Brin", "0-553-10174-9", 1998, Book.HARDCOVER));
+			journal.commit();
+
+			// Changes not committed are not replayed
+			library.addBook(new Book("Not Saved", null, "Jane Smith", "222", 2001, Book.SOFTCOVER));
+			journal.close();
+
+			BookLibrary reloaded = new BookLibrary(f);
+			assertEquals(3, BookLibraryJournal.replay(reloaded, f));
+			assertEquals(library.length() - 1, reloaded.length());
+			assertNotNull(reloaded.findBook("111", "Tab\tand\\Slash"));
+			assertNull(reloaded.findBook("222", "Not Saved"));
+			assertNull(reloaded.findBook("0-553-10174-9", "Heaven's Reach"));
+			Book modified = reloaded.findBook("0-312-86105-2", "Bleak Seasons");
+			assertEquals("The Black Company", modified.getSeries());
+			assertEquals(1997, modified.getPublishYear());
+
+			// A journal left after the library file is rewritten is ignored
+			reloaded.writeXML(f);
+			assertEquals(0, BookLibraryJournal.replay(new BookLibrary(f), f));
+		} finally {
+			jf.delete();
+			f.delete();
+			BookLibraryIndex.indexFile(f).delete();
+			new File(f.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	@Test
+	public void staleJournalIsReplacedByNextCommit() throws Exception {
+		File f = File.createTempFile("journaltest", ".bdb");
+		File jf = BookLibraryJournal.journalFile(f);
+		try {
+			BookLibrary library = new GenTestBookLib().getBookLib();
+			BookLibraryJournal journal = new BookLibraryJournal(library, f);
+			journal.compact();
+			library.addBook(new Book("First Save", null, "Jane Smith", "111", 2001, Book.SOFTCOVER));
+			journal.commit();
+			journal.close();
+
+			// A compaction interrupted after the library file is written
+			library.writeXML(f);
+			BookLibrary reloaded = new BookLibrary(f);
+			assertEquals(0, BookLibraryJournal.replay(reloaded, f));
+			assertFalse(jf.exists());
+
+			journal = new BookLibraryJournal(reloaded, f);
+			reloaded.addBook(new Book("Second Save", null, "Jane Smith", "222", 2002, Book.SOFTCOVER));
+			journal.commit();
+			journal.close();
+
+			BookLibrary reopened = new BookLibrary(f);
+			assertEquals(1, BookLibraryJournal.replay(reopened, f));
+			assertNotNull(reopened.findBook("111", "First Save"));
+			assertNotNull(reopened.findBook("222", "Second Save"));
+
+			// Records committed in earlier sessions count towards compaction
+			journal = new BookLibraryJournal(reopened, f);
+			for (int i = 1; i < BookLibraryJournal.COMPACT_RECORDS; i++)
+				reopened.addBook(new Book("Book " + i, null, "Jane Smith", null, 2003, Book.SOFTCOVER));
+			assertTrue(journal.needsCompaction());
+			journal.close();
+		} finally {
+			jf.delete();
+			f.delete();
+			BookLibraryIndex.indexFile(f).delete();
+		}
+	}
+
+	@Test
+	public void streamingLoadReportsProgressAndInvalidTags() throws Exception {
+		File f = File.createTempFile("loadtest", ".bdb");
+		try {
+			BookLibrary library = new GenTestBookLib().getBookLib();
+			library.writeXML(f);
+			int[] calls = { 0 };
+			long[] read = { 0 };
+			BookLibrary loaded = new BookLibrary(f, (books, bytesRead, totalBytes) -> {
+				calls[0]++;
+				assertEquals(calls[0], books);
+				assertTrue(bytesRead >= read[0] && bytesRead <= totalBytes);
+				read[0] = bytesRead;
+			});
+			assertEquals(library.length(), calls[0]);
+			assertEquals(library.length(), loaded.length());
+			for (int i = 0; i < library.length(); i++)
+				assertEquals(library.getBook(i).toXML(""), loaded.getBook(i).toXML(""));
+
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(f), "UTF-8")) {
+				out.write(BookLibrary.TAGNAME_XML + "<booklibrary>\n <book>\n  <title>T</title>\n"
+					+ "  <author><last>L</last><nickname>N</nickname></author>\n </book>\n</booklibrary>\n");
+			}
+			DOMException e = assertThrows(DOMException.class, () -> new BookLibrary(f));
+			assertEquals("Invalid XML node name for defining an author: nickname", e.getMessage());
+		} finally {
+			f.delete();
+			BookLibraryIndex.indexFile(f).delete();
+			new File(f.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	@Test
+	public void savedFileKeepsItsPermissions() throws Exception {
+		File f = File.createTempFile("permtest", ".bdb");
+		File backup = new File(f.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP);
+		try {
+			Set<PosixFilePermission> perms = PosixFilePermissions.fromString("rw-r--r--");
+			try {
+				Files.setPosixFilePermissions(f.toPath(), perms);
+			} catch (UnsupportedOperationException e) {
+				return;
+			}
+			BookLibrary library = new GenTestBookLib().getBookLib();
+			library.writeXML(f);
+			assertEquals(perms, Files.getPosixFilePermissions(f.toPath()));
+			library.writeBinary(f);
+			assertEquals(perms, Files.getPosixFilePermissions(f.toPath()));
+		} finally {
+			f.delete();
+			backup.delete();
+			BookLibraryIndex.indexFile(f).delete();
+		}
+	}
+
+	@Test
+	public void newFileGetsDefaultPermissions() throws Exception {
+		File dir = Files.createTempDirectory("permtest").toFile();
+		File plain = new File(dir, "plain.bdb");
+		File f = new File(dir, "new.bdb");
+		try {
+			new FileOutputStream(plain).close();
+			Set<PosixFilePermission> perms;
+			try {
+				perms = Files.getPosixFilePermissions(plain.toPath());
+			} catch (UnsupportedOperationException e) {
+				return;
+			}
+			new GenTestBookLib().getBookLib().writeXML(f);
+			assertEquals(perms, Files.getPosixFilePermissions(f.toPath()));
+		} finally {
+			for (File c : dir.listFiles())
+				c.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void loadSharesRepeatedStrings() throws Exception {
+		File f = File.createTempFile("pooltest", ".bdb");
+		try {
+			BookLibrary library = new BookLibrary();
+			for (int i = 0; i < 20; i++)
+				library.addBook(new Book("Pooled Title " + i, "Pooled Series", "Jane Smith", null, 2001, Book.SOFTCOVER));
+			library.writeXML(f);
+
+			long[] heap = { 0, 0, 0 };
+			BookLibrary loaded = new BookLibrary(f, new BookLibraryLoadProgress() {
+				public void loadProgress(int books, long bytesRead, long totalBytes) {
+				}
+
+				public void stringsPooled(long strings, long heapBefore, long heapAfter) {
+					heap[0] = strings;
+					heap[1] = heapBefore;
+					heap[2] = heapAfter;
+				}
+			});
+			assertEquals(60, heap[0]);
+			assertEquals(20 * heap[2], heap[1]);
+			Book first = loaded.getBook(0);
+			Book last = loaded.getBook(19);
+			assertSame(first.getSeries(), last.getSeries());
+			assertSame(first.getAuthors().get(0).getLastName(), last.getAuthors().get(0).getLastName());
+		} finally {
+			f.delete();
+			BookLibraryIndex.indexFile(f).delete();
+		}
+	}
+
+	@Test
+	public void columnSearchMatchesEachBook() {
+		BookLibrary library = new BookLibrary(new File("mylib.bdb"));
+		library.addBook(new Book("No Series (Paperback)", "", "Jane Smith", null, 2001, Book.SOFTCOVER));
+		String[][] searches = { { "T*", "", "", "" }, { "*the*", "", "", "1998" }, { "", "0-*", "", "" },
+			{ "", "", "*Company*", "" }, { "", "", "*", "" }, { "(Paperback)", "", "", "" } };
+		for (int pass = 0; pass < 3; pass++) {
+			if (pass == 1)
+				library.modifyBook(library.getBook(5), new Book(library.getBook(5).getTitle(), "The Company",
+					library.getBook(5).getAuthors(), "0-9", 1998, Book.HARDCOVER));
+			else if (pass == 2)
+				Collections.sort(library.getBookList(), new PublishDateListCompare());
+			for (String[] search : searches) {
+				BookSearchObject so = new BookSearchObject();
+				so.setSearchType(search[2].equals("") ? BookSearchObject.BOOKSEARCH : BookSearchObject.SERIESSEARCH);
+				so.setTitle(search[0]);
+				so.setISBN(search[1]);
+				so.setSeries(search[2]);
+				if (!search[3].equals(""))
+					so.setDate(Integer.parseInt(search[3]));
+				for (boolean ci : new boolean[] { true, false }) {
+					ArrayList<Book> want = new ArrayList<>();
+					for (Book b : library.getBookList())
+						if ((so.getSearchType() == BookSearchObject.BOOKSEARCH)
+							? BookLibrary.bookMatches(so, ci, b.getTitle(), b.getISBN(), b.getPublishYear(), b.getCoverType())
+							: BookLibrary.seriesMatches(so, ci, b.getSeries()))
+							want.add(b);
+					assertEquals(want, new ArrayList<>(library.searchResults(so, ci)));
+				}
+			}
+			for (String[] names : new String[][] { { "", "brin" }, { "D*", "" }, { "*a*", "*o*" }, { "", "" } }) {
+				BookSearchObject so = new BookSearchObject();
+				so.setSearchType(BookSearchObject.AUTHORSEARCH);
+				so.setFirstName(names[0]);
+				so.setLastName(names[1]);
+				for (boolean ci : new boolean[] { true, false }) {
+					ArrayList<Book> want = new ArrayList<>();
+					for (Book b : library.getBookList())
+						for (Author a : b.getAuthors())
+							if (BookLibrary.authorMatches(so, ci, a.getFirstName(), a.getLastName())) {
+								want.add(b);
+								break;
+							}
+					assertEquals(want, new ArrayList<>(library.searchResults(so, ci)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void filterFindsTextInAnyField() {
+		BookLibrary library = new BookLibrary(new File("mylib.bdb"));
+		library.addBook(new Book("Filtered Out", "Sea Stories", "Jane Smith", "0-FILTER", 2001, Book.SOFTCOVER));
+		BookFilter filter = library.getBookFilter();
+		for (String text : new String[] { "the", "BRIN", "company", "0-filter", "ne sm", "zzzz" }) {
+			ArrayList<Book> want = new ArrayList<>();
+			for (Book b : library.getBookList())
+				if (b.getTitle().toLowerCase().contains(text.toLowerCase())
+					|| b.getAuthorsString(", ").toLowerCase().contains(text.toLowerCase())
+					|| ((b.getSeries() != null) && b.getSeries().toLowerCase().contains(text.toLowerCase()))
+					|| ((b.getISBN() != null) && b.getISBN().toLowerCase().contains(text.toLowerCase())))
+					want.add(b);
+			assertEquals(want, new ArrayList<>(filter.filter(text)));
+		}
+		assertEquals(1, filter.filter("ne sm").size());
+
+		// A filter keeps the books it was got for while the library changes
+		assertSame(filter, library.getBookFilter());
+		library.removeBook(library.getBook(0));
+		assertEquals(library.length() + 1, filter.filter("").size());
+		assertNotSame(filter, library.getBookFilter());
+	}
+
+	@Test
+	public void searchesFollowLibraryChanges() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		BookFilter filter = library.getBookFilter();
+		assertSame(filter, library.getBookFilter());
+		int found = filter.filter("the").size();
+
+		// Books modified, added, removed or reordered are searched as they
+		// are now, and the books left alone as before
+		Book book = library.getBook(0);
+		String title = book.getTitle();
+		library.modifyBook(book, new Book("Zz Renamed", book.getSeries(), book.getAuthors(),
+			book.getISBN(), book.getPublishYear(), book.getCoverType()));
+		library.addBook(new Book("The Added Book", null, "Jane Smith", "0-ADDED", 2001, Book.SOFTCOVER));
+		library.removeBook(library.getBook(1));
+		library.getBookList().sort(new AuthorListCompare());
+		BookFilter updated = library.getBookFilter();
+		assertNotSame(filter, updated);
+		assertSame(updated, library.getBookFilter());
+		assertEquals(found, filter.filter("the").size());
+		assertEquals(0, updated.filter(title).size());
+		assertEquals(Arrays.asList(book), updated.filter("zz renamed"));
+		for (String text : new String[] { "the", "BRIN", "jane smith", "0-added" }) {
+			ArrayList<Book> want = new ArrayList<>();
+			for (Book b : library.getBookList())
+				if (b.getTitle().toLowerCase().contains(text.toLowerCase())
+					|| b.getAuthorsString(", ").toLowerCase().contains(text.toLowerCase())
+					|| ((b.getSeries() != null) && b.getSeries().toLowerCase().contains(text.toLowerCase()))
+					|| ((b.getISBN() != null) && b.getISBN().toLowerCase().contains(text.toLowerCase())))
+					want.add(b);
+			assertEquals(want, new ArrayList<>(updated.filter(text)));
+		}
+	}
+
+	@Test
+	public void ordersFollowLibraryChanges() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		List<Book> byAuthor = library.getBookList(BookLibrary.Order.AUTHOR);
+		List<Book> byDate = library.getBookList(BookLibrary.Order.PUBLISHDATE);
+		assertOrders(library);
+
+		Book book = new Book("Brightness Reef", "Uplift", "David Brin", "0-553-10034-3", 1995, Book.HARDCOVER);
+		library.addBook(book);
+		assertOrders(library);
+		assertEquals(byAuthor.indexOf(book), library.getBookIndex(book, BookLibrary.Order.AUTHOR));
+
+		ArrayList<Book> added = new ArrayList<>();
+		for (int i = 0; i < 20; i++)
+			added.add(new Book("Added " + i, null, "Writer" + (i % 4) + " Zed", "ADD-" + i, 1980 + (i % 7), Book.SOFTCOVER));
+		library.addAll(added);
+		assertOrders(library);
+
+		library.modifyBook(book, new Book("Brightness Reef", "Uplift", "Glen Cook", "0-553-10034-3", 1995, Book.HARDCOVER));
+		assertOrders(library);
+		library.modifyBook(book, new Book("Brightness Reef", "Uplift", "Glen Cook", "0-553-10034-3", 1975, Book.HARDCOVER));
+		assertOrders(library);
+		assertEquals(0, library.getBookIndex(book, BookLibrary.Order.PUBLISHDATE));
+		assertEquals(library.length() - 1, library.getBookIndex(book, BookLibrary.Order.PUBLISHDATE, false));
+
+		library.removeBook(book);
+		library.removeAll(added.subList(5, 15));
+		assertOrders(library);
+		assertEquals(-1, library.getBookIndex(book, BookLibrary.Order.AUTHOR));
+
+		// Each order is the same list throughout and cannot be changed
+		assertSame(byAuthor, library.getBookList(BookLibrary.Order.AUTHOR));
+		assertSame(byDate, library.getBookList(BookLibrary.Order.PUBLISHDATE));
+		assertSame(library.getBookList(BookLibrary.Order.TITLE, false),
+			library.getBookList(BookLibrary.Order.TITLE, false));
+		assertThrows(UnsupportedOperationException.class, () -> byDate.remove(0));
+	}
+
+	@Test
+	public void authorsStringKeptUntilAuthorsChange() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		String[] authors = { "Andrew R. MacLeod", "Greg MacLeod" };
+		Book book = new Book("Shared Work", null, authors, "333", 2004, Book.SOFTCOVER);
+		library.addBook(book);
+		String table = book.getAuthorsString(", ");
+		assertEquals("Andrew R. MacLeod, Greg MacLeod", table);
+		assertEquals("Andrew R. MacLeod,\nGreg MacLeod", book.getAuthorsString(",\n"));
+		assertSame(table, book.getAuthorsString(", "));
+
+		String[] renamed = { "Andrew MacLeod", "Greg MacLeod", "Jane Smith" };
+		library.modifyBook(book, new Book("Shared Work", null, renamed, "333", 2004, Book.SOFTCOVER));
+		assertEquals("Andrew MacLeod, Greg MacLeod, Jane Smith", book.getAuthorsString(", "));
+		assertEquals("", new Book("No Authors", null, new LinkedList<Author>(), null, 2004, Book.SOFTCOVER)
+			.getAuthorsString(", "));
+	}
+
+	@Test
+	public void writeXMLEscapesEveryField() throws Exception {
+		File f = File.createTempFile("escapetest", ".bdb");
+		try {
+			BookLibrary library = new BookLibrary();
+			String[] authors = { "Dr. Tom&Jerry <Cat> Jones", "A. N. <Other>" };
+			Book book = new Book("Fish & Chips <Vol 1>", "Cook & Eat", authors, "1<2&3", 2001, Book.SOFTCOVER);
+			library.addBook(book);
+			library.writeXML(f);
+
+			Book loaded = new BookLibrary(f).getBook(0);
+			assertEquals(book.toXML(""), loaded.toXML(""));
+			assertEquals("Cook & Eat", loaded.getSeries());
+			assertEquals("1<2&3", loaded.getISBN());
+			assertEquals(book.getAuthors().get(0).toString(), loaded.getAuthors().get(0).toString());
+			assertTrue(book.toXML("").contains("<series>Cook &amp; Eat</series>"));
+		} finally {
+			f.delete();
+			BookLibraryIndex.indexFile(f).delete();
+		}
+	}
+
+	@Test
+	public void indexFileUsedUntilLibraryFileChanges() throws Exception {
+		File f = File.createTempFile("indextest", ".bdb");
+		File idx = BookLibraryIndex.indexFile(f);
+		try {
+			// Save the library in author order, as left by sorting the window
+			BookLibrary library = new GenTestBookLib().getBookLib();
+			library.addBook(new Book("Apple Tales", null, "Glen Cook", null, 2002, Book.SOFTCOVER));
+			library.addBook(new Book("Apple Stories", null, "David Brin", "222", 2003, Book.SOFTCOVER));
+			Collections.sort(library.getBookList(), new AuthorListCompare());
+			library.writeXML(f);
+			assertEquals(BookLibraryIndex.checksum(f), library.fileChecksum(f));
+			assertNotNull(BookLibraryIndex.open(f, BookLibraryIndex.checksum(f)));
+
+			BookLibrary indexed = new BookLibrary(f);
+			idx.delete();
+			BookLibrary rebuilt = new BookLibrary(f);
+			assertIndexedLibrary(rebuilt, indexed);
+			assertThrows(IllegalStateException.class,
+				() -> indexed.addBook(new Book("Apple Tales", null, "Jane Smith", null, 2010, Book.SOFTCOVER)));
+
+			// Loading rewrites a missing index in the order of the file, which
+			// is ignored once the library file changes or if it is damaged
+			BookLibrary.load(f, null);
+			assertNotNull(BookLibraryIndex.open(f, BookLibraryIndex.checksum(f)));
+			assertIndexedLibrary(rebuilt, new BookLibrary(f));
+			assertIndexedLibrary(rebuilt, BookLibrary.load(f, null));
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(f, true), "UTF-8")) {
+				out.write("\n");
+			}
+			assertNull(BookLibraryIndex.open(f, BookLibraryIndex.checksum(f)));
+			assertEquals(rebuilt.length(), new BookLibrary(f).length());
+			BookLibrary.load(f, null);
+			try (RandomAccessFile raf = new RandomAccessFile(idx, "rw")) {
+				raf.seek(BookLibraryIndex.HEADER_BYTES);
+				int position = raf.readInt();
+				raf.seek(BookLibraryIndex.HEADER_BYTES);
+				raf.writeInt(position ^ 1);
+			}
+			assertNull(BookLibraryIndex.open(f, BookLibraryIndex.checksum(f)));
+			assertEquals(rebuilt.length(), new BookLibrary(f).length());
+		} finally {
+			f.delete();
+			idx.delete();
+			new File(f.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	private static void assertIndexedLibrary(BookLibrary rebuilt, BookLibrary indexed) {
+		assertEquals(rebuilt.length(), indexed.length());
+		for (int i = 0; i < rebuilt.length(); i++) {
+			Book b = indexed.getBook(i);
+			assertEquals(rebuilt.getBook(i).toXML(""), b.toXML(""));
+			for (Author a : b.getAuthors()) {
+				Author libauthor = indexed.findAuthor(a);
+				assertEquals(rebuilt.findAuthor(a).getBooks().size(), libauthor.getBooks().size());
+				assertTrue(libauthor.getBooks().contains(b));
+			}
+		}
+	}
+
+	@Test
+	public void sortKeysOrderAsNames() {
+		// Titles sharing their packed start, or shorter than it
+		String[] titles = { "Ab", "Abc", "Abcd", "Abcde", "Abcdf", "Ab\u00ffz", "B", "\uffffa" };
+		for (String x : titles)
+			for (String y : titles) {
+				Book a = new Book(x, null, "Jane Smith", null, 2000, Book.SOFTCOVER);
+				Book b = new Book(y, null, "Jane Smith", null, 2000, Book.SOFTCOVER);
+				assertEquals(Integer.signum(x.compareTo(y)), Integer.signum(new BookListCompare().compare(a, b)));
+			}
+
+		// No first name or no authors sorts first rather than failing
+		Book plato = new Book("Republic", null, "Plato", null, 1900, Book.SOFTCOVER);
+		Book smith = new Book("Tales", null, "Jane Smith", null, 1900, Book.SOFTCOVER);
+		Book plain = new Book("Plain", null, "Sam Plato", null, 1900, Book.SOFTCOVER);
+		Book none = new Book("None", null, new LinkedList<Author>(), null, 1900, Book.SOFTCOVER);
+		assertNull(plato.getAuthors().get(0).getFirstName());
+		AuthorListCompare byAuthor = new AuthorListCompare();
+		assertTrue(byAuthor.compare(none, plato) < 0);
+		assertTrue(byAuthor.compare(plato, plain) < 0);
+		assertTrue(byAuthor.compare(plain, smith) < 0);
+		assertEquals(0, byAuthor.compare(plato, plato));
+
+		// Large lists sorted in parallel are sorted as they are sequentially
+		ArrayList<Book> books = new ArrayList<>();
+		for (int i = 0; i < BookOrder.PARALLEL_SORT_BOOKS + 100; i++)
+			books.add(new Book("Title " + (i * 7919 % 5000), null, "Writer" + (i % 37) + " Name" + (i % 11),
+				"ISBN-" + i, 1900 + (i % 90), Book.SOFTCOVER));
+		Comparator<Book> order = byAuthor.thenComparing(new PublishDateListCompare());
+		ArrayList<Book> sequential = new ArrayList<>(books);
+		sequential.sort(order);
+		BookOrder.sort(books, order);
+		for (int i = 0; i < books.size(); i++)
+			assertSame(sequential.get(i), books.get(i));
+	}
+
+	@Test
+	public void collationLocaleOrdersTitles() {
+		BookLibrary library = new BookLibrary();
+		// Hiragana and katakana titles, which collate together in Japanese
+		String[] titles = { "\u30a2\u30ab", "\u3042\u3044", "\u30a4\u30cc", "\u3046\u307f" };
+		for (int i = 0; i < titles.length; i++)
+			library.addBook(new Book(titles[i], null, "Jane Smith", "JA-" + i, 2000 + i, Book.SOFTCOVER));
+		library.addBook(new Book("apple", null, "ann adams", "EN-1", 2000, Book.SOFTCOVER));
+		library.addBook(new Book("Banana", null, "Bob Young", "EN-2", 2000, Book.SOFTCOVER));
+		List<Book> byCode = library.getBookList(BookLibrary.Order.TITLE);
+		assertEquals("Banana", byCode.get(0).getTitle());
+
+		library.setCollationLocale(Locale.JAPANESE);
+		assertEquals(Locale.JAPANESE, library.getCollationLocale());
+		List<Book> collated = library.getBookList(BookLibrary.Order.TITLE);
+		ArrayList<String> order = new ArrayList<>();
+		for (Book b : collated)
+			order.add(b.getTitle());
+		assertEquals(Arrays.asList("apple", "Banana",
+			"\u3042\u3044", "\u30a2\u30ab", "\u30a4\u30cc", "\u3046\u307f"), order);
+
+		// The collated orders follow changes while the book list keeps code order
+		Book book = new Book("\u30a6\u30b7", null, "Jane Smith", "JA-9", 1999, Book.SOFTCOVER);
+		library.addBook(book);
+		assertEquals(5, library.getBookIndex(book, BookLibrary.Order.TITLE));
+		assertEquals(library.length() - 1, library.getBookList().indexOf(book));
+		ArrayList<Book> byAuthor = new ArrayList<>(library.getBookList());
+		byAuthor.sort(new AuthorListCompare(Collator.getInstance(Locale.JAPANESE)).thenComparing(new BookListCompare()));
+		assertEquals(byAuthor, library.getBookList(BookLibrary.Order.AUTHOR));
+		assertEquals("ann adams", library.getBookList(BookLibrary.Order.AUTHOR).get(0).getAuthors().get(0).toString());
+
+		library.setCollationLocale(null);
+		assertEquals(library.getBookList(), library.getBookList(BookLibrary.Order.TITLE));
+	}
+
+	@Test
+	public void japaneseTextMatchesAnyForm() {
+		BookLibrary library = new GenTestBookLib().getBookLib();
+		// Half-width katakana, katakana, kanji and full-width latin titles
+		library.addBook(new Book("\uff7a\uff70\uff8b\uff70\u306e\u672c", null, "Jane Smith", "JA-1", 2001, Book.SOFTCOVER));
+		library.addBook(new Book("\u30b3\u30fc\u30d2\u30fc\u5165\u9580", null, "Jane Smith", "JA-2", 2002, Book.SOFTCOVER));
+		library.addBook(new Book("\u73c8\u7432\u306e\u6b74\u53f2", "\u65e5\u672c\u6587\u5b66", "Jane Smith", "JA-3", 2003, Book.SOFTCOVER));
+		library.addBook(new Book("\uff2a\uff41\uff56\uff41\u5165\u9580", null, "Jane Smith", "JA-4", 2004, Book.SOFTCOVER));
+		// Full-width punctuation, which normalizes to regular expression characters
+		library.addBook(new Book("\u6b74\u53f2\uff08\u4e0a\uff09", null, "Jane Smith", "JA-5", 2005, Book.SOFTCOVER));
+		library.addBook(new Book("\u4e0a\u5dfb", null, "Jane Smith", "JA-6", 2006, Book.SOFTCOVER));
+		library.addBook(new Book("\uff23\uff0b\uff0b\uff0e\uff2e\uff25\uff34", null, "Jane Smith", "JA-7", 2007, Book.SOFTCOVER));
+
+		// Hiragana finds katakana of either width and each search finds the
+		// books matched one by one, whether or not narrowed by bigrams. Only
+		// the wildcard is more than literal text.
+		String[] titles = { "\u3053\u30fc\u3072\u30fc", "java", "\u5165\u9580", "*\u306e*", "\u672c",
+			"\u5165?\u9580", "\u5165\uff1f\u9580", "\u73c8\u7432*\u6b74\u53f2", "\u5165\u9580\u5165\u9580",
+			"\uff08\u4e0a\uff09", "(\u4e0a)", "\u4e0a", "c++.net", "\uff43\uff0b\uff0b*\uff4e\uff45\uff54",
+			"c+", "\uff3b", "c.*" };
+		int[] counts = { 2, 1, 2, 2, 1, 0, 0, 1, 0, 1, 1, 2, 1, 1, 1, 0, 0 };
+		for (int q = 0; q < titles.length; q++) {
+			BookSearchObject so = new BookSearchObject();
+			so.setSearchType(BookSearchObject.BOOKSEARCH);
+			so.setTitle(titles[q]);
+			ArrayList<Book> want = new ArrayList<>();
+			for (Book b : library.getBookList())
+				if (BookLibrary.bookMatches(so, true, b.getTitle(), b.getISBN(), b.getPublishYear(), b.getCoverType()))
+					want.add(b);
+			assertEquals(counts[q], want.size(), titles[q]);
+			assertEquals(want, new ArrayList<>(library.searchResults(so, true)));
+		}
+
+		BookFilter filter = library.getBookFilter();
+		assertEquals(2, filter.filter("\u30b3\u30fc\u30d2\u30fc").size());
+		assertEquals(1, filter.filter("\uff2a\uff21\uff36\uff21").size());
+		assertEquals(1, filter.filter("\u65e5\u672c").size());
+		assertEquals(0, filter.filter("\u672c\u65e5").size());
+	}
+
+	private static void assertOrders(BookLibrary library) {
+		ArrayList<Book> byAuthor = new ArrayList<>(library.getBookList());
+		byAuthor.sort(new AuthorListCompare().thenComparing(new BookListCompare()));
+		assertEquals(byAuthor, library.getBookList(BookLibrary.Order.AUTHOR));
+		ArrayList<Book> byDate = new ArrayList<>(library.getBookList());
+		byDate.sort(new PublishDateListCompare());
+		assertEquals(byDate, library.getBookList(BookLibrary.Order.PUBLISHDATE));
+		assertEquals(library.getBookList(), library.getBookList(BookLibrary.Order.TITLE));
+
+		// Descending lists are the ascending lists read from their end
+		for (BookLibrary.Order order : BookLibrary.Order.values()) {
+			ArrayList<Book> descending = new ArrayList<>(library.getBookList(order));
+			Collections.reverse(descending);
+			assertEquals(descending, library.getBookList(order, false));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.amac.BookLib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of the tree backed list of books.
+ */
+public class BookTreeListTest {
+
+	@Test
+	public void sameAsArrayListForRandomChanges() {
+		Random random = new Random(42);
+		Book[] books = new Book[500];
+		for (int i = 0; i < books.length; i++)
+			books[i] = new Book("Title " + random.nextInt(200), null, "Jane Smith", null, 2000, Book.SOFTCOVER);
+
+		BookTreeList tree = new BookTreeList(Arrays.asList(books).subList(0, 100));
+		ArrayList<Book> list = new ArrayList<Book>(Arrays.asList(books).subList(0, 100));
+		for (int step = 0; step < 5000; step++) {
+			int op = random.nextInt(10);
+			if ((op < 5) || list.isEmpty()) {
+				// Runs of books added at the same end unbalance the tree most
+				int i = (op == 0) ? list.size() : (op == 1) ? 0 : random.nextInt(list.size() + 1);
+				Book b = books[random.nextInt(books.length)];
+				tree.add(i, b);
+				list.add(i, b);
+			} else if (op < 9) {
+				int i = random.nextInt(list.size());
+				assertSame(list.remove(i), tree.remove(i));
+			} else {
+				int i = random.nextInt(list.size());
+				Book b = books[random.nextInt(books.length)];
+				assertSame(list.set(i, b), tree.set(i, b));
+			}
+			assertEquals(list.size(), tree.size());
+		}
+		assertEquals(list, tree);
+		assertEquals(list, new ArrayList<Book>(tree));
+
+		tree.removeIf(b -> b.getTitle().endsWith("7"));
+		list.removeIf(b -> b.getTitle().endsWith("7"));
+		assertEquals(list, tree);
+
+		// Bounds of a sorted list match a walk of the sorted list
+		BookListCompare comparator = new BookListCompare();
+		tree.sort(comparator);
+		list.sort(comparator);
+		assertEquals(list, tree);
+		for (Book b : books) {
+			int lower = 0;
+			while ((lower < list.size()) && (comparator.compare(list.get(lower), b) < 0))
+				lower++;
+			int upper = lower;
+			while ((upper < list.size()) && (comparator.compare(list.get(upper), b) == 0))
+				upper++;
+			assertEquals(lower, tree.lowerBound(b, comparator));
+			assertEquals(upper, tree.upperBound(b, comparator));
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> tree.get(tree.size()));
+		assertThrows(IndexOutOfBoundsException.class, () -> tree.add(-1, books[0]));
+	}
+}
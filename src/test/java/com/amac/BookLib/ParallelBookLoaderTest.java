@@ -0,0 +1,103 @@
+package com.amac.BookLib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of reading library files in parallel runs.
+ */
+public class ParallelBookLoaderTest {
+
+	@Test
+	public void sameLibraryAsSequentialLoad() {
+		File f = new File("mylib.bdb");
+		BookLibrary sequential = new BookLibrary(f);
+		for (int runs = 1; runs <= 16; runs *= 2)
+			assertSameLibrary(sequential, ParallelBookLoader.load(f, 4, runs, null));
+	}
+
+	@Test
+	public void sameLibraryForSyntheticFiles() throws Exception {
+		File f = File.createTempFile("paralleltest", ".bdb");
+		try {
+			BookLibrary library = new GenTestBookLib().getBookLib();
+			for (int i = 0; i < 2000; i++)
+				library.addBook(new Book(
+					"Synthetic Title " + i,
+					(i % 3 == 0) ? "Series " + (i % 7) : null,
+					new String[] { "First" + (i % 50) + " Author", "Second Writer" },
+					(i % 5 == 0) ? null : "ISBN-" + i,
+					1900 + (i % 120),
+					i % 2));
+			library.writeXML(f);
+			BookLibrary sequential = new BookLibrary(f);
+			assertEquals(library.length(), sequential.length());
+			int[] progress = { 0 };
+			assertSameLibrary(sequential,
+				ParallelBookLoader.load(f, 3, 7, (books, bytesRead, totalBytes) -> progress[0] = books));
+			assertEquals(sequential.length(), progress[0]);
+
+			// Books nested in another element with a commented out book cannot be
+			// split safely so are read the usual way
+			writeFile(f, BookLibrary.TAGNAME_XML + "<booklibrary>\n<shelf>\n"
+				+ book("One") + "<!-- " + book("Old") + " -->\n" + book("Two")
+				+ "</shelf>\n" + book("Three") + "</booklibrary>\n");
+			sequential = new BookLibrary(f);
+			assertEquals(3, sequential.length());
+			for (int runs = 2; runs <= 6; runs++)
+				assertSameLibrary(sequential, ParallelBookLoader.load(f, 2, runs, null));
+
+			// A book defined twice is still rejected
+			writeFile(f, BookLibrary.TAGNAME_XML + "<booklibrary>\n"
+				+ book("One") + book("Two") + book("One") + "</booklibrary>\n");
+			assertThrows(IllegalStateException.class, () -> ParallelBookLoader.load(f, 2, 3, null));
+		} finally {
+			f.delete();
+			BookLibraryIndex.indexFile(f).delete();
+			new File(f.getPath() + "." + BookLibrary.EXT_BOOKLIBRARY_BACKUP).delete();
+		}
+	}
+
+	@Test
+	public void cancelledLoadStops() {
+		File f = new File("mylib.bdb");
+		int[] progress = { 0 };
+		BookLibraryLoadProgress cancel = (books, bytesRead, totalBytes) -> {
+			progress[0] = books;
+			throw new CancellationException("Load cancelled");
+		};
+		assertThrows(CancellationException.class, () -> new BookLibrary(f, cancel));
+		assertEquals(1, progress[0]);
+		assertThrows(CancellationException.class, () -> ParallelBookLoader.load(f, 2, 4, cancel));
+	}
+
+	private static String book(String title) {
+		return "  <book>\n   <title>" + title + "</title>\n   <covertype>Soft Cover</covertype>\n"
+			+ "   <author>\n    <last>Writer</last>\n   </author>\n  </book>\n";
+	}
+
+	private static void writeFile(File f, String contents) throws IOException {
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(f), "UTF-8")) {
+			out.write(contents);
+		}
+	}
+
+	private static void assertSameLibrary(BookLibrary expected, BookLibrary actual) {
+		assertEquals(expected.length(), actual.length());
+		for (int i = 0; i < expected.length(); i++) {
+			Book e = expected.getBook(i);
+			Book a = actual.getBook(i);
+			assertEquals(e.toXML(""), a.toXML(""));
+			for (int k = 0; k < e.getAuthors().size(); k++) {
+				Author ea = expected.findAuthor(e.getAuthors().get(k));
+				Author aa = actual.findAuthor(a.getAuthors().get(k));
+				assertEquals(ea.getBooks().size(), aa.getBooks().size());
+			}
+		}
+	}
+}